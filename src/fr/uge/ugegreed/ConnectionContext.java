@@ -1,7 +1,10 @@
 package fr.uge.ugegreed;
 
 import fr.uge.ugegreed.packets.*;
-import fr.uge.ugegreed.readers.PacketReader;
+import fr.uge.ugegreed.readers.FlatPacketReader;
+import fr.uge.ugegreed.utils.BufferPool;
+import fr.uge.ugegreed.utils.LongMap;
+import fr.uge.ugegreed.utils.StridedRange;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
@@ -10,29 +13,77 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayDeque;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Connection to another node. Its buffers and queue belong to the thread of its reactor,
+ * the packets it receives are handled by the thread of the controller.
+ */
 public final class ConnectionContext implements Context {
   private final static Logger logger = Logger.getLogger(ConnectionContext.class.getName());
-  private final static int BUFFER_SIZE = 10_000;
+  // Packets up to this size are read in full in bufferIn, larger ones are read piece by piece
+  private final static int MAX_FRAME_SIZE = 1024 * 1024;
+  // bufferOut grows up to this size while packets are waiting to be sent
+  private final static int BUSY_BUFFER_SIZE = 64 * 1024;
+  // Flow control of answer packets, see CREDIT in the RFC
+  private final static int INITIAL_CREDITS = 256;
+  // Credits are given back by groups to limit the number of CREDIT packets
+  private final static int CREDIT_BATCH = 64;
+  // Number of answer packets waiting to be sent above which the connection is congested, and below which it's not anymore
+  private final static int CONGESTION_HIGH_WATERMARK = 128;
+  private final static int CONGESTION_LOW_WATERMARK = 32;
+  private final static byte ANS_CODE = Packet.PacketCode.ANS.getCode();
+  private final static byte ANS_BATCH_CODE = Packet.PacketCode.ANS_BATCH.getCode();
 
+  private final Reactor reactor;
   private final SelectionKey key;
   private final SocketChannel sc;
-  private InetSocketAddress remoteHost;
-  private int remoteAppID;
-  private final ByteBuffer bufferIn = ByteBuffer.allocate(BUFFER_SIZE);
-  private final ByteBuffer bufferOut = ByteBuffer.allocate(BUFFER_SIZE);
+  private volatile InetSocketAddress remoteHost;
+  private volatile int remoteAppID;
+  // Both buffers come from the pool of the controller and are given back while they are empty
+  private final BufferPool bufferPool;
+  private ByteBuffer bufferIn;
+  private ByteBuffer bufferOut;
   private final Controller controller;
-  private boolean connectionComplete;
-  private boolean disconnecting = false;
+  private volatile boolean connectionComplete;
+  private volatile boolean disconnecting = false;
   private Packet disconnectingPacket;
   private boolean closed = false;
-  private final PacketReader packetReader = new PacketReader();
+  private final FlatPacketReader packetReader = new FlatPacketReader(MAX_FRAME_SIZE);
   private final ArrayDeque<Packet> queue = new ArrayDeque<>();
-  private int potential = 1;
+  private int nextPacketSize = -1;
+  // Answer packets the remote application still accepts, only enforced if it supports CREDIT
+  private int sendCredits = INITIAL_CREDITS;
+  // Answer packets received which were not credited back yet
+  private int receivedSinceCredit = 0;
+  // Credits to send back in the next CREDIT packet
+  private int creditsToSend = 0;
+  private int queuedAnswers = 0;
+  private final AtomicBoolean congested = new AtomicBoolean();
+  // Jobs described by the remote application and jobs described to it, only used by the controller
+  private final LongMap<JobDescPacket> remoteJobs = new LongMap<>();
+  private final LongMap<JobDescPacket> describedJobs = new LongMap<>();
+  private volatile int potential = 1;
+  // False until the first INIT or UPDT packet, the potential is a guess until then
+  private boolean potentialKnown = false;
+  // True once the remote application announced THREADS, potentials exchanged from then on count threads
+  // instead of nodes. Only used by the controller, in the order packets came in, as the fields below
+  private boolean threadPotentials = false;
+  // The connecting side sends its CAPA packet first, the other side only answers applications which sent one
+  private boolean capaSent = false;
+  private boolean capaReceived = false;
+  // True if a potential was held back while the unit of potentials was not settled
+  private boolean potentialHeld = false;
+  // Capabilities of the remote application, none until it sends its CAPA packet
+  private volatile int remoteCapabilities = 0;
 
-  public ConnectionContext(Controller controller, SelectionKey key, boolean needConnection) throws IOException {
+  public ConnectionContext(Controller controller, Reactor reactor, SelectionKey key, boolean needConnection)
+      throws IOException {
     this.controller = Objects.requireNonNull(controller);
+    this.reactor = Objects.requireNonNull(reactor);
+    bufferPool = controller.bufferPool();
     this.key = Objects.requireNonNull(key);
     sc = (SocketChannel) key.channel();
     remoteHost = (InetSocketAddress) sc.getRemoteAddress();
@@ -53,6 +104,23 @@ public final class ConnectionContext implements Context {
    */
   public int remoteAppId() { return remoteAppID; }
 
+  /**
+   * Returns true if the remote application supports the given protocol extension
+   * @param capability protocol extension
+   * @return true if the remote application supports the given protocol extension
+   */
+  public boolean supports(CapaPacket.Capability capability) {
+    return (remoteCapabilities & capability.getMask()) != 0;
+  }
+
+  /**
+   * Returns true if answer packets are queued faster than they can be sent to the remote application
+   * @return true if the connection is congested
+   */
+  public boolean isCongested() {
+    return congested.get();
+  }
+
   /**
    * Returns the key this is attached to
    * @return the key this is attached to
@@ -77,6 +145,48 @@ public final class ConnectionContext implements Context {
     return disconnecting || !connectionComplete;
   }
 
+  /**
+   * Returns the capacity the side of the connection gained with a new potential, all of it the first time
+   * the potential is known
+   */
+  private int potentialAdded(int newPotential) {
+    var previous = potentialKnown ? potential : 0;
+    potentialKnown = true;
+    return Integer.max(0, newPotential - previous);
+  }
+
+  /**
+   * Converts a potential received in an INIT or UPDT packet to a number of threads. Applications which did
+   * not announce THREADS count nodes, each of them is assumed to have as many threads as this one.
+   */
+  private int receivedPotential(int advertised) {
+    return threadPotentials ? advertised : advertised * controller.localPotential();
+  }
+
+  /**
+   * Converts a potential counted in threads to the unit the remote application expects in INIT and UPDT
+   * packets, a number of nodes if it did not announce THREADS
+   * @param threads potential in threads
+   * @return potential to put in the packet
+   */
+  public int advertisedPotential(int threads) {
+    return threadPotentials ? threads : Integer.max(1, Math.ceilDiv(threads, controller.localPotential()));
+  }
+
+  /**
+   * Sends the potential of the network on this side of the connection in an UPDT packet, in the unit the remote
+   * application expects. Between the CAPA packet of the connecting side and the answer of the other side the
+   * unit is not settled, the potential is then sent once the answer comes.
+   * @param threads potential in threads
+   */
+  public void queuePotential(int threads) {
+    if (capaSent && !capaReceived) {
+      potentialHeld = true;
+      return;
+    }
+    queuePacket(new UpdtPacket(advertisedPotential(threads), controller.appID()));
+  }
+
   /**
    * Process the content of bufferIn
    * The convention is that bufferIn is in write-mode before the call to process
@@ -84,46 +194,247 @@ public final class ConnectionContext implements Context {
    *
    */
   private void processIn() throws IOException {
-    for (;;) {
-      var status = packetReader.process(bufferIn);
-      switch (status) {
-        case DONE -> {
-          var packet = packetReader.get();
-
-          if (!(packet instanceof AnsPacket)) {
-            logger.info("Received packet from " + remoteHost + ": " + packet);
-          }
-
-          processPacket(packet);
-          packetReader.reset();
+    // Every complete packet is read before compacting the buffer once
+    bufferIn.flip();
+    try {
+      for (;;) {
+        if (!sc.isOpen()) { return; }
+        var frameSize = packetReader.completeFrameSize(bufferIn);
+        if (frameSize > 0 && relayAnswers(frameSize)) {
+          answerReceived();
+          continue;
         }
-        case REFILL -> {return;}
-        case ERROR -> {
-          silentlyClose();
-          return;
+        var status = packetReader.processFrame(bufferIn);
+        switch (status) {
+          case DONE -> {
+            var packet = packetReader.get();
+            packetReader.reset();
+            switch (packet) {
+              // Flow control is handled by the reactor, in the order packets come in
+              case CapaPacket capaPacket -> {
+                logger.info("Received packet from " + remoteHost + ": " + packet);
+                remoteCapabilities = capaPacket.capabilities();
+                // The unit of potentials changes for the packets after this one
+                controller.execute(() -> handlePacket(packet));
+              }
+              case CreditPacket creditPacket -> {
+                sendCredits += creditPacket.credits();
+                processOut();
+              }
+              case AnsPacket ignored -> {
+                controller.execute(() -> handlePacket(packet));
+                answerReceived();
+              }
+              case AnsBatchPacket ignored -> {
+                controller.execute(() -> handlePacket(packet));
+                answerReceived();
+              }
+              default -> {
+                logger.info("Received packet from " + remoteHost + ": " + packet);
+                controller.execute(() -> handlePacket(packet));
+              }
+            }
+          }
+          case REFILL -> {
+            growBufferIn();
+            return;
+          }
+          case ERROR -> {
+            silentlyClose();
+            return;
+          }
         }
       }
+    } finally {
+      bufferIn.compact();
+    }
+  }
+
+  /**
+   * Counts an answer packet received from the remote application, and gives credits back if possible
+   */
+  private void answerReceived() {
+    if (!supports(CapaPacket.Capability.CREDIT)) { return; }
+    receivedSinceCredit++;
+    giveCreditsBack();
+  }
+
+  /**
+   * Gives credits back to the remote application for the answer packets it sent, unless answers can't
+   * leave this node as fast as they come, in which case it's done once the congestion is over.
+   * Connections are never congested by the answers they receive, as answers are never sent back to
+   * the node they come from, so they are not taken into account.
+   */
+  private void giveCreditsBack() {
+    if (receivedSinceCredit < CREDIT_BATCH) { return; }
+    if (controller.isCongestedExcept(this)) {
+      controller.waitForDecongestion(this);
+      // The congestion may have ended before this connection was waiting for it
+      if (controller.isCongestedExcept(this)) { return; }
+    }
+    creditsToSend += receivedSinceCredit;
+    receivedSinceCredit = 0;
+    processOut();
+  }
+
+  /**
+   * Tells the connection that a congestion ended, can be called from any thread
+   */
+  public void congestionEnded() {
+    reactor.execute(() -> {
+      giveCreditsBack();
+      updateInterestOps();
+    });
+  }
+
+  /**
+   * Makes bufferIn large enough for the packet being read, the packet stays at the head of the buffer
+   * The convention is that bufferIn is in read-mode before and after the call
+   */
+  private void growBufferIn() {
+    var needed = packetReader.pendingFrameSize(bufferIn);
+    if (needed <= bufferIn.capacity()) { return; }
+    var bigger = bufferPool.acquire(needed);
+    bigger.put(bufferIn).flip();
+    bufferPool.release(bufferIn);
+    bufferIn = bigger;
+  }
+
+  /**
+   * Gives the buffers which are empty back to the pool, an idle connection holds no buffer
+   */
+  private void releaseIdleBuffers() {
+    if (bufferIn != null && bufferIn.position() == 0) {
+      bufferPool.release(bufferIn);
+      bufferIn = null;
+    }
+    if (bufferOut != null && bufferOut.position() == 0 && queue.isEmpty()) {
+      bufferPool.release(bufferOut);
+      bufferOut = null;
+    }
+  }
+
+  /**
+   * Makes room in bufferOut for a packet of the given size if possible. bufferOut grows to fit packets
+   * larger than itself, and up to BUSY_BUFFER_SIZE when packets are waiting for room.
+   * The convention is that bufferOut is in write-mode before and after the call
+   */
+  private void reserveOut(int size) {
+    if (bufferOut == null) {
+      bufferOut = bufferPool.acquire(size);
+      return;
+    }
+    if (bufferOut.remaining() >= size) { return; }
+    var needed = bufferOut.position() + size;
+    if (size > bufferOut.capacity() || needed <= BUSY_BUFFER_SIZE) {
+      var bigger = bufferPool.acquire(needed);
+      bigger.put(bufferOut.flip());
+      bufferPool.release(bufferOut);
+      bufferOut = bigger;
+    }
+  }
+
+  /**
+   * Tries to relay the answers at the head of bufferIn upstream without decoding them
+   * The convention is that bufferIn is in read-mode, positioned on a complete packet
+   * @param frameSize size of the packet
+   * @return true if the packet was relayed and consumed
+   */
+  private boolean relayAnswers(int frameSize) {
+    var start = bufferIn.position();
+    var code = bufferIn.get(start);
+    if (code != ANS_CODE && code != ANS_BATCH_CODE) { return false; }
+    var batch = code == ANS_BATCH_CODE;
+    var jobId = bufferIn.getLong(start + Byte.BYTES);
+    var oldLimit = bufferIn.limit();
+    bufferIn.limit(start + frameSize);
+    try {
+      var relayed = controller.relayAnswers(jobId, bufferIn, batch);
+      bufferIn.position(relayed ? start + frameSize : start);
+      return relayed;
+    } finally {
+      bufferIn.limit(oldLimit);
+    }
+  }
+
+  /**
+   * Processes a packet in the thread of the controller
+   */
+  private void handlePacket(Packet packet) {
+    try {
+      processPacket(packet);
+    } catch (IOException e) {
+      logger.log(Level.INFO, "Connection closed with client due to IOException", e);
+      silentlyClose();
     }
   }
 
   private void processPacket(Packet packet) throws IOException {
     switch (packet) {
       case InitPacket initPacket -> {
-        potential = initPacket.potential();
+        var received = receivedPotential(initPacket.potential());
+        var added = potentialAdded(received);
+        potential = received;
         controller.updateNeighbors(key);
         remoteAppID = initPacket.appID();
         controller.rerouteJobs(remoteAppID, this);
+        controller.rebalanceJobs(this, added);
       }
       case UpdtPacket updtPacket -> {
-        potential = updtPacket.potential();
+        var received = receivedPotential(updtPacket.potential());
+        var added = potentialAdded(received);
+        potential = received;
         controller.updateNeighbors(key);
         remoteAppID = updtPacket.appID();
         controller.rerouteJobs(remoteAppID, this);
+        controller.rebalanceJobs(this, added);
       }
       case AnsPacket ansPacket -> controller.transmitPacketToJobs(ansPacket);
-      case ReqPacket reqPacket -> controller.processRequestPacket(reqPacket, this);
+      case AnsBatchPacket ansBatchPacket -> controller.transmitPacketToJobs(ansBatchPacket);
+      case ReqPacket reqPacket ->
+          controller.processRequest(JobDescPacket.of(reqPacket), reqPacket.range_start(), reqPacket.range_end(), this);
+      case JobDescPacket jobDescPacket -> remoteJobs.put(jobDescPacket.job_id(), jobDescPacket);
+      case CapaPacket capaPacket -> {
+        if (capaReceived) { return; }
+        capaReceived = true;
+        threadPotentials = capaPacket.supports(CapaPacket.Capability.THREADS);
+        if (!capaSent) {
+          // The remote application knows CAPA, answering it can't break the connection
+          queuePacket(CapaPacket.local());
+          capaSent = true;
+        }
+        if (threadPotentials || potentialHeld) {
+          potentialHeld = false;
+          // The potential sent on connection counted nodes
+          queuePotential(controller.potential() - potential);
+        }
+      }
+      case ReqRangePacket reqRangePacket -> {
+        var descriptor = remoteJobs.get(reqRangePacket.job_id());
+        if (descriptor == null) {
+          logger.warning("Request for undescribed job " + reqRangePacket.job_id() + ", refusing it");
+          queuePacket(new RefPacket(reqRangePacket.job_id(), reqRangePacket.range_start(), reqRangePacket.range_end()));
+          return;
+        }
+        controller.processRequest(descriptor, reqRangePacket.range_start(), reqRangePacket.range_end(), this);
+      }
+      case ReqStridedPacket reqStridedPacket -> {
+        var descriptor = remoteJobs.get(reqStridedPacket.job_id());
+        if (descriptor == null) {
+          logger.warning("Request for undescribed job " + reqStridedPacket.job_id() + ", refusing it");
+          queueRefusal(reqStridedPacket.job_id(), reqStridedPacket.range());
+          return;
+        }
+        controller.processRequest(descriptor, reqStridedPacket.range(), this);
+      }
+      case PullPacket pullPacket -> controller.processPull(pullPacket, this);
+      case StealPacket stealPacket -> controller.processSteal(stealPacket, this);
+      case GivePacket givePacket -> controller.processGive(givePacket, this);
+      case CancelPacket cancelPacket -> controller.processCancel(cancelPacket.job_id(), this);
       case AccPacket accPacket -> controller.transmitPacketToJobs(accPacket);
-      case RefPacket refPacket -> controller.transmitPacketToJobs(refPacket);
+      case RefPacket refPacket -> controller.transmitPacketToJobs(refPacket, this);
+      case AccStridedPacket accStridedPacket -> controller.transmitPacketToJobs(accStridedPacket);
+      case RefStridedPacket refStridedPacket -> controller.transmitPacketToJobs(refStridedPacket, this);
       case DiscPacket discPacket -> {
         disconnecting = true;
         queuePacket(new OkDiscPacket());
@@ -144,25 +455,240 @@ public final class ConnectionContext implements Context {
 
   /**
    * Add a packet to the packet queue, tries to fill bufferOut and updateInterestOps
+   * Can be called from any thread, the packet is handed to the reactor of the connection if needed
    *
    * @param packet packet to queue for sending
    */
   public void queuePacket(Packet packet) {
     Objects.requireNonNull(packet);
+    if (!reactor.inLoop()) {
+      reactor.execute(() -> queuePacket(packet));
+      return;
+    }
     queue.add(packet);
+    if (isAnswer(packet)) {
+      queuedAnswers++;
+    }
     processOut();
     updateInterestOps();
   }
 
   /**
-   * Try to fill bufferOut from the message queue
+   * Queues a request for a range of a job. The job is described once on the connection if the remote
+   * application supports JOB_DESC, and only the range is sent afterwards, else a full REQ packet is sent.
+   * Must be called by the thread of the controller.
+   *
+   * @param descriptor description of the job
+   * @param start start of the range (included)
+   * @param end end of the range (excluded)
+   */
+  public void queueRequest(JobDescPacket descriptor, long start, long end) {
+    Objects.requireNonNull(descriptor);
+    if (!supports(CapaPacket.Capability.JOB_DESC)) {
+      queuePacket(descriptor.request(start, end));
+      return;
+    }
+    if (describedJobs.put(descriptor.job_id(), descriptor) == null) {
+      queuePacket(descriptor);
+    }
+    queuePacket(new ReqRangePacket(descriptor.job_id(), start, end));
+  }
+
+  /**
+   * Queues a request for values of a job taken by blocks across a range. The remote application gets a
+   * single REQ_STRIDED packet if it supports STRIDE, else one request per block.
+   * Must be called by the thread of the controller.
+   *
+   * @param descriptor description of the job
+   * @param range values requested
+   */
+  public void queueRequest(JobDescPacket descriptor, StridedRange range) {
+    Objects.requireNonNull(descriptor);
+    if (range.isContiguous()) {
+      queueRequest(descriptor, range.start(), range.contiguousEnd());
+      return;
+    }
+    if (!supports(CapaPacket.Capability.STRIDE) || !supports(CapaPacket.Capability.JOB_DESC)) {
+      range.forEachBlock((blockStart, blockEnd) -> queueRequest(descriptor, blockStart, blockEnd));
+      return;
+    }
+    if (describedJobs.put(descriptor.job_id(), descriptor) == null) {
+      queuePacket(descriptor);
+    }
+    queuePacket(new ReqStridedPacket(descriptor.job_id(), range));
+  }
+
+  /**
+   * Queues the acceptance of values of a job taken by blocks across a range, as a single ACC_STRIDED
+   * packet if the remote application supports STRIDE, else as one ACC packet per block
+   *
+   * @param jobID id of the job
+   * @param range values accepted
+   */
+  public void queueAcceptance(long jobID, StridedRange range) {
+    if (range.isEmpty()) { return; }
+    if (range.isContiguous()) {
+      queuePacket(new AccPacket(jobID, range.start(), range.contiguousEnd()));
+    } else if (supports(CapaPacket.Capability.STRIDE)) {
+      queuePacket(new AccStridedPacket(jobID, range));
+    } else {
+      range.forEachBlock((blockStart, blockEnd) -> queuePacket(new AccPacket(jobID, blockStart, blockEnd)));
+    }
+  }
+
+  /**
+   * Queues the refusal of values of a job taken by blocks across a range, as a single REF_STRIDED
+   * packet if the remote application supports STRIDE, else as one REF packet per block
    *
+   * @param jobID id of the job
+   * @param range values refused
+   */
+  public void queueRefusal(long jobID, StridedRange range) {
+    if (range.isEmpty()) { return; }
+    if (range.isContiguous()) {
+      queuePacket(new RefPacket(jobID, range.start(), range.contiguousEnd()));
+    } else if (supports(CapaPacket.Capability.STRIDE)) {
+      queuePacket(new RefStridedPacket(jobID, range));
+    } else {
+      range.forEachBlock((blockStart, blockEnd) -> queuePacket(new RefPacket(jobID, blockStart, blockEnd)));
+    }
+  }
+
+  /**
+   * Forgets about a job which is over: the descriptions exchanged for it are dropped.
+   * Must be called by the thread of the controller.
+   *
+   * @param jobID id of the job
+   */
+  public void forgetJob(long jobID) {
+    remoteJobs.remove(jobID);
+    describedJobs.remove(jobID);
+  }
+
+  /**
+   * Drops the answers of a cancelled job which are still queued, they are not sent.
+   * Can be called from any thread.
+   *
+   * @param jobID id of the job
+   */
+  public void dropAnswers(long jobID) {
+    reactor.execute(() -> purgeAnswers(jobID));
+  }
+
+  private void purgeAnswers(long jobID) {
+    if (closed) { return; }
+    var head = queue.peek();
+    for (var iterator = queue.iterator(); iterator.hasNext(); ) {
+      var packet = iterator.next();
+      var answerJobID = switch (packet) {
+        case AnsPacket ansPacket -> ansPacket.job_id();
+        case AnsBatchPacket ansBatchPacket -> ansBatchPacket.job_id();
+        case RawPacket rawPacket -> rawPacket.answerJobID();
+        default -> -1L;
+      };
+      if (answerJobID == jobID) {
+        iterator.remove();
+        queuedAnswers--;
+      }
+    }
+    if (queue.peek() != head) {
+      nextPacketSize = -1;
+    }
+    processOut();
+    updateInterestOps();
+  }
+
+  /**
+   * Queues an already encoded packet. If nothing is waiting to be sent, it's directly copied in bufferOut,
+   * else it's copied and queued behind the other packets.
+   * Can be called from any thread, the packet is copied and handed to the reactor of the connection if needed
+   *
+   * @param frame buffer in read mode containing exactly the packet, it is consumed
+   */
+  public void queueRawFrame(ByteBuffer frame) {
+    Objects.requireNonNull(frame);
+    if (!reactor.inLoop()) {
+      queuePacket(RawPacket.copyOf(frame));
+      return;
+    }
+    var canSend = queue.isEmpty() && hasSendCredits();
+    if (canSend) {
+      reserveOut(frame.remaining());
+    }
+    if (canSend && bufferOut.remaining() >= frame.remaining()) {
+      bufferOut.put(frame);
+      answerSent();
+    } else {
+      queue.add(RawPacket.copyOf(frame));
+      queuedAnswers++;
+      processOut();
+    }
+    updateInterestOps();
+  }
+
+  /**
+   * Try to fill bufferOut from the message queue
+   * CREDIT packets go first, answer packets only go while the remote application gives credits, and the other
+   * packets keep their place behind them.
    */
   private void processOut() {
-    ByteBuffer nextPacket;
-    while (!queue.isEmpty() && bufferOut.remaining() >= (nextPacket = queue.peek().toBuffer()).remaining()) {
-      bufferOut.put(nextPacket);
-      queue.remove();
+    try {
+      if (creditsToSend > 0) {
+        var creditPacket = new CreditPacket(creditsToSend);
+        reserveOut(creditPacket.encodedSize());
+        if (bufferOut.remaining() < creditPacket.encodedSize()) { return; }
+        creditPacket.writeTo(bufferOut);
+        creditsToSend = 0;
+      }
+      while (!queue.isEmpty()) {
+        var answer = isAnswer(queue.peek());
+        if (answer && !hasSendCredits()) { return; }
+        // The size of the head is kept between calls so a packet waiting for room is measured only once
+        if (nextPacketSize == -1) {
+          nextPacketSize = queue.peek().encodedSize();
+        }
+        reserveOut(nextPacketSize);
+        if (bufferOut.remaining() < nextPacketSize) { return; }
+        queue.remove().writeTo(bufferOut);
+        nextPacketSize = -1;
+        if (answer) {
+          queuedAnswers--;
+          answerSent();
+        }
+      }
+    } finally {
+      updateCongestion();
+    }
+  }
+
+  private static boolean isAnswer(Packet packet) {
+    // Raw packets are only used to relay answers
+    return packet instanceof AnsPacket || packet instanceof AnsBatchPacket || packet instanceof RawPacket;
+  }
+
+  private boolean hasSendCredits() {
+    return sendCredits > 0 || !supports(CapaPacket.Capability.CREDIT);
+  }
+
+  private void answerSent() {
+    if (supports(CapaPacket.Capability.CREDIT)) {
+      sendCredits--;
+    }
+  }
+
+  private void updateCongestion() {
+    if (queuedAnswers >= CONGESTION_HIGH_WATERMARK && sc.isOpen()) {
+      if (congested.compareAndSet(false, true)) {
+        controller.congestionStarted();
+      }
+    } else if (queuedAnswers <= CONGESTION_LOW_WATERMARK) {
+      endCongestion();
+    }
+  }
+
+  private void endCongestion() {
+    if (congested.compareAndSet(true, false)) {
+      controller.congestionEnded();
     }
   }
 
@@ -177,14 +703,13 @@ public final class ConnectionContext implements Context {
   private void updateInterestOps() {
     if (!key.isValid()) { return ;}
     int ops = 0;
-    if (!closed && bufferIn.hasRemaining()) {
+    // Without bufferIn, the connection is idle and a buffer is taken when there is something to read
+    if (!closed && (bufferIn == null || bufferIn.hasRemaining())) {
       ops |= SelectionKey.OP_READ;
     }
-    bufferOut.flip();
-    if (bufferOut.hasRemaining()) {
+    if (bufferOut != null && bufferOut.position() > 0) {
       ops |= SelectionKey.OP_WRITE;
     }
-    bufferOut.compact();
     key.interestOps(ops);
   }
 
@@ -196,16 +721,17 @@ public final class ConnectionContext implements Context {
    * @throws IOException in case of issues with the socket
    */
   public void doRead() throws IOException {
+    if (bufferIn == null) {
+      bufferIn = bufferPool.acquire(0);
+    }
     var bytesRead = sc.read(bufferIn);
     if (bytesRead == -1) {
       closed = true;
-      if (disconnecting) {
-        controller.reconnect(disconnectingPacket);
-        silentlyClose();
-        return;
-      }
+      // The disconnection packet may still be waiting to be processed by the controller
+      controller.execute(this::handleRemoteClose);
     }
     processIn();
+    releaseIdleBuffers();
     updateInterestOps();
   }
 
@@ -222,6 +748,7 @@ public final class ConnectionContext implements Context {
     sc.write(bufferOut);
     bufferOut.compact();
     processOut();
+    releaseIdleBuffers();
     updateInterestOps();
   }
 
@@ -230,15 +757,30 @@ public final class ConnectionContext implements Context {
     connectionComplete = true;
     key.interestOps(SelectionKey.OP_READ);
     remoteHost = (InetSocketAddress) sc.getRemoteAddress();
-    queuePacket(new UpdtPacket(controller.potential(), controller.appID()));
+    queuePacket(new UpdtPacket(advertisedPotential(controller.potential()), controller.appID()));
+    // Sent first by the connecting side, a parent which does not know CAPA closes the connection
+    queuePacket(CapaPacket.local());
+    capaSent = true;
     logger.info("Connected to " + remoteHost);
   }
 
-  private void silentlyClose() {
+  private void handleRemoteClose() {
+    if (!disconnecting) { return; }
+    try {
+      controller.reconnect(disconnectingPacket);
+    } catch (IOException e) {
+      logger.log(Level.INFO, "Could not reconnect after disconnection", e);
+    }
+    silentlyClose();
+  }
+
+  void silentlyClose() {
     try {
       sc.close();
     } catch (IOException ignored) {
       // ignore exception
     }
+    // Nothing will ever be sent, this connection must not hold the others back
+    endCongestion();
   }
 }
@@ -1,7 +1,9 @@
 package fr.uge.ugegreed;
 
 import fr.uge.ugegreed.commands.*;
+import fr.uge.ugegreed.jobs.JobOptions;
 
+import java.util.Arrays;
 import java.util.Locale;
 import java.util.Objects;
 import java.util.Scanner;
@@ -39,6 +41,7 @@ public final class Console {
           case "DEBUG" -> sendDebugCommand(splitLine);
           case "HELP" -> sendHelpCommand();
           case "CACHE" -> sendCacheCommand(splitLine);
+          case "CANCEL" -> sendCancelCommand(splitLine);
           default -> false;
         };
         if (!result) {
@@ -61,14 +64,28 @@ public final class Console {
   }
 
   private boolean sendStartCommand(String[] splitLine) throws InterruptedException {
-    if (splitLine.length != 6) {
+    if (splitLine.length < 6) {
       return false;
     }
     try {
       var start = Integer.parseInt(splitLine[3]);
       var end = Integer.parseInt(splitLine[4]);
       if (end < start) { return false; }
-      controller.sendCommand(new CommandStart(splitLine[1], splitLine[2], start, end, splitLine[5]));
+      var options = JobOptions.parse(Arrays.copyOfRange(splitLine, 6, splitLine.length));
+      if (options.isEmpty()) { return false; }
+      controller.sendCommand(new CommandStart(splitLine[1], splitLine[2], start, end, splitLine[5], options.get()));
+      return true;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  private boolean sendCancelCommand(String[] splitLine) throws InterruptedException {
+    if (splitLine.length != 2) {
+      return false;
+    }
+    try {
+      controller.sendCommand(new CommandCancel(Long.parseLong(splitLine[1])));
       return true;
     } catch (NumberFormatException e) {
       return false;
@@ -5,20 +5,27 @@ import fr.uge.ugegreed.commands.*;
 import fr.uge.ugegreed.jobs.Job;
 import fr.uge.ugegreed.jobs.Jobs;
 import fr.uge.ugegreed.packets.*;
+import fr.uge.ugegreed.utils.BufferPool;
+import fr.uge.ugegreed.utils.StridedRange;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.channels.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -30,20 +37,35 @@ import java.util.stream.Stream;
  */
 public final class Controller {
   private static final Logger logger = Logger.getLogger(Controller.class.getName());
+  private static int REACTOR_AMOUNT = 0;
+  private static final int SLAB_SIZE = 16 * 1024;
+  private static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
   private final Path jarPath;
-  private final Selector selector;
+  private final Reactor mainReactor;
+  // Reactors for the connections accepted by this node, if there are none they are managed by the main reactor
+  private final Reactor[] reactors;
+  private int nextReactor = 0;
+  // Connections to the other nodes, only used by the thread of the main reactor
+  private final HashSet<ConnectionContext> contexts = new HashSet<>();
+  // Connections with too many answers waiting to be sent, and connections waiting for the congestion to end
+  private final AtomicInteger congestedLinks = new AtomicInteger();
+  private final Set<ConnectionContext> congestionWaiters = ConcurrentHashMap.newKeySet();
+  // Buffers of the connections, shared by all the reactors
+  private final BufferPool bufferPool = new BufferPool(SLAB_SIZE, MAX_POOLED_BUFFER_SIZE);
   private InetSocketAddress parentAddress;
 
   private final int listenPort;
   private final ServerSocketChannel serverSocketChannel;
   private SocketChannel parentSocketChannel;
   private final Jobs jobs;
-  private int potential = 1;
+  // Capacity of this node, the number of threads computing values
+  private final int localPotential;
+  private int potential;
 
   private final int appID;
 
   // Related to disconnection
-  private boolean disconnecting = false;
+  private volatile boolean disconnecting = false;
   private int disconnectionCounter;
   private final HashMap<Integer, ArrayList<Long>> upstreamHostsToReplace = new HashMap<>();
 
@@ -52,6 +74,14 @@ public final class Controller {
 
   private boolean useCache = false;
 
+  public static void setReactorAmount(int amount) {
+    if (amount < 0) {
+      throw new IllegalArgumentException("Reactor amount cannot be negative");
+    }
+    Controller.REACTOR_AMOUNT = amount;
+  }
+  public static int getReactorAmount() { return REACTOR_AMOUNT; }
+
   /**
    * Creates a new controller
    * @param listenPort port to listen for new connections on
@@ -69,8 +99,14 @@ public final class Controller {
     Files.createDirectories(jarPath);
 
     this.listenPort = listenPort;
-    selector = Selector.open();
+    mainReactor = new Reactor(this::treatKey);
+    reactors = new Reactor[REACTOR_AMOUNT];
+    for (var i = 0; i < reactors.length; i++) {
+      reactors[i] = new Reactor(this::treatKey);
+    }
     jobs = new Jobs(resultPath, this);
+    localPotential = TaskExecutor.getThreadAmount();
+    potential = localPotential;
     this.parentAddress = parentAddress;
     serverSocketChannel = ServerSocketChannel.open();
     serverSocketChannel.bind(new InetSocketAddress(listenPort));
@@ -89,7 +125,7 @@ public final class Controller {
   public void sendCommand(Command command) throws InterruptedException {
     synchronized (commandQueue) {
       commandQueue.put(command);
-      selector.wakeup();
+      mainReactor.wakeup();
     }
   }
 
@@ -104,6 +140,7 @@ public final class Controller {
           case CommandDebug commandDebug -> processDebugCommand(commandDebug);
           case CommandHelp ignored -> processHelpCommand();
           case CommandCache commandCache -> processCacheCommand(commandCache);
+          case CommandCancel commandCancel -> processCancelCommand(commandCancel);
           default -> throw new UnsupportedOperationException("Unknown command: " + command);
         }
       }
@@ -111,9 +148,18 @@ public final class Controller {
   }
 
   private void processStartCommand(CommandStart command) throws IOException {
-    var result = jobs.createJob(command.urlJAR(), command.className(), command.rangeStart(), command.rangeEnd(), command.filename());
-    if (!result) {
+    var result = jobs.createJob(command.urlJAR(), command.className(), command.rangeStart(), command.rangeEnd(), command.filename(),
+        command.options());
+    if (result.isEmpty()) {
       logger.info("Job could not be started");
+      return;
+    }
+    System.out.println("Job " + result.getAsLong() + " started");
+  }
+
+  private void processCancelCommand(CommandCancel command) {
+    if (!jobs.cancelStartedJob(command.jobID())) {
+      logger.warning("No job " + command.jobID() + " was started by this node");
     }
   }
 
@@ -128,7 +174,7 @@ public final class Controller {
   private void processDebugCommand(CommandDebug command) {
     switch (command.debugCode()) {
       case POTENTIAL -> {
-        System.out.println("Total potential: " + potential);
+        System.out.println("Total potential: " + potential + " (local: " + localPotential + ")");
         System.out.println("Neighboring potentials:");
         availableNodesStream().forEach(ctx -> System.out.println(ctx.host() + " | " + ctx.remoteAppId() + " -> " + ctx.potential()));
       }
@@ -149,7 +195,8 @@ public final class Controller {
             new CommandDebug(CommandDebugCode.POTENTIAL),
             new CommandStart("dummy", "dummy", 1, 2, "dummy"),
             new CommandDisconnect(),
-            new CommandCache(false)
+            new CommandCache(false),
+            new CommandCancel(0)
     );
     System.out.println("Commands (" + commands.size() + ")");
     System.out.println(commands.stream().map(Command::getName).collect(Collectors.joining(" - ")) + "\n");
@@ -161,14 +208,20 @@ public final class Controller {
    * @throws IOException in case of TCP layer errors
    */
   public void launch() throws IOException {
+    mainReactor.bindToCurrentThread();
+    for (var i = 0; i < reactors.length; i++) {
+      reactors[i].start("reactor-" + i);
+    }
     serverSocketChannel.configureBlocking(false);
-    serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
-    logger.info("Listening on port " + listenPort);
+    mainReactor.register(serverSocketChannel, SelectionKey.OP_ACCEPT);
+    logger.info("Listening on port " + listenPort + " with " + reactors.length + " additional reactors");
 
     if (parentAddress != null) {
       parentSocketChannel.configureBlocking(false);
-      var key = parentSocketChannel.register(selector, SelectionKey.OP_CONNECT);
-      key.attach(new ConnectionContext(this, key, true));
+      var key = mainReactor.register(parentSocketChannel, SelectionKey.OP_CONNECT);
+      var context = new ConnectionContext(this, mainReactor, key, true);
+      key.attach(context);
+      contexts.add(context);
       parentSocketChannel.connect(parentAddress);
       parentKey = key;
       logger.info("Connecting to parent...");
@@ -181,10 +234,16 @@ public final class Controller {
 
     while(!Thread.interrupted()) {
       try {
-        selector.select(this::treatKey, 100);
+        if (!disconnecting && jobs.hasPendingAnswers()) {
+          // Answers left from the previous iteration, do not wait for network events
+          mainReactor.selectNow();
+        } else {
+          mainReactor.select(100);
+        }
         if (!disconnecting) {
           jobs.processContextQueue();
           jobs.processTaskExecutorQueue();
+          jobs.tick();
           processCommands();
         }
       } catch (UncheckedIOException tunneled) {
@@ -201,6 +260,10 @@ public final class Controller {
     } catch (IOException ioe) {
       // lambda call in select requires to tunnel IOException
       throw new UncheckedIOException(ioe);
+    } catch (RuntimeException e) {
+      // Only the client being accepted is lost, the server socket keeps accepting the others
+      logger.log(Level.SEVERE, "Failed to accept a client", e);
+      return;
     }
     try {
       if (key.isValid() && key.isConnectable()) {
@@ -216,6 +279,10 @@ public final class Controller {
     catch (IOException e) {
       logger.log(Level.INFO, "Connection closed with client due to IOException", e);
       silentlyClose(key);
+    } catch (RuntimeException e) {
+      // A bug in the treatment of a connection must not stop the reactor serving the others
+      logger.log(Level.SEVERE, "Connection closed with client due to an unexpected error", e);
+      silentlyClose(key);
     }
   }
 
@@ -227,28 +294,36 @@ public final class Controller {
       return;
     }
 
-    // Configure new key
+    // Configure new key, connections are spread over the reactors
     logger.info("Client " + sc.getRemoteAddress() + " connected.");
     sc.configureBlocking(false);
-    var clientKey = sc.register(selector, SelectionKey.OP_READ);
-    var context = new ConnectionContext(this, clientKey, false);
+    var reactor = reactors.length == 0 ? mainReactor : reactors[nextReactor++ % reactors.length];
+    // Not interested in anything until the context is attached, the first queued packet sets the interest ops
+    var clientKey = reactor.register(sc, 0);
+    var context = new ConnectionContext(this, reactor, clientKey, false);
     clientKey.attach(context);
+    contexts.add(context);
 
     // Reroute jobs if needed
     // TODO
 
 
     // Potential management
-    context.queuePacket(new InitPacket(potential, appID));
+    // CAPA is only sent in answer to the one of the new node, which older applications do not send
+    context.queuePacket(new InitPacket(context.advertisedPotential(potential), appID));
     reevaluatePotential();
     availableNodesStream().forEach(ctx -> {
       if (ctx.key() != clientKey) {
-        ctx.queuePacket(new UpdtPacket(potential - ctx.potential(), appID));
+        ctx.queuePotential(potential - ctx.potential());
       }
     });
   }
 
   private void silentlyClose(SelectionKey key) {
+    if (key.attachment() instanceof ConnectionContext context) {
+      context.silentlyClose();
+      return;
+    }
     try {
       key.channel().close();
     } catch (IOException ignored) {
@@ -271,15 +346,25 @@ public final class Controller {
     }
   }
 
+  /**
+   * Lets the running jobs give part of their work to a neighbor whose potential grew, for instance
+   * because a node joined the network behind it
+   * @param context connection to the neighbor
+   * @param addedPotential potential the neighbor gained
+   */
+  public void rebalanceJobs(ConnectionContext context, int addedPotential) {
+    Objects.requireNonNull(context);
+    if (addedPotential <= 0 || context.isUnavailableForAnswerPackets()) { return; }
+    jobs.rebalance(context, addedPotential);
+  }
+
   /**
    * Returns a stream of all connected nodes that are available (i.e. not disconnecting)
    * @return stream of all connected nodes
    */
   public Stream<ConnectionContext> availableNodesStream() {
-    return selector.keys().stream().map(SelectionKey::attachment)
-        .mapMulti((a, consumer) -> {
-          if (a instanceof ConnectionContext ctx && !ctx.isUnavailableForAnswerPackets()) { consumer.accept((ConnectionContext) a); }
-        });
+    contexts.removeIf(ctx -> !ctx.key().isValid());
+    return contexts.stream().filter(ctx -> !ctx.isUnavailableForAnswerPackets());
   }
 
   /**
@@ -290,6 +375,14 @@ public final class Controller {
     return potential;
   }
 
+  /**
+   * Returns the capacity of this node, the number of threads computing values
+   * @return the capacity of this node
+   */
+  public int localPotential() {
+    return localPotential;
+  }
+
   /**
    * Returns appID of the app
    * @return appID of the app
@@ -300,7 +393,7 @@ public final class Controller {
    * Reevaluates the total potential of the network
    */
   public void reevaluatePotential() {
-    potential = 1 + availableNodesStream().reduce(0, (n, ctx) -> n + ctx.potential(), Integer::sum);
+    potential = localPotential + availableNodesStream().reduce(0, (n, ctx) -> n + ctx.potential(), Integer::sum);
   }
 
   /**
@@ -313,7 +406,7 @@ public final class Controller {
     reevaluatePotential();
     availableNodesStream().forEach(ctx -> {
       if (ctx.key() != incomingHost) {
-        ctx.queuePacket(new UpdtPacket(potential - ctx.potential(), appID));
+        ctx.queuePotential(potential - ctx.potential());
       }
     });
   }
@@ -324,13 +417,151 @@ public final class Controller {
    */
   public void transmitPacketToJobs(Packet packet) {
     Objects.requireNonNull(packet);
-    jobs.queueContextPacket(packet);
+    jobs.queueContextPacket(packet, null);
   }
 
-  public void processRequestPacket(ReqPacket packet, ConnectionContext context) throws IOException {
+  /**
+   * Transmits a packet from a context to the job manager, along with the context it came from
+   * @param packet packet to transmit
+   * @param context context the packet came from
+   */
+  public void transmitPacketToJobs(Packet packet, ConnectionContext context) {
     Objects.requireNonNull(packet);
     Objects.requireNonNull(context);
-    jobs.processReqPacket(packet, context);
+    jobs.queueContextPacket(packet, context);
+  }
+
+  /**
+   * Relays encoded answers to the upstream host of their job without decoding them, if possible.
+   * Can be called from any thread.
+   * @param jobID id of the job the answers are for
+   * @param frame buffer in read mode containing exactly the encoded packet, consumed if relayed
+   * @param batch true if the packet is an ANS_BATCH packet, false if it's an ANS packet
+   * @return true if the answers were relayed, false if the packet must be decoded and handled normally
+   */
+  public boolean relayAnswers(long jobID, ByteBuffer frame, boolean batch) {
+    if (disconnecting) { return false; }
+    return jobs.relayAnswers(jobID, frame, batch);
+  }
+
+  /**
+   * Signals that a connection became congested, can be called from any thread
+   */
+  public void congestionStarted() {
+    congestedLinks.incrementAndGet();
+  }
+
+  /**
+   * Signals that a connection is not congested anymore, can be called from any thread.
+   * Every connection waiting for the end of a congestion is told so, as well as the controller,
+   * which may have stopped handling the answers of this node.
+   */
+  public void congestionEnded() {
+    congestedLinks.decrementAndGet();
+    for (var iterator = congestionWaiters.iterator(); iterator.hasNext();) {
+      var context = iterator.next();
+      iterator.remove();
+      context.congestionEnded();
+    }
+    wakeup();
+  }
+
+  /**
+   * Returns true if a connection other than the given one is congested, can be called from any thread
+   * @param context connection to ignore
+   * @return true if a connection other than the given one is congested
+   */
+  public boolean isCongestedExcept(ConnectionContext context) {
+    return congestedLinks.get() > (context.isCongested() ? 1 : 0);
+  }
+
+  /**
+   * Registers a connection to be told when a congestion ends, can be called from any thread
+   * @param context connection waiting for the end of a congestion
+   */
+  public void waitForDecongestion(ConnectionContext context) {
+    congestionWaiters.add(Objects.requireNonNull(context));
+  }
+
+  /**
+   * Processes a request for a range of a job coming from a neighbor
+   * @param descriptor description of the job
+   * @param start start of the range (included)
+   * @param end end of the range (excluded)
+   * @param context context the request came from
+   * @throws IOException in case of connection errors
+   */
+  public void processRequest(JobDescPacket descriptor, long start, long end, ConnectionContext context)
+      throws IOException {
+    Objects.requireNonNull(descriptor);
+    Objects.requireNonNull(context);
+    jobs.processRequest(descriptor, StridedRange.contiguous(start, end), context);
+  }
+
+  /**
+   * Processes a request for values of a job taken by blocks across a range, coming from a neighbor
+   * @param descriptor description of the job
+   * @param range values requested
+   * @param context context the request came from
+   * @throws IOException in case of connection errors
+   */
+  public void processRequest(JobDescPacket descriptor, StridedRange range, ConnectionContext context)
+      throws IOException {
+    Objects.requireNonNull(descriptor);
+    Objects.requireNonNull(range);
+    Objects.requireNonNull(context);
+    jobs.processRequest(descriptor, range, context);
+  }
+
+  /**
+   * Processes a neighbor asking for more work on a job
+   * @param pullPacket packet received
+   * @param context context the packet came from
+   */
+  public void processPull(PullPacket pullPacket, ConnectionContext context) {
+    Objects.requireNonNull(pullPacket);
+    Objects.requireNonNull(context);
+    jobs.processPull(pullPacket, context);
+  }
+
+  /**
+   * Processes a neighbor which ran out of work on a job asking for some of the work of this node
+   * @param stealPacket packet received
+   * @param context context the packet came from
+   */
+  public void processSteal(StealPacket stealPacket, ConnectionContext context) {
+    Objects.requireNonNull(stealPacket);
+    Objects.requireNonNull(context);
+    jobs.processSteal(stealPacket, context);
+  }
+
+  /**
+   * Processes the answer of a neighbor to a STEAL packet sent by this node
+   * @param givePacket packet received
+   * @param context context the packet came from
+   */
+  public void processGive(GivePacket givePacket, ConnectionContext context) {
+    Objects.requireNonNull(givePacket);
+    Objects.requireNonNull(context);
+    jobs.processGive(givePacket, context);
+  }
+
+  /**
+   * Processes a neighbor cancelling a job
+   * @param jobID id of the job
+   * @param context context the packet came from
+   */
+  public void processCancel(long jobID, ConnectionContext context) {
+    Objects.requireNonNull(context);
+    jobs.processCancel(jobID, context);
+  }
+
+  /**
+   * Cancels a job started by this node, on every node working on it
+   * @param jobID id of the job
+   */
+  public void cancelJob(long jobID) {
+    jobs.cancelStartedJob(jobID);
   }
 
   private void broadcastDisconnection() {
@@ -365,7 +596,8 @@ public final class Controller {
     disconnectionCounter--;
     if (disconnectionCounter == 0) {
       // Shutdown server
-      selector.keys().forEach(this::silentlyClose);
+      contexts.forEach(ctx -> silentlyClose(ctx.key()));
+      mainReactor.selector().keys().forEach(this::silentlyClose);
       Thread.currentThread().interrupt();
       System.exit(0);
     }
@@ -388,8 +620,10 @@ public final class Controller {
       case RediPacket rediPacket -> {
         parentSocketChannel = SocketChannel.open();
         parentSocketChannel.configureBlocking(false);
-        var key = parentSocketChannel.register(selector, SelectionKey.OP_CONNECT);
-        key.attach(new ConnectionContext(this, key, true));
+        var key = mainReactor.register(parentSocketChannel, SelectionKey.OP_CONNECT);
+        var context = new ConnectionContext(this, mainReactor, key, true);
+        key.attach(context);
+        contexts.add(context);
         parentSocketChannel.connect(rediPacket.new_parent());
 
         jobs.swapUpstreamHost(parentKey, key);
@@ -412,7 +646,7 @@ public final class Controller {
       URL url = new URL(jarURL);
       var socketChannel = SocketChannel.open();
       socketChannel.configureBlocking(false);
-      var key = socketChannel.register(selector, SelectionKey.OP_CONNECT);
+      var key = mainReactor.register(socketChannel, SelectionKey.OP_CONNECT);
       key.attach(new HttpContext(key, jarURL, jarPath, job));
       socketChannel.connect(new InetSocketAddress(url.getHost(), 80));
     } catch (MalformedURLException | UnresolvedAddressException ignored) {
@@ -421,6 +655,30 @@ public final class Controller {
     }
   }
 
+  /**
+   * Wakes up the controller if it's waiting for network events, can be called from any thread
+   */
+  public void wakeup() {
+    mainReactor.wakeup();
+  }
+
+  /**
+   * Runs a task in the thread of the controller, can be called from any thread.
+   * Everything touching jobs or the state of the network must go through it.
+   * @param task task to run
+   */
+  public void execute(Runnable task) {
+    mainReactor.execute(task);
+  }
+
+  /**
+   * Returns the pool the connections take their buffers from
+   * @return the pool the connections take their buffers from
+   */
+  public BufferPool bufferPool() {
+    return bufferPool;
+  }
+
   public boolean useCache() {
     return this.useCache;
   }
@@ -14,10 +14,10 @@ public final class Main {
   private static final Logger logger = Logger.getLogger(Main.class.getSimpleName());
   private static int errorLogged;
   private static void usage() {
-    System.out.println("Usage : UGEGreed port resultPath [ip port] [-t [ThreadAmount]]");
+    System.out.println("Usage : UGEGreed port resultPath [ip port] [-t [ThreadAmount]] [-r [ReactorAmount]]");
   }
   public static void main(String[] args) throws IOException {
-    if (args.length < 2 || args.length > 6) {
+    if (args.length < 2 || args.length > 8) {
       usage();
       return;
     }
@@ -59,6 +59,16 @@ public final class Main {
           logger.info("Thread Default Amount is " + TaskExecutor.getThreadAmount() + ", you can set it up by inputing a number after the -t option");
         }
       }
+      else if (args[i].equals("-r")) {
+        if (args.length > i + 1) {
+          int reactorAmount = Integer.parseInt(args[i + 1]);
+          Controller.setReactorAmount(reactorAmount);
+          logger.info("Set Reactor Amount to " + Controller.getReactorAmount());
+          i++;
+        } else {
+          logger.info("Reactor Default Amount is " + Controller.getReactorAmount() + ", you can set it up by inputing a number after the -r option");
+        }
+      }
       else if (args.length - i > 2) {
         try {
           parentAddress = new InetSocketAddress(args[i], Integer.parseInt(args[i+1]));
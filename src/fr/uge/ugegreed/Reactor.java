@@ -0,0 +1,141 @@
+package fr.uge.ugegreed;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Event loop owning a selector and the contexts registered to it.
+ * Only the thread running the loop may use these contexts, other threads hand it tasks through execute.
+ */
+public final class Reactor {
+  private static final Logger logger = Logger.getLogger(Reactor.class.getName());
+  private final Selector selector;
+  private final Consumer<SelectionKey> keyHandler;
+  private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+  private volatile Thread owner;
+
+  /**
+   * Creates a new reactor
+   * @param keyHandler action to run for each selected key, any exception it throws stops the loop
+   * @throws IOException if the selector can't be opened
+   */
+  public Reactor(Consumer<SelectionKey> keyHandler) throws IOException {
+    this.keyHandler = Objects.requireNonNull(keyHandler);
+    selector = Selector.open();
+  }
+
+  /**
+   * Makes the current thread the one running the loop, for reactors which are driven by the caller
+   */
+  public void bindToCurrentThread() {
+    owner = Thread.currentThread();
+  }
+
+  /**
+   * Starts a dedicated thread running the loop until it is interrupted
+   * @param name name of the thread
+   */
+  public void start(String name) {
+    Objects.requireNonNull(name);
+    Thread.ofPlatform().name(name).daemon().start(() -> {
+      bindToCurrentThread();
+      while (!Thread.interrupted()) {
+        try {
+          select(0);
+        } catch (IOException | UncheckedIOException e) {
+          logger.log(Level.SEVERE, "Reactor " + name + " stopped", e);
+          return;
+        }
+      }
+    });
+  }
+
+  /**
+   * Returns true if the current thread is the one running the loop
+   * @return true if the current thread is the one running the loop
+   */
+  public boolean inLoop() {
+    return Thread.currentThread() == owner;
+  }
+
+  /**
+   * Runs a task in the thread of the loop. It is run right away if the caller is that thread,
+   * else it is queued and the selector is woken up. Tasks are run in the order they were given.
+   * @param task task to run
+   */
+  public void execute(Runnable task) {
+    Objects.requireNonNull(task);
+    if (inLoop()) {
+      task.run();
+      return;
+    }
+    tasks.add(task);
+    selector.wakeup();
+  }
+
+  /**
+   * Registers a channel to the selector of this reactor, can be called from any thread
+   * @param channel channel to register, in non-blocking mode
+   * @param ops initial interest set
+   * @return the new key
+   * @throws IOException if the channel is closed
+   */
+  public SelectionKey register(SelectableChannel channel, int ops) throws IOException {
+    var key = channel.register(selector, ops);
+    selector.wakeup();
+    return key;
+  }
+
+  /**
+   * Waits for network events, treats them and runs the queued tasks
+   * @param timeout maximum time to wait in milliseconds, 0 to wait until an event or a task arrives
+   * @throws IOException in case of selector errors
+   */
+  public void select(long timeout) throws IOException {
+    selector.select(keyHandler, timeout);
+    runTasks();
+  }
+
+  /**
+   * Treats the network events which are ready without waiting, then runs the queued tasks
+   * @throws IOException in case of selector errors
+   */
+  public void selectNow() throws IOException {
+    selector.selectNow(keyHandler);
+    runTasks();
+  }
+
+  private void runTasks() {
+    for (var task = tasks.poll(); task != null; task = tasks.poll()) {
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        // The tasks queued behind it and the network events are still treated
+        logger.log(Level.SEVERE, "Task failed in reactor", e);
+      }
+    }
+  }
+
+  /**
+   * Wakes up the loop if it's waiting for network events, can be called from any thread
+   */
+  public void wakeup() {
+    selector.wakeup();
+  }
+
+  /**
+   * Returns the selector of this reactor
+   * @return the selector of this reactor
+   */
+  public Selector selector() {
+    return selector;
+  }
+}
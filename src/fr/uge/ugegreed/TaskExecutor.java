@@ -1,33 +1,398 @@
 package fr.uge.ugegreed;
 
-import fr.uge.ugegreed.packets.AnsPacket;
+import fr.uge.ugegreed.packets.AnsBatchPacket;
+import fr.uge.ugegreed.utils.SignalingQueue;
+import fr.uge.ugegreed.utils.TypeToByteWriter;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Objects;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public final class TaskExecutor {
+    private static final Logger logger = Logger.getLogger(TaskExecutor.class.getName());
     private static int THREAD_AMOUNT = 16;
+    private static final long MAX_CHUNK_SIZE = 1024;
+    // Number of chunks each thread should get on average, more chunks means better balancing between threads
+    private static final int CHUNKS_PER_THREAD = 4;
+    // Approximate size of the answers sent in one batch, it must stay well under the size of the connection buffers
+    private static final int MAX_BATCH_BYTES = 4096;
 
     public static void setThreadAmount(int amount) { TaskExecutor.THREAD_AMOUNT = amount; }
     public static int getThreadAmount() { return THREAD_AMOUNT; }
-    private final ExecutorService executorService;
-    private final ArrayBlockingQueue<AnsPacket> queue;
-    public TaskExecutor(ArrayBlockingQueue<AnsPacket> queue) {
+
+    /**
+     * Range of values given away by the executor, see steal
+     * @param start start of the range (included)
+     * @param end end of the range (excluded)
+     */
+    public record StolenRange(long start, long end) {}
+
+    /**
+     * Range of values of a job, the workers claim chunks of it until it is exhausted or cancelled.
+     * Its cursor and its end are guarded by the lock of the executor.
+     */
+    private final class RangeTask {
+        private final Checker checker;
+        private final long jobID;
+        private final long chunkSize;
+        private final AtomicLong remaining;
+        private long cursor;
+        private long end;
+        // Number of chunks claimed and not computed yet
+        private int inFlight;
+        private volatile boolean cancelled = false;
+
+        private RangeTask(Checker checker, long jobID, long start, long end, long chunkSize) {
+            this.checker = checker;
+            this.jobID = jobID;
+            this.cursor = start;
+            this.end = end;
+            this.chunkSize = chunkSize;
+            this.remaining = new AtomicLong(end - start);
+        }
+
+        /**
+         * Stops the task before the last values no worker claimed yet, so that they are computed elsewhere.
+         * Must be called with the lock of the executor held.
+         * @param amount number of values to give away, lower than the number of unclaimed values
+         * @return the values given away
+         */
+        private StolenRange split(long amount) {
+            var stolen = new StolenRange(end - amount, end);
+            end = stolen.start;
+            remaining.addAndGet(-amount);
+            return stolen;
+        }
+
+        private void computeChunk(long chunkStart, long chunkEnd) throws InterruptedException {
+            var deltas = new int[(int) (chunkEnd - chunkStart)];
+            var results = new String[deltas.length];
+            var count = 0;
+            var batchBytes = 0;
+            var base = chunkStart;
+            for (var value = chunkStart; value < chunkEnd; value++) {
+                if (cancelled) { return; }
+                var result = checker.check(value);
+                deltas[count] = (int) (value - base);
+                results[count] = result;
+                count++;
+                batchBytes += Integer.BYTES * 2 + TypeToByteWriter.utf8Length(result);
+                if (batchBytes >= MAX_BATCH_BYTES) {
+                    if (!send(base, deltas, results, count)) { return; }
+                    count = 0;
+                    batchBytes = 0;
+                    base = value + 1;
+                }
+            }
+            if (count > 0) {
+                send(base, deltas, results, count);
+            }
+        }
+
+        /**
+         * Puts a batch of answers in the queue, unless the task is cancelled while the queue is full
+         * @return false if the task was cancelled
+         */
+        private boolean send(long base, int[] deltas, String[] results, int count) throws InterruptedException {
+            var batch = new AnsBatchPacket(jobID, base, Arrays.copyOf(deltas, count), Arrays.copyOf(results, count));
+            return queue.put(batch, () -> cancelled);
+        }
+    }
+
+    /**
+     * Ranges of a job waiting for the workers, along with its share of the threads.
+     * Guarded by the lock of the executor.
+     */
+    private static final class JobQueue {
+        private final ArrayDeque<RangeTask> tasks = new ArrayDeque<>();
+        private int weight = 1;
+        // True while the answers of the job can't be handled, no chunk is taken from it
+        private boolean paused;
+        // Compute time used by the job divided by its weight, the next chunk is taken from the job with the least
+        private long virtualTime;
+        // Average compute time of a value, used to charge a chunk before it is computed
+        private long nanosPerValue;
+    }
+
+    private record Chunk(RangeTask task, JobQueue jobQueue, long start, long end, long charged) {}
+
+    private final SignalingQueue<AnsBatchPacket> queue;
+    private final ConcurrentHashMap<Long, Set<RangeTask>> runningTasks = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final HashMap<Long, JobQueue> jobQueues = new HashMap<>();
+    // Virtual time of the last job a chunk was taken from, jobs getting work again start from there
+    private long virtualClock;
+
+    public TaskExecutor(SignalingQueue<AnsBatchPacket> queue) {
         Objects.requireNonNull(queue);
         this.queue = queue;
-        this.executorService = Executors.newFixedThreadPool(THREAD_AMOUNT);
+        var factory = Thread.ofPlatform().daemon().name("task-executor-", 0).factory();
+        for (var i = 0; i < THREAD_AMOUNT; i++) {
+            factory.newThread(this::work).start();
+        }
     }
+
+    /**
+     * Schedules the computation of a range of values for a job, the range is split in chunks
+     * which are computed in parallel by all the threads of the executor.
+     * Ranges of a job are computed in the order they were added, and the threads are shared between jobs
+     * by weighted fair queueing: each job is charged the compute time of its chunks divided by its weight,
+     * and the next chunk goes to the job charged the least. A short job added while a large one is running
+     * thus gets its share of the threads right away.
+     * @param checker checker to use
+     * @param job_id id of the job
+     * @param range_start start of the range (included)
+     * @param range_end end of the range (excluded)
+     */
     public void addJob(Checker checker, long job_id, long range_start, long range_end) {
-        executorService.submit(() -> {
-            for (long value = range_start; value < range_end; value++) {
+        Objects.requireNonNull(checker);
+        if (range_start >= range_end) { return; }
+        var size = range_end - range_start;
+        var chunkSize = Long.max(1, Long.min(MAX_CHUNK_SIZE, size / ((long) THREAD_AMOUNT * CHUNKS_PER_THREAD)));
+
+        var task = new RangeTask(checker, job_id, range_start, range_end, chunkSize);
+        // Added within compute, so that a worker unregistering the last task of the job can't drop the set in between
+        runningTasks.compute(job_id, (k, tasks) -> {
+            var registered = tasks == null ? ConcurrentHashMap.<RangeTask>newKeySet() : tasks;
+            registered.add(task);
+            return registered;
+        });
+        lock.lock();
+        try {
+            var jobQueue = jobQueues.computeIfAbsent(job_id, k -> new JobQueue());
+            if (jobQueue.tasks.isEmpty()) {
+                // A job does not keep credit from the time it had nothing to compute
+                jobQueue.virtualTime = Long.max(jobQueue.virtualTime, virtualClock);
+            }
+            jobQueue.tasks.add(task);
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the share of the threads a job gets while other jobs are computed, a job of weight 2 gets
+     * twice as much compute time as a job of weight 1
+     * @param job_id id of the job
+     * @param weight weight of the job, strictly positive
+     */
+    public void setWeight(long job_id, int weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("weight must be strictly positive");
+        }
+        lock.lock();
+        try {
+            jobQueues.computeIfAbsent(job_id, k -> new JobQueue()).weight = weight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        try {
+            for (;;) {
+                var chunk = takeChunk();
+                var startTime = System.nanoTime();
                 try {
-                    queue.put(new AnsPacket(job_id, value, checker.check(value)));
-                } catch (InterruptedException e) {
-                    return;
+                    chunk.task.computeChunk(chunk.start, chunk.end);
+                } catch (RuntimeException e) {
+                    // The rest of the chunk is given up on, the worker goes on with the next one
+                    logger.log(Level.WARNING, "Checker of job " + chunk.task.jobID + " failed on ["
+                        + chunk.start + ", " + chunk.end + "), the values left in it are not computed", e);
                 }
+                var elapsed = System.nanoTime() - startTime;
+                chunk.task.remaining.addAndGet(chunk.start - chunk.end);
+                chunkComputed(chunk, elapsed);
             }
+        } catch (InterruptedException e) {
+            // Stops the worker
+        }
+    }
+
+    /**
+     * Waits for a chunk to compute, taken from the job with the least virtual time
+     */
+    private Chunk takeChunk() throws InterruptedException {
+        lock.lock();
+        try {
+            for (;;) {
+                JobQueue next = null;
+                for (var jobQueue : jobQueues.values()) {
+                    if (!jobQueue.paused && !jobQueue.tasks.isEmpty() && (next == null || jobQueue.virtualTime < next.virtualTime)) {
+                        next = jobQueue;
+                    }
+                }
+                if (next == null) {
+                    workAvailable.await();
+                    continue;
+                }
+                var task = next.tasks.peek();
+                var chunkStart = task.cursor;
+                var chunkEnd = task.end - task.cursor <= task.chunkSize ? task.end : task.cursor + task.chunkSize;
+                task.cursor = chunkEnd;
+                task.inFlight++;
+                if (task.cursor >= task.end) {
+                    next.tasks.poll();
+                }
+                virtualClock = next.virtualTime;
+                // Charged right away so that the other workers do not all pick the same job
+                var charged = (chunkEnd - chunkStart) * next.nanosPerValue / next.weight;
+                next.virtualTime += charged;
+                return new Chunk(task, next, chunkStart, chunkEnd, charged);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void chunkComputed(Chunk chunk, long elapsed) {
+        lock.lock();
+        try {
+            var jobQueue = chunk.jobQueue;
+            jobQueue.virtualTime += elapsed / jobQueue.weight - chunk.charged;
+            var perValue = elapsed / (chunk.end - chunk.start);
+            jobQueue.nanosPerValue = jobQueue.nanosPerValue == 0 ? perValue : (jobQueue.nanosPerValue * 7 + perValue) / 8;
+            chunk.task.inFlight--;
+            if (chunk.task.cursor >= chunk.task.end && chunk.task.inFlight == 0) {
+                unregister(chunk.task);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the computation of every range of a job. Workers finish the value they are computing
+     * and then give up on the rest of the range.
+     * @param job_id id of the job
+     */
+    public void cancelJob(long job_id) {
+        lock.lock();
+        try {
+            jobQueues.remove(job_id);
+        } finally {
+            lock.unlock();
+        }
+        var tasks = runningTasks.remove(job_id);
+        if (tasks == null) { return; }
+        tasks.forEach(task -> task.cancelled = true);
+        // Workers waiting for room in the queue give up on the answers of the job
+        queue.wakeUpProducers();
+    }
+
+    /**
+     * Stops giving chunks of a job to the workers, the chunks being computed are finished
+     * @param job_id id of the job
+     */
+    public void pauseJob(long job_id) {
+        lock.lock();
+        try {
+            var jobQueue = jobQueues.get(job_id);
+            if (jobQueue != null) {
+                jobQueue.paused = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives chunks of a paused job to the workers again, the job gets no credit for the time it was paused
+     * @param job_id id of the job
+     */
+    public void resumeJob(long job_id) {
+        lock.lock();
+        try {
+            var jobQueue = jobQueues.get(job_id);
+            if (jobQueue == null || !jobQueue.paused) { return; }
+            jobQueue.paused = false;
+            jobQueue.virtualTime = Long.max(jobQueue.virtualTime, virtualClock);
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of values of a job that were scheduled on this executor and are not computed yet.
+     * It is updated once per computed chunk.
+     * @param job_id id of the job
+     * @return number of values left to compute
+     */
+    public long pendingValues(long job_id) {
+        var tasks = runningTasks.get(job_id);
+        if (tasks == null) { return 0; }
+        return tasks.stream().mapToLong(task -> task.remaining.get()).sum();
+    }
+
+    /**
+     * Returns an estimate of the time the threads need to compute every value waiting on this executor,
+     * from the average compute time of a value of each job. Values of jobs not measured yet are not counted.
+     * @return estimated time before the executor runs out of work, in nanoseconds
+     */
+    public long backlogNanos() {
+        lock.lock();
+        try {
+            var backlog = 0.0;
+            for (var jobQueue : jobQueues.values()) {
+                for (var task : jobQueue.tasks) {
+                    backlog += (double) (task.end - task.cursor) * jobQueue.nanosPerValue;
+                }
+            }
+            return (long) (backlog / THREAD_AMOUNT);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives away a share of the values of a job no worker claimed yet, for another node to compute them.
+     * They are taken from the end of the range with the most unclaimed values, which is left with at least
+     * one chunk. Nothing is given if no range has at least two chunks unclaimed.
+     * @param job_id id of the job
+     * @param share part of the unclaimed values of the range to give away, between 0 and 1
+     * @return the values given away, which this executor will not compute, or an empty optional
+     */
+    public Optional<StolenRange> steal(long job_id, double share) {
+        if (share <= 0 || share >= 1) {
+            throw new IllegalArgumentException("share must be between 0 and 1");
+        }
+        lock.lock();
+        try {
+            var jobQueue = jobQueues.get(job_id);
+            if (jobQueue == null) { return Optional.empty(); }
+            RangeTask victim = null;
+            for (var task : jobQueue.tasks) {
+                if (victim == null || task.end - task.cursor > victim.end - victim.cursor) {
+                    victim = task;
+                }
+            }
+            if (victim == null) { return Optional.empty(); }
+            var unclaimed = victim.end - victim.cursor;
+            if (unclaimed < victim.chunkSize * 2) { return Optional.empty(); }
+            var amount = Long.min((long) (unclaimed * share), unclaimed - victim.chunkSize);
+            if (amount <= 0) { return Optional.empty(); }
+            return Optional.of(victim.split(amount));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void unregister(RangeTask task) {
+        runningTasks.computeIfPresent(task.jobID, (k, tasks) -> {
+            tasks.remove(task);
+            return tasks.isEmpty() ? null : tasks;
         });
     }
 }
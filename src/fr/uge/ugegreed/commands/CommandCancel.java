@@ -0,0 +1,20 @@
+package fr.uge.ugegreed.commands;
+
+/**
+ * Represents a console command to cancel a job started by this node
+ * @param jobID id of the job
+ */
+public record CommandCancel(long jobID) implements Command {
+  @Override
+  public CommandHelpData getHelp() {
+    return new CommandHelpData("CANCEL",
+            new CommandHelpData.Argument[]{
+                    new CommandHelpData.Argument("job-id", "the id of the job, as given when it was started"),
+            }, "Stop a job started by this node on every node computing it, the results already received are kept");
+  }
+
+  @Override
+  public String getName() {
+    return "CANCEL";
+  }
+}
@@ -1,5 +1,7 @@
 package fr.uge.ugegreed.commands;
 
+import fr.uge.ugegreed.jobs.JobOptions;
+
 import java.util.Objects;
 
 /**
@@ -9,12 +11,15 @@ import java.util.Objects;
  * @param rangeStart number to start at (included)
  * @param rangeEnd number to end at (excluded)
  * @param filename name of the file where to store the results
+ * @param options options of the job
  */
-public record CommandStart(String urlJAR, String className, long rangeStart, long rangeEnd, String filename) implements Command {
+public record CommandStart(String urlJAR, String className, long rangeStart, long rangeEnd, String filename,
+                           JobOptions options) implements Command {
   public CommandStart {
     Objects.requireNonNull(urlJAR);
     Objects.requireNonNull(className);
     Objects.requireNonNull(filename);
+    Objects.requireNonNull(options);
     if (rangeEnd < rangeStart) {
       throw new IllegalArgumentException("rangeEnd must be >= rangeStart");
     }
@@ -29,6 +34,10 @@ public record CommandStart(String urlJAR, String className, long rangeStart, lon
     }
   }
 
+  public CommandStart(String urlJAR, String className, long rangeStart, long rangeEnd, String filename) {
+    this(urlJAR, className, rangeStart, rangeEnd, filename, JobOptions.DEFAULT);
+  }
+
   @Override
   public CommandHelpData getHelp() {
     return new CommandHelpData("START",
@@ -38,7 +47,8 @@ public record CommandStart(String urlJAR, String className, long rangeStart, lon
                     new CommandHelpData.Argument("start-range", "the first value to test"),
                     new CommandHelpData.Argument("end-range", "the last value to test"),
                     new CommandHelpData.Argument("filename ", "the name of the output file to store result in"),
-            }, "Start the checking of a given conjecture");
+                    new CommandHelpData.Argument("[options]", "optional key=value pairs: dynamic=true to lease ranges to the nodes asking for work, minchunk=<n> and maxchunk=<n> to bound the number of values leased at once per unit of potential, weight=<n> for the share of the threads the job gets while other jobs run"),
+            }, "Start the checking of a given conjecture, the id of the job is printed");
   }
 
   @Override
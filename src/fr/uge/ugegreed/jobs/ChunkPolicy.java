@@ -0,0 +1,39 @@
+package fr.uge.ugegreed.jobs;
+
+/**
+ * Guided self-scheduling of the ranges of a dynamic job. Each chunk is a share of the values left, in proportion
+ * to the potential of the node receiving it: chunks are large at the start of a job so that few packets are
+ * needed, and shrink as the job nears its end so that no node is left grinding through a large slice while
+ * the others are idle.
+ * @param minChunk smallest chunk per unit of potential
+ * @param maxChunk largest chunk per unit of potential
+ */
+public record ChunkPolicy(long minChunk, long maxChunk) {
+    // Each round of chunks hands out about 1/FACTOR of the values left
+    private static final long FACTOR = 2;
+
+    public ChunkPolicy {
+        if (minChunk < 1) {
+            throw new IllegalArgumentException("minChunk must be strictly positive");
+        }
+        if (maxChunk < minChunk) {
+            throw new IllegalArgumentException("maxChunk must be >= minChunk");
+        }
+    }
+
+    /**
+     * Returns the size of the next chunk to give
+     * @param remaining number of values left to give
+     * @param potential potential of the node receiving the chunk
+     * @param totalPotential potential of the whole network
+     * @return size of the chunk, never more than remaining
+     */
+    public long nextChunk(long remaining, int potential, int totalPotential) {
+        if (remaining <= 0) { return 0; }
+        var weight = Integer.max(1, potential);
+        var perUnit = Math.ceilDiv(remaining, FACTOR * Integer.max(1, totalPotential));
+        perUnit = Long.min(maxChunk, Long.max(minChunk, perUnit));
+        if (perUnit >= Math.ceilDiv(remaining, weight)) { return remaining; }
+        return perUnit * weight;
+    }
+}
@@ -0,0 +1,179 @@
+package fr.uge.ugegreed.jobs;
+
+import fr.uge.ugegreed.Checker;
+import fr.uge.ugegreed.utils.StridedRange;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Estimated compute time of the values of a job, modelled as proportional to (|value| + 1)^exponent.
+ * An exponent of 0 means every value costs the same. Ranges are split by cost so that the slice holding
+ * the largest values is narrower when those are the most expensive ones, for instance for primality tests.
+ * @param exponent exponent of the cost curve, between 0 and MAX_EXPONENT
+ */
+public record CostModel(double exponent) {
+    public static final CostModel UNIFORM = new CostModel(0);
+    public static final double MAX_EXPONENT = 4;
+    // Values are timed in groups spread across the range, the cheapest of two rounds is kept for each group
+    private static final int SAMPLE_POINTS = 16;
+    private static final int VALUES_PER_POINT = 4;
+    private static final int ROUNDS = 2;
+    // Sampling stops after this long, the model is fitted on what was timed so far
+    private static final long SAMPLE_BUDGET = TimeUnit.MILLISECONDS.toNanos(500);
+    // Exponents under this are noise, the model stays uniform
+    private static final double MIN_EXPONENT = 0.05;
+
+    public CostModel {
+        if (!(exponent >= 0 && exponent <= MAX_EXPONENT)) {
+            throw new IllegalArgumentException("exponent must be between 0 and " + MAX_EXPONENT);
+        }
+    }
+
+    /**
+     * Times a checker on a few values spread across a range and fits a cost curve on them.
+     * It runs the checker on the calling thread, which should not be the thread of the controller.
+     * @param checker checker of the job
+     * @param start start of the range (included)
+     * @param end end of the range (excluded)
+     * @return the fitted model, uniform if the range is too small or the timings show no trend
+     * @throws InterruptedException if the checker was interrupted
+     */
+    public static CostModel sample(Checker checker, long start, long end) throws InterruptedException {
+        return sample(checker, start, end, System::nanoTime);
+    }
+
+    /**
+     * Times a checker on a few values spread across a range with the given clock and fits a cost curve on them
+     * @param checker checker of the job
+     * @param start start of the range (included)
+     * @param end end of the range (excluded)
+     * @param clock source of the time, in nanoseconds
+     * @return the fitted model, uniform if the range is too small or the timings show no trend
+     * @throws InterruptedException if the checker was interrupted
+     */
+    public static CostModel sample(Checker checker, long start, long end, LongSupplier clock)
+        throws InterruptedException {
+        Objects.requireNonNull(checker);
+        Objects.requireNonNull(clock);
+        if (end - start < (long) SAMPLE_POINTS * VALUES_PER_POINT * 2) { return UNIFORM; }
+        var values = new long[SAMPLE_POINTS];
+        var nanos = new long[SAMPLE_POINTS];
+        var step = (end - start - VALUES_PER_POINT) / (SAMPLE_POINTS - 1);
+        for (var i = 0; i < SAMPLE_POINTS; i++) {
+            values[i] = start + step * i;
+            nanos[i] = Long.MAX_VALUE;
+        }
+        var deadline = clock.getAsLong() + SAMPLE_BUDGET;
+        var timed = 0;
+        for (var round = 0; round < ROUNDS; round++) {
+            for (var i = 0; i < SAMPLE_POINTS; i++) {
+                if (clock.getAsLong() - deadline >= 0) { return fit(values, nanos, timed); }
+                var begin = clock.getAsLong();
+                for (var value = values[i]; value < values[i] + VALUES_PER_POINT; value++) {
+                    checker.check(value);
+                }
+                nanos[i] = Long.min(nanos[i], clock.getAsLong() - begin);
+                timed = Integer.max(timed, i + 1);
+            }
+        }
+        return fit(values, nanos, timed);
+    }
+
+    /**
+     * Fits the exponent by least squares on the logarithms of the values and of their compute times
+     * @param values first value of each group
+     * @param nanos time taken by each group
+     * @param count number of groups timed, the first ones of the arrays
+     * @return the fitted model
+     */
+    public static CostModel fit(long[] values, long[] nanos, int count) {
+        if (count < 2) { return UNIFORM; }
+        var meanX = 0.0;
+        var meanY = 0.0;
+        for (var i = 0; i < count; i++) {
+            meanX += Math.log(Math.abs((double) values[i]) + 1);
+            meanY += Math.log(Long.max(1, nanos[i]));
+        }
+        meanX /= count;
+        meanY /= count;
+        var covariance = 0.0;
+        var variance = 0.0;
+        for (var i = 0; i < count; i++) {
+            var x = Math.log(Math.abs((double) values[i]) + 1) - meanX;
+            covariance += x * (Math.log(Long.max(1, nanos[i])) - meanY);
+            variance += x * x;
+        }
+        if (variance == 0) { return UNIFORM; }
+        return of(covariance / variance);
+    }
+
+    /**
+     * Returns the model of an exponent, rounded to the precision it is sent with and clamped to the valid bounds
+     * @param exponent exponent of the cost curve
+     * @return the model
+     */
+    public static CostModel of(double exponent) {
+        if (Double.isNaN(exponent) || exponent < MIN_EXPONENT) { return UNIFORM; }
+        return new CostModel(Math.round(Double.min(exponent, MAX_EXPONENT) * 1000) / 1000.0);
+    }
+
+    /**
+     * Returns true if every value costs the same
+     * @return true if the model is uniform
+     */
+    public boolean isUniform() {
+        return exponent == 0;
+    }
+
+    /**
+     * Returns the model to split a range with. Ranges of several blocks are split by width: their blocks
+     * already spread the cost across the range, and the first block, in which parts are cut, does not
+     * have the cost curve of the others.
+     * @param range range to split
+     * @return this model if the range is a single block, the uniform one otherwise
+     */
+    public CostModel over(StridedRange range) {
+        return range.end() - range.start() <= range.stride() ? this : UNIFORM;
+    }
+
+    /**
+     * Returns the end of a slice of a range, when the range is split in proportion to potentials: the
+     * slices before it and this one together get cumulativePotential / totalPotential of the cost of the range
+     * @param rangeStart start of the range (included)
+     * @param rangeEnd end of the range (excluded)
+     * @param cumulativePotential potential of the nodes of the slices up to this one included
+     * @param totalPotential potential of all the nodes sharing the range
+     * @return end of the slice (excluded), never after rangeEnd
+     */
+    public long sliceEnd(long rangeStart, long rangeEnd, long cumulativePotential, long totalPotential) {
+        if (isUniform()) {
+            var sizeOfSlices = Long.max(Math.ceilDiv(rangeEnd - rangeStart, totalPotential), 1);
+            return Long.min(rangeStart + sizeOfSlices * cumulativePotential, rangeEnd);
+        }
+        if (cumulativePotential >= totalPotential) { return rangeEnd; }
+        var base = primitive(rangeStart);
+        var target = (primitive(rangeEnd) - base) * cumulativePotential / totalPotential;
+        // The first value whose cumulated cost from rangeStart reaches the target
+        var low = rangeStart;
+        var high = rangeEnd;
+        while (low < high) {
+            var middle = low + (high - low) / 2;
+            if (primitive(middle) - base < target) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Cumulated cost of the values from 0 to value, negative for negative values
+     */
+    private double primitive(long value) {
+        var magnitude = Math.abs((double) value) + 1;
+        return Math.signum((double) value) * (Math.pow(magnitude, exponent + 1) - 1) / (exponent + 1);
+    }
+}
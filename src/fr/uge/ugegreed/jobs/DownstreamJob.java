@@ -2,127 +2,299 @@ package fr.uge.ugegreed.jobs;
 
 import fr.uge.ugegreed.*;
 import fr.uge.ugegreed.packets.*;
+import fr.uge.ugegreed.utils.RangeSet;
+import fr.uge.ugegreed.utils.StridedRange;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Objects;
+import java.util.function.BiConsumer;
 import java.util.logging.Logger;
 
 public final class DownstreamJob implements Job {
-    private static class WorkRange {
-        private final long start;
-        private final long end;
-        private long lastSent;
-
-        private WorkRange(long start, long end) {
-            this.start = start;
-            this.end = end;
-            lastSent = start - 1;
-        }
-
-        private void updateLastSent(long lastSent) {
-            if (lastSent <= this.lastSent) { throw new IllegalStateException(); }
-            this.lastSent = lastSent;
-        }
-    }
+    // Admission control: the node takes every value given to it while its executor has less than
+    // SOFT_BACKLOG_NANOS of queued work, then less and less of them up to MAX_BACKLOG_NANOS
+    private static final long SOFT_BACKLOG_NANOS = 5_000_000_000L;
+    private static final long MAX_BACKLOG_NANOS = 10_000_000_000L;
+    // Part of the maximum heap size above which the node does not take values for itself
+    private static final double MAX_MEMORY_USAGE = 0.9;
     private final Logger logger = Logger.getLogger(DownstreamJob.class.getName());
-    private ConnectionContext upstreamHost;
+    // Read by the reactors relaying answers, only written by the controller
+    private volatile ConnectionContext upstreamHost;
     private final long jobID;
+    private final JobDescPacket descriptor;
     private final String jarURL;
     private final String className;
     private final long start;
     private final long end;
-    private long counter = 0;
+    // Values of the first request, the other requests of the job are added to assigned
+    private final StridedRange request;
+    // Values given to this node, answers are expected for all of them
+    private final RangeSet assigned = new RangeSet();
+    // Values whose answers were sent upstream, values answered twice by nodes given the same work count once
+    private final RangeSet sent = new RangeSet();
     private final TaskExecutor executor;
     private final Controller controller;
-    private boolean jobRunning = false;
+    // Read by the reactors relaying answers, only written by the controller
+    private volatile JobState state = JobState.PREPARING;
+    // Null until the JAR is downloaded, the ranges of the node wait for it
     private Checker checker;
+    // True if the JAR could not be loaded, the node only relays the work and the answers of its neighbors
+    private boolean checkerFailed = false;
 
-    // Field about the work that was taken by the node itself
-    private final ArrayList<WorkRange> workRanges = new ArrayList<>();
+    // Values computed by the node itself
+    private final RangeSet taken = new RangeSet();
+    // Values refused by a neighbor and split again, they are not split a second time
+    private final RangeSet redistributed = new RangeSet();
+    // Work taken from the neighbors once the node has computed its values, for static jobs
+    private final WorkStealing stealing;
+    // Estimated cost of the values, fitted by the node which started the job
+    private final CostModel costModel;
 
-    public DownstreamJob(ConnectionContext upstreamHost, ReqPacket reqPacket, TaskExecutor executor,
-                         Controller controller) {
-        Objects.requireNonNull(reqPacket);
+    // Fields about dynamic jobs, in which more work is asked to the upstream host as the node runs out of it
+    private final boolean dynamic;
+    private final int weight;
+    // Size of the last range this node took for itself, more work is asked for when half of it is left
+    private long lastLocalGrant;
+    // Who gets each awaited grant, grants come back in the order the PULL packets were sent
+    private final ArrayDeque<BiConsumer<Long, Long>> pendingPulls = new ArrayDeque<>();
+    private boolean localPullPending = false;
+    // True once the upstream host has nothing left to give
+    private boolean exhausted = false;
+
+    /**
+     * Creates a new downstream job
+     * @param upstreamHost connection the request came from
+     * @param descriptor description of the job
+     * @param request requested values, which may be taken by blocks across a range
+     * @param executor taskExecutor this job must use
+     * @param controller controller of the application
+     */
+    public DownstreamJob(ConnectionContext upstreamHost, JobDescPacket descriptor, StridedRange request,
+                         TaskExecutor executor, Controller controller) {
+        this.descriptor = Objects.requireNonNull(descriptor);
         this.upstreamHost = Objects.requireNonNull(upstreamHost);
-        this.jobID = reqPacket.job_id();
-        this.jarURL = reqPacket.jar_URL();
-        this.className = reqPacket.class_name();
-        this.start = reqPacket.range_start();
-        this.end = reqPacket.range_end();
+        this.request = Objects.requireNonNull(request);
+        this.jobID = descriptor.job_id();
+        this.jarURL = descriptor.jar_URL();
+        this.className = descriptor.class_name();
+        this.start = request.start();
+        this.end = request.end();
+        assigned.add(request);
         this.executor = Objects.requireNonNull(executor);
         this.controller = Objects.requireNonNull(controller);
+        var options = JobOptions.fromMap(descriptor.options());
+        // Grants of dynamic jobs are contiguous ranges
+        this.dynamic = options.dynamic() && upstreamHost.supports(CapaPacket.Capability.PULL) && request.isContiguous();
+        this.weight = options.weight();
+        this.costModel = options.costModel();
+        this.stealing = new WorkStealing(jobID);
+        stealing.addVictim(upstreamHost);
     }
 
+    /**
+     * Gives work to the neighbors right away and downloads the JAR meanwhile, the range of this node
+     * is computed once the checker is loaded
+     * @throws IOException in case of connection errors
+     */
     public void prepareJob() throws IOException {
+        startJob();
+        if (state != JobState.RUNNING) { return; }
         controller.downloadJar(jarURL, this);
     }
 
     @Override
     public void jarDownloadFail() {
         logger.warning("Could not download jar " + jarURL);
-        upstreamHost.queuePacket(new RefPacket(jobID, start, end));
+        checkerFailed();
     }
 
     @Override
     public void jarDownloadSuccess(Path jarPath) {
+        if (state != JobState.RUNNING) { return; }
         var tryChecker = CheckerRetriever.checkerFromDisk(jarPath, className, controller.useCache());
         if (tryChecker.isEmpty()) {
             logger.warning("Could not load checker from jar " + jarURL);
-            upstreamHost.queuePacket(new RefPacket(jobID, start, end));
+            checkerFailed();
             return;
         }
         checker = tryChecker.get();
-        startJob();
+        taken.forEachRange((rangeStart, rangeEnd) -> executor.addJob(checker, jobID, rangeStart, rangeEnd));
+        logger.info("Checker of job " + jobID + " loaded, computing " + taken.size() + " values.");
     }
 
-    private void startJob() {
-        // Distribution algorithm
-        var totalPotential = controller.potential() - upstreamHost.potential();
-        var sizeOfSlices = Long.max(Math.ceilDiv(end - start, totalPotential), 1);
+    /**
+     * Refuses the values this node had to compute, the job keeps relaying the work of the neighbors
+     */
+    private void checkerFailed() {
+        if (state != JobState.RUNNING) { return; }
+        checkerFailed = true;
+        taken.forEachRange(this::refuse);
+        taken.clear();
+        if (assigned.isEmpty()) {
+            state = JobState.FAILED;
+            return;
+        }
+        checkCompletion();
+    }
+
+    /**
+     * Gives values back to the upstream host, no answer is expected for them anymore
+     */
+    private void refuse(long rangeStart, long rangeEnd) {
+        refuse(StridedRange.contiguous(rangeStart, rangeEnd));
+    }
+
+    private void refuse(StridedRange refused) {
+        upstreamHost.queueRefusal(jobID, refused);
+        assigned.remove(refused);
+    }
+
+    /**
+     * Computes values on this node, as soon as the checker is loaded
+     */
+    private void computeLocally(long rangeStart, long rangeEnd) {
+        if (rangeStart >= rangeEnd) { return; }
+        if (checkerFailed) {
+            refuse(rangeStart, rangeEnd);
+            return;
+        }
+        taken.add(rangeStart, rangeEnd);
+        if (checker != null) {
+            executor.addJob(checker, jobID, rangeStart, rangeEnd);
+        }
+    }
+
+    /**
+     * Returns the part of a range this node can take for itself, from 0 to 1. It shrinks as the work queued
+     * on the executor grows, and is 0 if the memory is almost full or if the answers already pile up
+     * on the way to the upstream host.
+     */
+    private double admissionRatio() {
+        if (upstreamHost.isCongested()) { return 0; }
+        var runtime = Runtime.getRuntime();
+        if (runtime.totalMemory() - runtime.freeMemory() > runtime.maxMemory() * MAX_MEMORY_USAGE) { return 0; }
+        var backlog = executor.backlogNanos();
+        if (backlog <= SOFT_BACKLOG_NANOS) { return 1; }
+        return Double.max(0, (double) (MAX_BACKLOG_NANOS - backlog) / (MAX_BACKLOG_NANOS - SOFT_BACKLOG_NANOS));
+    }
 
-        var localPotential = 1;
-        var cursor = start;
+    /**
+     * Computes the part of a range this node can handle and refuses the rest, so that the upstream host
+     * places it elsewhere
+     */
+    private void admitLocally(long rangeStart, long rangeEnd, double admissionRatio) {
+        admitLocally(StridedRange.contiguous(rangeStart, rangeEnd), admissionRatio);
+    }
 
-        logger.info("Scheduling " + cursor + " to " + (cursor + sizeOfSlices * localPotential) + " for job " + jobID);
-        executor.addJob(checker, jobID, cursor, cursor + sizeOfSlices * localPotential);
-        workRanges.add(new WorkRange(cursor, cursor + sizeOfSlices * localPotential));
-        cursor += sizeOfSlices * localPotential;
+    /**
+     * Same as above for values taken by blocks, the same part of each block is admitted
+     */
+    private void admitLocally(StridedRange range, double admissionRatio) {
+        var width = Long.min(range.block(), range.end() - range.start());
+        var admittedWidth = admissionRatio >= 1 ? width : (long) (width * admissionRatio);
+        range.part(0, admittedWidth).forEachBlock(this::computeLocally);
+        if (admittedWidth < width) {
+            var refused = range.part(admittedWidth, width - admittedWidth);
+            logger.info("Node is overloaded, refusing " + refused + " for job " + jobID);
+            refuse(refused);
+        }
+    }
+
+    private void startJob() {
+        executor.setWeight(jobID, weight);
+        lastLocalGrant = distribute(request, null);
+        acceptAssigned(request);
+        state = JobState.RUNNING;
+        logger.info("Job " + jobID + " started.");
+        checkCompletion();
+    }
 
+    /**
+     * Splits the estimated cost of the values between this node and its downstream neighbors in proportion
+     * to their potentials, the values refused by admission control go back to the upstream host.
+     * Values taken by blocks are split block by block, each node getting the same part of every block.
+     * @param excluded neighbor which must not get any of the values, null if there is none
+     * @return number of values this node was meant to take for itself
+     */
+    private long distribute(StridedRange range, ConnectionContext excluded) {
         var hosts = controller.availableNodesStream()
-            .filter(ctx -> ctx.key() != upstreamHost.key())
+            .filter(ctx -> ctx.key() != upstreamHost.key() && ctx != excluded)
             .toList();
+        var localPotential = controller.localPotential();
+        var totalPotential = localPotential + hosts.stream().mapToInt(ConnectionContext::potential).sum();
+
+        // Parts are cut in the first block and repeated in the others
+        var blockStart = range.start();
+        var blockEnd = Long.min(range.end(), blockStart + range.block());
+        var costModel = this.costModel.over(range);
+        var localWidth = costModel.sliceEnd(blockStart, blockEnd, localPotential, totalPotential) - blockStart;
+        var admissionRatio = admissionRatio();
+
+        var local = range.part(0, localWidth);
+        logger.info("Scheduling " + local + " for job " + jobID);
+        admitLocally(local, admissionRatio);
+        var cursor = blockStart + localWidth;
+
+        var cumulativePotential = (long) localPotential;
         for (var context : hosts) {
-            if (cursor >= end) { break; }
-            localPotential = context.potential();
-            context.queuePacket(
-                new ReqPacket(jobID, jarURL, className, cursor, Long.min(cursor + sizeOfSlices * localPotential, end))
-            );
-            cursor += sizeOfSlices * localPotential;
+            if (cursor >= blockEnd) { break; }
+            cumulativePotential += context.potential();
+            var sliceEnd = costModel.sliceEnd(blockStart, blockEnd, cumulativePotential, totalPotential);
+            if (sliceEnd == cursor) { continue; }
+            context.queueRequest(descriptor, range.part(cursor - blockStart, sliceEnd - cursor));
+            stealing.addVictim(context);
+            cursor = sliceEnd;
         }
 
         // If for some reason there are remaining numbers, the node takes them, this is a failsafe
-        if (cursor < end) {
-            logger.warning("Numbers " + cursor + " to " + end + " for job " + jobID +
-                " were not distributed, scheduling them locally...");
-            executor.addJob(checker, jobID, cursor, end);
-            workRanges.add(new WorkRange(cursor, end));
+        if (cursor < blockEnd) {
+            var leftover = range.part(cursor - blockStart, blockEnd - cursor);
+            logger.warning("Numbers " + leftover + " for job " + jobID + " were not distributed, scheduling them locally...");
+            admitLocally(leftover, admissionRatio);
         }
+        return local.size();
+    }
 
-        upstreamHost.queuePacket(new AccPacket(jobID, start, end));
-        jobRunning = true;
-        logger.info("Job " + jobID + " started.");
+    /**
+     * Sends ACC packets for the requested values which were not refused. Refusals cut the same part
+     * of every block, so the accepted parts are found in the first block.
+     */
+    private void acceptAssigned(StridedRange range) {
+        var blockEnd = Long.min(range.end(), range.start() + range.block());
+        assigned.forEachRange(range.start(), blockEnd, (acceptedStart, acceptedEnd) ->
+            upstreamHost.queueAcceptance(jobID, range.part(acceptedStart - range.start(), acceptedEnd - acceptedStart)));
+    }
+
+    /**
+     * Handles a request for more values of this job, the upstream host gives values some of its other
+     * neighbors refused. They are split as the first request was.
+     * @param context connection the request came from
+     * @param range requested values
+     */
+    public void handleRequest(ConnectionContext context, StridedRange range) {
+        if (context != upstreamHost || state != JobState.RUNNING) {
+            // The answers would not go back to the node which asked for them
+            context.queueRefusal(jobID, range);
+            return;
+        }
+        assigned.add(range);
+        distribute(range, null);
+        acceptAssigned(range);
+        checkCompletion();
     }
 
 
     @Override
     public void handlePacket(Packet packet) {
-        if (!jobRunning) { return; }
+        if (state != JobState.RUNNING) { return; }
         switch (packet) {
             case AnsPacket ansPacket -> handleAnswer(ansPacket);
+            case AnsBatchPacket ansBatchPacket -> handleAnswerBatch(ansBatchPacket);
             case AccPacket accPacket -> handleAccept(accPacket);
-            case RefPacket refPacket -> handleRefuse(refPacket);
+            case AccStridedPacket accStridedPacket -> handleAccept(accStridedPacket);
             default -> throw new AssertionError();
         }
     }
@@ -133,6 +305,154 @@ public final class DownstreamJob implements Job {
 
     public void setUpstreamContext(ConnectionContext newContext) {
         upstreamHost = newContext;
+        stealing.addVictim(newContext);
+        if (dynamic && !exhausted) {
+            // Grants awaited from the previous host will never come and the new one does not lease this job,
+            // the node finishes the work it has and the origin leases the rest to the others
+            exhausted = true;
+            localPullPending = false;
+            for (var pull = pendingPulls.poll(); pull != null; pull = pendingPulls.poll()) {
+                pull.accept(end, end);
+            }
+            checkCompletion();
+        }
+    }
+
+    /**
+     * Returns true if the job is dynamic, in which case further requests for it are grants of work
+     * @return true if the job is dynamic
+     */
+    public boolean isDynamic() {
+        return dynamic;
+    }
+
+    @Override
+    public void tick() {
+        if (state != JobState.RUNNING || checker == null) { return; }
+        if (!dynamic) {
+            // Once its own values are computed, the node takes work from its neighbors instead of waiting for them
+            if (executor.pendingValues(jobID) == 0 && admissionRatio() > 0) {
+                stealing.steal(controller.localPotential());
+            }
+            return;
+        }
+        if (exhausted || localPullPending) { return; }
+        if (executor.pendingValues(jobID) <= lastLocalGrant / 2 && admissionRatio() > 0) {
+            localPullPending = true;
+            pull(controller.localPotential(), this::grantLocally);
+        }
+    }
+
+    @Override
+    public void handlePull(ConnectionContext context, int potential) {
+        if (!dynamic || state != JobState.RUNNING || exhausted) {
+            context.queueRequest(descriptor, end, end);
+            return;
+        }
+        pull(potential, (grantStart, grantEnd) -> {
+            if (context.isUnavailableForAnswerPackets()) {
+                // The node left, the values go back to the origin
+                upstreamHost.queuePacket(new RefPacket(jobID, grantStart, grantEnd));
+                assigned.remove(grantStart, grantEnd);
+                return;
+            }
+            context.queueRequest(descriptor, grantStart, grantEnd);
+        });
+    }
+
+    @Override
+    public void handleSteal(ConnectionContext context, int potential) {
+        if (state != JobState.RUNNING || dynamic || checker == null || context.isUnavailableForAnswerPackets()) {
+            context.queuePacket(new GivePacket(jobID, end, end));
+            return;
+        }
+        var stolen = executor.steal(jobID, (double) potential / (potential + controller.localPotential()));
+        if (stolen.isEmpty()) {
+            context.queuePacket(new GivePacket(jobID, end, end));
+            return;
+        }
+        var range = stolen.get();
+        taken.remove(range.start(), range.end());
+        if (context == upstreamHost) {
+            // The upstream host computes them itself, they are not expected from this node anymore
+            assigned.remove(range.start(), range.end());
+        }
+        logger.info("Giving " + range.start() + " to " + range.end() + " of job " + jobID + " to an idle neighbor");
+        context.queuePacket(new GivePacket(jobID, range.start(), range.end()));
+        checkCompletion();
+    }
+
+    @Override
+    public void rebalance(ConnectionContext context, int addedPotential) {
+        if (state != JobState.RUNNING || context == upstreamHost) { return; }
+        if (dynamic) {
+            // A node which never had the job gets a first grant through this node, it pulls by itself afterwards
+            if (exhausted || stealing.isWorkingOn(context)) { return; }
+            stealing.addVictim(context);
+            handlePull(context, context.potential());
+            return;
+        }
+        if (checker == null) { return; }
+        var stolen = executor.steal(jobID, (double) addedPotential / (addedPotential + controller.localPotential()));
+        if (stolen.isEmpty()) { return; }
+        var range = stolen.get();
+        // Still expected from this node by the upstream host, the neighbor answers for them
+        taken.remove(range.start(), range.end());
+        logger.info("Giving " + range.start() + " to " + range.end() + " of job " + jobID + " to new capacity");
+        context.queueRequest(descriptor, range.start(), range.end());
+        stealing.addVictim(context);
+    }
+
+    @Override
+    public void handleGive(ConnectionContext context, long giveStart, long giveEnd) {
+        stealing.answered(context, giveStart >= giveEnd);
+        if (state != JobState.RUNNING) { return; }
+        if (giveStart < giveEnd) {
+            logger.info("Took " + giveStart + " to " + giveEnd + " of job " + jobID + " from a busy neighbor");
+            // Values taken from the upstream host are new to this node, the ones taken downstream were expected already
+            assigned.add(giveStart, giveEnd);
+            computeLocally(giveStart, giveEnd);
+        }
+        checkCompletion();
+    }
+
+    private void pull(int potential, BiConsumer<Long, Long> onGrant) {
+        pendingPulls.add(onGrant);
+        upstreamHost.queuePacket(new PullPacket(jobID, potential));
+    }
+
+    /**
+     * Handles a range given by the upstream host in answer to a PULL packet, an empty range means
+     * that there is no work left for this job
+     * @param grantStart start of the range (included)
+     * @param grantEnd end of the range (excluded)
+     */
+    public void handleGrant(long grantStart, long grantEnd) {
+        if (grantStart >= grantEnd) {
+            exhausted = true;
+        } else {
+            assigned.add(grantStart, grantEnd);
+        }
+        var onGrant = pendingPulls.poll();
+        if (onGrant == null) {
+            // Not asked for, the node takes it for itself
+            grantLocally(grantStart, grantEnd);
+        } else {
+            onGrant.accept(grantStart, grantEnd);
+        }
+        checkCompletion();
+    }
+
+    private void grantLocally(long grantStart, long grantEnd) {
+        localPullPending = false;
+        if (grantStart >= grantEnd) { return; }
+        lastLocalGrant = grantEnd - grantStart;
+        computeLocally(grantStart, grantEnd);
+    }
+
+    @Override
+    public JobState state() {
+        return state;
     }
 
     @Override
@@ -140,49 +460,125 @@ public final class DownstreamJob implements Job {
         return jobID;
     }
 
-    private void handleRefuse(RefPacket refPacket) {
-        // Takes job for himself
-        logger.info("Received refusal for range " + refPacket.range_start() + " to "
-            + refPacket.range_end() + ", rescheduling locally...");
-        executor.addJob(checker, jobID, refPacket.range_start(), refPacket.range_end());
-        workRanges.add(new WorkRange(refPacket.range_start(), refPacket.range_end()));
+    @Override
+    public boolean isCongested() {
+        return upstreamHost.isCongested();
+    }
+
+    @Override
+    public void handleRefuse(ConnectionContext context, StridedRange refused) {
+        if (state != JobState.RUNNING) { return; }
+        var admissionRatio = admissionRatio();
+        if (dynamic) {
+            // Takes job for himself, as far as it can
+            logger.info("Received refusal for range " + refused + ", rescheduling locally...");
+            refused.forEachBlock((refStart, refEnd) -> sent.forEachMissing(refStart, refEnd,
+                (rangeStart, rangeEnd) -> admitLocally(rangeStart, rangeEnd, admissionRatio)));
+            return;
+        }
+        logger.info("Received refusal for range " + refused + ", redistributing it...");
+        if (!refused.isContiguous() && sent.count(refused) == 0 && redistributed.count(refused) == 0) {
+            // Split again as a whole, so that the values stay spread across the range
+            redistributed.add(refused);
+            distribute(refused, context);
+            return;
+        }
+        // Values already answered by the node before it refused are not computed again
+        refused.forEachBlock((refStart, refEnd) -> sent.forEachMissing(refStart, refEnd, (rangeStart, rangeEnd) -> {
+            if (redistributed.count(rangeStart, rangeEnd) > 0) {
+                // Refused twice, the values are not sent around again so that overloaded neighbors
+                // do not pass them back and forth
+                admitLocally(rangeStart, rangeEnd, admissionRatio);
+                return;
+            }
+            redistributed.add(rangeStart, rangeEnd);
+            distribute(StridedRange.contiguous(rangeStart, rangeEnd), context);
+        }));
     }
 
     private void handleAccept(AccPacket ignored) {
         // Do nothing
     }
 
+    private void handleAccept(AccStridedPacket ignored) {
+        // Do nothing
+    }
+
     private void handleAnswer(AnsPacket ansPacket) {
         if (upstreamHost.isUnavailableForAnswerPackets()) {
             controller.transmitPacketToJobs(ansPacket);
             return;
         }
         upstreamHost.queuePacket(ansPacket);
-        updateWorkRanges(ansPacket.number());
-        counter++;
-        if (counter >= end - start) {
-            jobRunning = false;
-            logger.info("Job " + jobID + " finished.");
-        }
+        sent.add(ansPacket.number());
+        checkCompletion();
     }
 
-    private void updateWorkRanges(long number) {
-        for (var workRange : workRanges) {
-            if (number >= workRange.start && number < workRange.end) {
-                workRange.updateLastSent(number);
-                break;
+    private void handleAnswerBatch(AnsBatchPacket ansBatchPacket) {
+        if (upstreamHost.isUnavailableForAnswerPackets()) {
+            controller.transmitPacketToJobs(ansBatchPacket);
+            return;
+        }
+        // Older nodes do not know about batches, they have to receive the answers one by one
+        var sendAsBatch = upstreamHost.supports(CapaPacket.Capability.ANS_BATCH);
+        if (sendAsBatch) {
+            upstreamHost.queuePacket(ansBatchPacket);
+        }
+        for (var i = 0; i < ansBatchPacket.size(); i++) {
+            if (!sendAsBatch) {
+                upstreamHost.queuePacket(ansBatchPacket.answer(i));
             }
+            sent.add(ansBatchPacket.number(i));
         }
+        checkCompletion();
     }
 
     /**
-     * Sends refpackets to the upstream node for each work ranges this node took on and that isn't completed
+     * Relays encoded answers coming from downstream to the upstream host, without decoding their results.
+     * Only their numbers are read, they are marked as sent by the thread of the controller.
+     * Can be called from any thread.
+     * @param frame buffer in read mode containing exactly the encoded packet, consumed if relayed
+     * @param batch true if the packet is an ANS_BATCH packet
+     * @return true if the answers were relayed, false if they have to go through handlePacket
      */
-    public void cancelOngoingWork() {
-        for (var workRange : workRanges) {
-            if (workRange.lastSent < workRange.end - 1) {
-                upstreamHost.queuePacket(new RefPacket(jobID, workRange.lastSent + 1, workRange.end));
+    public boolean relayAnswers(ByteBuffer frame, boolean batch) {
+        var upstream = upstreamHost;
+        if (state != JobState.RUNNING || upstream.isUnavailableForAnswerPackets()) { return false; }
+        if (batch && !upstream.supports(CapaPacket.Capability.ANS_BATCH)) { return false; }
+        var numbers = batch ? AnsBatchPacket.numbersOf(frame) : new long[] { AnsPacket.numberOf(frame) };
+        upstream.queueRawFrame(frame);
+        controller.execute(() -> {
+            for (var number : numbers) {
+                sent.add(number);
             }
+            checkCompletion();
+        });
+        return true;
+    }
+
+    private void checkCompletion() {
+        if (dynamic && (!exhausted || !pendingPulls.isEmpty())) { return; }
+        // Values may still come from the neighbor asked for work
+        if (stealing.isPending()) { return; }
+        if (state == JobState.RUNNING && sent.size() >= assigned.size()) {
+            state = JobState.FINISHED;
+            logger.info("Job " + jobID + " finished.");
         }
     }
+
+    @Override
+    public void cancel() {
+        state = JobState.CANCELLED;
+        executor.cancelJob(jobID);
+        pendingPulls.clear();
+        logger.info("Job " + jobID + " cancelled, " + sent.size() + " of " + assigned.size() + " values were answered.");
+    }
+
+    /**
+     * Sends refpackets to the upstream node for each sub range this node took on and that isn't answered
+     */
+    public void cancelOngoingWork() {
+        taken.forEachRange((takenStart, takenEnd) -> sent.forEachMissing(takenStart, takenEnd,
+            (rangeStart, rangeEnd) -> upstreamHost.queuePacket(new RefPacket(jobID, rangeStart, rangeEnd))));
+    }
 }
@@ -1,6 +1,8 @@
 package fr.uge.ugegreed.jobs;
 
+import fr.uge.ugegreed.ConnectionContext;
 import fr.uge.ugegreed.packets.Packet;
+import fr.uge.ugegreed.utils.StridedRange;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -17,12 +19,74 @@ public sealed interface Job permits DownstreamJob, UpstreamJob {
      */
     void handlePacket(Packet packet) throws IOException;
 
+    /**
+     * Returns the state of the job on this node
+     * @return the state of the job
+     */
+    JobState state();
+
     /**
      * Returns job id
      * @return job id
      */
     long jobID();
 
+    /**
+     * Returns true if the answers of the job can't be sent as fast as they are computed
+     * @return true if the answers of the job can't be sent as fast as they are computed
+     */
+    boolean isCongested();
+
+    /**
+     * Called on each iteration of the controller loop, lets a dynamic job ask for more work
+     * when the node is about to run out of it
+     */
+    void tick();
+
+    /**
+     * Handles values refused by a neighbor, they are given to other nodes
+     * @param context connection the REF packet came from, null if it is not known
+     * @param refused refused values, contiguous for a REF packet
+     */
+    void handleRefuse(ConnectionContext context, StridedRange refused);
+
+    /**
+     * Handles a node asking for more work on this job, it is answered with a request for a range,
+     * which is empty if there is no work left
+     * @param context connection the PULL packet came from
+     * @param potential potential of the node asking for work
+     */
+    void handlePull(ConnectionContext context, int potential);
+
+    /**
+     * Handles a neighbor which ran out of work asking for some of the work of this node, it is answered
+     * with a GIVE packet, which is empty if this node has nothing to give
+     * @param context connection the STEAL packet came from
+     * @param potential potential of the node asking for work
+     */
+    void handleSteal(ConnectionContext context, int potential);
+
+    /**
+     * Handles the answer of a neighbor to a STEAL packet sent for this job
+     * @param context connection the GIVE packet came from
+     * @param start start of the range given (included)
+     * @param end end of the range given (excluded), equal to start if nothing was given
+     */
+    void handleGive(ConnectionContext context, long start, long end);
+
+    /**
+     * Gives part of the work of this node to a neighbor whose potential grew, so that nodes joining
+     * the network help with the jobs already running
+     * @param context connection to the neighbor
+     * @param addedPotential potential the neighbor gained
+     */
+    void rebalance(ConnectionContext context, int addedPotential);
+
+    /**
+     * Stops the job on this node, the values it was computing are dropped
+     */
+    void cancel();
+
     /**
      * Manages the case where a JAR could not be downloaded
      */
@@ -0,0 +1,145 @@
+package fr.uge.ugegreed.jobs;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Options of a job, chosen when it is started and sent to the other nodes along with its description
+ * @param dynamic true if ranges are leased to the nodes asking for work instead of being split once
+ * @param minChunk smallest number of values leased at once per unit of potential in dynamic mode, 0 for automatic
+ * @param maxChunk largest number of values leased at once per unit of potential in dynamic mode, 0 for no limit
+ * @param weight share of the threads of each node the job gets while other jobs are computed
+ * @param sample true if the node starting the job times the checker to split ranges by cost, for jobs which are
+ *               not dynamic, it is not sent
+ * @param costModel estimated cost of the values, ranges are split by cost instead of by width
+ * @param interleave true if the node starting the job gives each node blocks spread across the range instead of
+ *                   a single slice, for jobs which are not dynamic, it is not sent
+ */
+public record JobOptions(boolean dynamic, long minChunk, long maxChunk, int weight, boolean sample, CostModel costModel,
+                         boolean interleave) {
+    public static final JobOptions DEFAULT = new JobOptions(false, 0, 0, 1);
+
+    // Keys of the options in JOB_DESC packets
+    private static final int DYNAMIC_KEY = 1;
+    private static final int MIN_CHUNK_KEY = 2;
+    private static final int MAX_CHUNK_KEY = 3;
+    private static final int WEIGHT_KEY = 4;
+    // Exponent of the cost model, in thousandths
+    private static final int COST_EXPONENT_KEY = 5;
+    // With no minimum given, chunks do not go under this fraction of a fair share of the job
+    private static final long AUTO_MIN_CHUNK_DIVISOR = 64;
+
+    public JobOptions {
+        if (minChunk < 0 || maxChunk < 0) {
+            throw new IllegalArgumentException("chunk sizes cannot be negative");
+        }
+        if (maxChunk != 0 && maxChunk < minChunk) {
+            throw new IllegalArgumentException("maxChunk must be >= minChunk");
+        }
+        if (weight <= 0) {
+            throw new IllegalArgumentException("weight must be strictly positive");
+        }
+        Objects.requireNonNull(costModel);
+    }
+
+    public JobOptions(boolean dynamic, long minChunk, long maxChunk, int weight) {
+        this(dynamic, minChunk, maxChunk, weight, false, CostModel.UNIFORM, false);
+    }
+
+    /**
+     * Returns the same options with another cost model
+     * @param costModel the cost model
+     * @return the new options
+     */
+    public JobOptions withCostModel(CostModel costModel) {
+        return new JobOptions(dynamic, minChunk, maxChunk, weight, sample, costModel, interleave);
+    }
+
+    /**
+     * Returns the chunk policy of a dynamic job, automatic sizes are chosen from the size of the job
+     * @param rangeSize number of values of the job
+     * @param totalPotential potential of the whole network
+     * @return the chunk policy
+     */
+    public ChunkPolicy chunkPolicy(long rangeSize, int totalPotential) {
+        var max = maxChunk == 0 ? Long.MAX_VALUE : maxChunk;
+        var min = minChunk != 0 ? minChunk
+            : Long.min(max, Long.max(1, rangeSize / ((long) Integer.max(1, totalPotential) * AUTO_MIN_CHUNK_DIVISOR)));
+        return new ChunkPolicy(min, max);
+    }
+
+    /**
+     * Returns the options as they are sent in JOB_DESC packets, options with their default value are left out
+     * @return the options by key
+     */
+    public Map<Integer, Long> toMap() {
+        var options = new HashMap<Integer, Long>();
+        if (dynamic) { options.put(DYNAMIC_KEY, 1L); }
+        if (minChunk != 0) { options.put(MIN_CHUNK_KEY, minChunk); }
+        if (maxChunk != 0) { options.put(MAX_CHUNK_KEY, maxChunk); }
+        if (weight != 1) { options.put(WEIGHT_KEY, (long) weight); }
+        if (!costModel.isUniform()) { options.put(COST_EXPONENT_KEY, Math.round(costModel.exponent() * 1000)); }
+        return options;
+    }
+
+    /**
+     * Reads the options of a JOB_DESC packet, unknown keys and invalid values are ignored
+     * @param options options by key
+     * @return the options
+     */
+    public static JobOptions fromMap(Map<Integer, Long> options) {
+        var dynamic = options.getOrDefault(DYNAMIC_KEY, 0L) != 0;
+        var minChunk = Long.max(0, options.getOrDefault(MIN_CHUNK_KEY, 0L));
+        var maxChunk = Long.max(0, options.getOrDefault(MAX_CHUNK_KEY, 0L));
+        if (maxChunk != 0 && maxChunk < minChunk) {
+            maxChunk = 0;
+        }
+        var weight = options.getOrDefault(WEIGHT_KEY, 1L);
+        if (weight <= 0 || weight > Integer.MAX_VALUE) {
+            weight = 1L;
+        }
+        var costExponent = options.getOrDefault(COST_EXPONENT_KEY, 0L) / 1000.0;
+        var costModel = costExponent > CostModel.MAX_EXPONENT ? CostModel.UNIFORM : CostModel.of(costExponent);
+        return new JobOptions(dynamic, minChunk, maxChunk, weight.intValue(), false, costModel, false);
+    }
+
+    /**
+     * Parses options given as key=value strings in the console
+     * @param keyValues options, known keys are dynamic (true or false), minchunk and maxchunk (number of values)
+     *                  weight (strictly positive integer), sample and interleave (true or false)
+     * @return the options, or an empty optional if one of them is invalid
+     */
+    public static Optional<JobOptions> parse(String[] keyValues) {
+        var dynamic = false;
+        var minChunk = 0L;
+        var maxChunk = 0L;
+        var weight = 1;
+        var sample = false;
+        var interleave = false;
+        for (var keyValue : keyValues) {
+            var parts = keyValue.split("=", 2);
+            if (parts.length != 2) { return Optional.empty(); }
+            try {
+                switch (parts[0].toLowerCase(Locale.ROOT)) {
+                    case "dynamic" -> dynamic = Boolean.parseBoolean(parts[1]);
+                    case "minchunk" -> minChunk = Long.parseLong(parts[1]);
+                    case "maxchunk" -> maxChunk = Long.parseLong(parts[1]);
+                    case "weight" -> weight = Integer.parseInt(parts[1]);
+                    case "sample" -> sample = Boolean.parseBoolean(parts[1]);
+                    case "interleave" -> interleave = Boolean.parseBoolean(parts[1]);
+                    default -> { return Optional.empty(); }
+                }
+            } catch (NumberFormatException e) {
+                return Optional.empty();
+            }
+        }
+        try {
+            return Optional.of(new JobOptions(dynamic, minChunk, maxChunk, weight, sample, CostModel.UNIFORM, interleave));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+}
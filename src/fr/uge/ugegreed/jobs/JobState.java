@@ -0,0 +1,35 @@
+package fr.uge.ugegreed.jobs;
+
+/**
+ * Steps of the life of a job on a node
+ */
+public enum JobState {
+    /**
+     * The job is not distributed yet
+     */
+    PREPARING,
+    /**
+     * Values of the job are being computed or waited for, the JAR may still be downloading
+     */
+    RUNNING,
+    /**
+     * Every value of the job was answered
+     */
+    FINISHED,
+    /**
+     * The job was stopped by the node which started it
+     */
+    CANCELLED,
+    /**
+     * The job could not be started on this node, its values were given back
+     */
+    FAILED;
+
+    /**
+     * Returns true if nothing happens for the job anymore, in which case it can be forgotten
+     * @return true if the state is final
+     */
+    public boolean isOver() {
+        return this == FINISHED || this == CANCELLED || this == FAILED;
+    }
+}
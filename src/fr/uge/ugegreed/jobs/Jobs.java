@@ -4,30 +4,69 @@ import fr.uge.ugegreed.ConnectionContext;
 import fr.uge.ugegreed.Controller;
 import fr.uge.ugegreed.TaskExecutor;
 import fr.uge.ugegreed.packets.*;
+import fr.uge.ugegreed.utils.LongMap;
+import fr.uge.ugegreed.utils.SignalingQueue;
+import fr.uge.ugegreed.utils.StridedRange;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import java.util.random.RandomGenerator;
 
 /**
- * Manages all aspects of the application relates to jobs
+ * Manages all aspects of the application relates to jobs.
+ * It is used by the controller thread only, except for the relaying of answers by the reactors: the downstream
+ * jobs they look up are kept in a map replaced by a modified copy on each change, so starting or forgetting a
+ * downstream job costs a copy of that map, linear in the number of downstream jobs.
  */
 public final class Jobs {
 
     private static final Logger logger = Logger.getLogger(Jobs.class.getName());
-    private static final int TASK_EXECUTOR_MAX_READING_AMOUNT = 128;
+    // Bounds of the number of answers read from the task executor per loop iteration
+    private static final int TASK_EXECUTOR_MIN_READING_AMOUNT = 128;
+    private static final int TASK_EXECUTOR_MAX_READING_AMOUNT = 16_384;
+    // Number of batches of answers from which the task executor waits for them to be handled
+    private static final int TASK_EXECUTOR_QUEUE_CAPACITY = 1024;
+    // Time a job stays known once it is over, so that the packets still in flight for it are handled by it,
+    // its final state is then kept for one or two more delays
+    private static final long RETIREMENT_DELAY = TimeUnit.SECONDS.toNanos(10);
 
     private final Controller controller;
     private final RandomGenerator rng = RandomGenerator.of("L64X128MixRandom");
-    private final Map<Long, Job> jobs = new HashMap<>();
-    private final ArrayDeque<Packet> contextQueue = new ArrayDeque<>();
-    private final ArrayBlockingQueue<AnsPacket> taskExecutorQueue = new ArrayBlockingQueue<>(TASK_EXECUTOR_MAX_READING_AMOUNT);
-    private final TaskExecutor taskExecutor = new TaskExecutor(this.taskExecutorQueue);
+    private final LongMap<Job> jobs = new LongMap<>();
+    // Downstream jobs among the jobs, replaced by a modified copy instead of being modified as the reactors
+    // look them up to relay answers. Only written by the controller
+    private volatile LongMap<DownstreamJob> relayingJobs = new LongMap<>();
+    // Downstream jobs by the connection to their upstream host, topology changes only look at the jobs concerned
+    private final HashMap<ConnectionContext, LongMap<DownstreamJob>> jobsByUpstream = new HashMap<>();
+    // Time from which each job was seen over
+    private final LongMap<Long> overSince = new LongMap<>();
+    // Final state of the jobs which were forgotten, packets still in flight for them are dropped silently
+    // and the ranges of cancelled jobs are not taken again. The jobs forgotten during the previous
+    // RETIREMENT_DELAY are kept apart and dropped at the end of the current one
+    private LongMap<JobState> retiredJobs = new LongMap<>();
+    private LongMap<JobState> expiringRetiredJobs = new LongMap<>();
+    private long retiredGenerationStart = System.nanoTime();
+    /**
+     * Packet from another node waiting to be handled by its job
+     * @param context connection the packet came from, null if it is not known
+     */
+    private record ContextPacket(Packet packet, ConnectionContext context) {}
+    private final ArrayDeque<ContextPacket> contextQueue = new ArrayDeque<>();
+    private final SignalingQueue<AnsBatchPacket> taskExecutorQueue;
+    private final TaskExecutor taskExecutor;
+    private int taskExecutorReadingAmount = TASK_EXECUTOR_MIN_READING_AMOUNT;
+    /**
+     * Answers of a job computed by this node while its upstream connection was congested, the job is
+     * paused in the task executor until they are handled
+     */
+    private record ParkedAnswers(long jobID, ArrayDeque<AnsBatchPacket> answers) {}
+    private final LongMap<ParkedAnswers> parkedAnswers = new LongMap<>();
     private final Path resultPath;
 
 
@@ -38,6 +77,9 @@ public final class Jobs {
     public Jobs(Path resultPath, Controller controller) {
         this.resultPath = Objects.requireNonNull(resultPath);
         this.controller = Objects.requireNonNull(controller);
+        // Answers wake the controller up as soon as they are available instead of waiting for the select timeout
+        this.taskExecutorQueue = new SignalingQueue<>(TASK_EXECUTOR_QUEUE_CAPACITY, controller::wakeup);
+        this.taskExecutor = new TaskExecutor(taskExecutorQueue);
     }
 
     private void checkJobParameters(String jarURL, String mainClass, long start, long end, String fileName) {
@@ -60,49 +102,111 @@ public final class Jobs {
      * @param start start of the range (included)
      * @param end end of the range (excluded)
      * @param fileName name of the file in which to store the results
-     * @return true if the job is valid, false else
+     * @param options options of the job
+     * @return the id of the job, or an empty optional if it is not valid
      */
-    public boolean createJob(String jarURL, String mainClass, long start, long end, String fileName) throws IOException {
+    public OptionalLong createJob(String jarURL, String mainClass, long start, long end, String fileName,
+                             JobOptions options) throws IOException {
         checkJobParameters(jarURL, mainClass, start, end, fileName);
+        Objects.requireNonNull(options);
         long jobID = generateJobID();
 
         Path fullPath;
         try {
             fullPath = resultPath.resolve(fileName);
         } catch (InvalidPathException e) {
-            return false;
+            return OptionalLong.empty();
         }
-        var job = new UpstreamJob(jobID, jarURL, mainClass, start, end, fullPath, taskExecutor, controller);
+        var job = new UpstreamJob(jobID, jarURL, mainClass, start, end, fullPath, options, taskExecutor, controller);
 
+        addJob(job);
         job.prepareJob();
-        jobs.put(jobID, job);
-        return true;
+        if (job.state() == JobState.CANCELLED) {
+            return OptionalLong.empty();
+        }
+        return OptionalLong.of(jobID);
     }
 
     private long generateJobID() {
         var jobID = rng.nextLong(Long.MAX_VALUE);
-        while (jobs.containsKey(jobID)) {
+        while (jobs.containsKey(jobID) || retiredState(jobID) != null) {
             jobID = rng.nextLong(Long.MAX_VALUE);
         }
         return jobID;
     }
 
-    private void sendPacketToJob(Packet packet, long job_id) throws IOException {
+    private void addJob(Job job) {
+        var previous = jobs.put(job.jobID(), job);
+        if (previous instanceof DownstreamJob || job instanceof DownstreamJob) {
+            var updated = relayingJobs.copy();
+            updated.remove(job.jobID());
+            if (job instanceof DownstreamJob downstreamJob) {
+                updated.put(job.jobID(), downstreamJob);
+            }
+            relayingJobs = updated;
+        }
+        if (previous instanceof DownstreamJob downstreamJob) {
+            unindex(downstreamJob);
+        }
+        if (job instanceof DownstreamJob downstreamJob) {
+            index(downstreamJob);
+        }
+        overSince.remove(job.jobID());
+        retiredJobs.remove(job.jobID());
+        expiringRetiredJobs.remove(job.jobID());
+    }
+
+    private Job removeJob(long jobID) {
+        var job = jobs.remove(jobID);
+        if (job instanceof DownstreamJob downstreamJob) {
+            var updated = relayingJobs.copy();
+            updated.remove(jobID);
+            relayingJobs = updated;
+            unindex(downstreamJob);
+        }
+        overSince.remove(jobID);
+        parkedAnswers.remove(jobID);
+        return job;
+    }
+
+    private void index(DownstreamJob job) {
+        jobsByUpstream.computeIfAbsent(job.getUpstreamContext(), k -> new LongMap<>()).put(job.jobID(), job);
+    }
+
+    private void unindex(DownstreamJob job) {
+        var upstreamJobs = jobsByUpstream.get(job.getUpstreamContext());
+        if (upstreamJobs == null) { return; }
+        upstreamJobs.remove(job.jobID());
+        if (upstreamJobs.isEmpty()) {
+            jobsByUpstream.remove(job.getUpstreamContext());
+        }
+    }
+
+    /**
+     * Returns the job a packet is for, or null if it is unknown
+     */
+    private Job jobFor(long job_id) {
         var job = jobs.get(job_id);
-        if (job == null) {
+        if (job == null && retiredState(job_id) == null) {
             logger.warning("Invalid Job_id given " + job_id);
-            return;
         }
+        return job;
+    }
+
+    private void sendPacketToJob(Packet packet, long job_id) throws IOException {
+        var job = jobFor(job_id);
+        if (job == null) { return; }
         job.handlePacket(packet);
     }
 
     /**
      * Queues a packet that came from another node
      * @param packet packet to queue
+     * @param context connection the packet came from, null if it is not known
      */
-    public void queueContextPacket(Packet packet) {
+    public void queueContextPacket(Packet packet, ConnectionContext context) {
         Objects.requireNonNull(packet);
-        contextQueue.add(packet);
+        contextQueue.add(new ContextPacket(packet, context));
     }
 
     /**
@@ -111,37 +215,272 @@ public final class Jobs {
     public void processContextQueue() throws IOException {
         var numberOfPackets = contextQueue.size();
         for (var i = 0 ; i < numberOfPackets ; i++) {
-            var packet = contextQueue.remove();
-            switch (packet) {
+            var contextPacket = contextQueue.remove();
+            switch (contextPacket.packet()) {
                 case AnsPacket ansPacket -> sendPacketToJob(ansPacket, ansPacket.job_id());
+                case AnsBatchPacket ansBatchPacket -> sendPacketToJob(ansBatchPacket, ansBatchPacket.job_id());
                 case AccPacket accPacket -> sendPacketToJob(accPacket, accPacket.job_id());
-                case RefPacket refPacket -> sendPacketToJob(refPacket, refPacket.job_id());
+                case RefPacket refPacket -> {
+                    var job = jobFor(refPacket.job_id());
+                    if (job != null) {
+                        job.handleRefuse(contextPacket.context(),
+                            StridedRange.contiguous(refPacket.range_start(), refPacket.range_end()));
+                    }
+                }
+                case AccStridedPacket accStridedPacket -> sendPacketToJob(accStridedPacket, accStridedPacket.job_id());
+                case RefStridedPacket refStridedPacket -> {
+                    var job = jobFor(refStridedPacket.job_id());
+                    if (job != null) {
+                        job.handleRefuse(contextPacket.context(), refStridedPacket.range());
+                    }
+                }
                 default -> throw new AssertionError("unhandled packet tested");
             }
         }
     }
 
     /**
-     * Processes a request packet
-     * @param reqPacket request packet
+     * Relays encoded answers to the upstream host of their job without decoding them, if the job
+     * is a downstream job able to do so. Can be called from any thread.
+     * @param jobID id of the job the answers are for
+     * @param frame buffer in read mode containing exactly the encoded packet, consumed if relayed
+     * @param batch true if the packet is an ANS_BATCH packet, false if it's an ANS packet
+     * @return true if the answers were relayed
+     */
+    public boolean relayAnswers(long jobID, ByteBuffer frame, boolean batch) {
+        var downstreamJob = relayingJobs.get(jobID);
+        return downstreamJob != null && downstreamJob.relayAnswers(frame, batch);
+    }
+
+    /**
+     * Processes a request for values of a job, for a dynamic job this node already has it's work given
+     * in answer to a PULL packet, and for a static one more values are given to it
+     * @param descriptor description of the job
+     * @param range requested values, contiguous unless they come from a REQ_STRIDED packet
      * @param context context it came from
      * @throws IOException in case of connection errors
      */
-    public void processReqPacket(ReqPacket reqPacket, ConnectionContext context) throws IOException {
-        var job = new DownstreamJob(context, reqPacket, taskExecutor, controller);
+    public void processRequest(JobDescPacket descriptor, StridedRange range, ConnectionContext context)
+        throws IOException {
+        if (retiredState(descriptor.job_id()) == JobState.CANCELLED) { return; }
+        if (jobs.get(descriptor.job_id()) instanceof DownstreamJob downstreamJob) {
+            if (downstreamJob.isDynamic()) {
+                if (!range.isContiguous()) {
+                    // Grants of dynamic jobs are contiguous, anything else is not an answer to a PULL packet
+                    context.queueRefusal(descriptor.job_id(), range);
+                    return;
+                }
+                downstreamJob.handleGrant(range.start(), range.contiguousEnd());
+                return;
+            }
+            if (!downstreamJob.state().isOver()) {
+                // Values refused by another node, given again
+                downstreamJob.handleRequest(context, range);
+                return;
+            }
+        }
+        var job = new DownstreamJob(context, descriptor, range, taskExecutor, controller);
+        addJob(job);
         job.prepareJob();
-        jobs.put(reqPacket.job_id(), job);
+    }
+
+    /**
+     * Processes a neighbor asking for more work on a job
+     * @param pullPacket packet received
+     * @param context context it came from
+     */
+    public void processPull(PullPacket pullPacket, ConnectionContext context) {
+        var job = jobs.get(pullPacket.job_id());
+        if (job == null) {
+            if (retiredState(pullPacket.job_id()) != null) { return; }
+            logger.warning("Invalid Job_id given " + pullPacket.job_id());
+            return;
+        }
+        job.handlePull(context, pullPacket.potential());
+    }
+
+    /**
+     * Processes a neighbor which ran out of work on a job asking for some of the work of this node,
+     * it is always answered with a GIVE packet, empty if this node has nothing to give
+     * @param stealPacket packet received
+     * @param context context it came from
+     */
+    public void processSteal(StealPacket stealPacket, ConnectionContext context) {
+        var job = jobs.get(stealPacket.job_id());
+        if (job == null) {
+            context.queuePacket(new GivePacket(stealPacket.job_id(), 0, 0));
+            return;
+        }
+        job.handleSteal(context, stealPacket.potential());
+    }
+
+    /**
+     * Processes the answer of a neighbor to a STEAL packet sent by this node
+     * @param givePacket packet received
+     * @param context context it came from
+     */
+    public void processGive(GivePacket givePacket, ConnectionContext context) {
+        var job = jobs.get(givePacket.job_id());
+        if (job == null) {
+            if (retiredState(givePacket.job_id()) != null) { return; }
+            logger.warning("Invalid Job_id given " + givePacket.job_id());
+            return;
+        }
+        job.handleGive(context, givePacket.range_start(), givePacket.range_end());
+    }
+
+    /**
+     * Lets each running job give part of its work to a neighbor whose potential grew
+     * @param context connection to the neighbor
+     * @param addedPotential potential the neighbor gained
+     */
+    public void rebalance(ConnectionContext context, int addedPotential) {
+        jobs.values().forEach(job -> job.rebalance(context, addedPotential));
+    }
+
+    /**
+     * Cancels a job started by this node, on this node and on every node working on it
+     * @param jobID id of the job
+     * @return true if the job was cancelled, false if this node did not start it
+     */
+    public boolean cancelStartedJob(long jobID) {
+        if (!(jobs.get(jobID) instanceof UpstreamJob)) { return false; }
+        cancelJob(jobID, null);
+        return true;
+    }
+
+    /**
+     * Processes a CANCEL packet, it is only followed if it came from the upstream host of the job
+     * @param jobID id of the job
+     * @param context context it came from
+     */
+    public void processCancel(long jobID, ConnectionContext context) {
+        if (jobs.get(jobID) instanceof DownstreamJob downstreamJob && downstreamJob.getUpstreamContext() == context) {
+            cancelJob(jobID, context);
+        }
+    }
+
+    private void cancelJob(long jobID, ConnectionContext from) {
+        var job = removeJob(jobID);
+        retiredJobs.put(jobID, JobState.CANCELLED);
+        job.cancel();
+        controller.availableNodesStream().forEach(ctx -> {
+            ctx.forgetJob(jobID);
+            // Answers not sent yet are of no use to anyone anymore
+            ctx.dropAnswers(jobID);
+            if (ctx != from && ctx.supports(CapaPacket.Capability.CANCEL)) {
+                ctx.queuePacket(new CancelPacket(jobID));
+            }
+        });
+    }
+
+    /**
+     * Lets each job act on the progress of its work, called on each iteration of the controller loop.
+     * Jobs which have been over for a while are forgotten.
+     */
+    public void tick() {
+        var now = System.nanoTime();
+        if (now - retiredGenerationStart >= RETIREMENT_DELAY) {
+            expiringRetiredJobs = retiredJobs;
+            retiredJobs = new LongMap<>();
+            retiredGenerationStart = now;
+        }
+        // Retiring a job removes it from the map, a copy of the values is iterated over
+        jobs.values().forEach(job -> {
+            job.tick();
+            if (!job.state().isOver()) { return; }
+            var since = overSince.get(job.jobID());
+            if (since == null) {
+                overSince.put(job.jobID(), now);
+            } else if (now - since >= RETIREMENT_DELAY) {
+                retire(job);
+            }
+        });
+    }
+
+    /**
+     * Returns the final state of a job which was forgotten a short while ago
+     * @return the state, or null if the job is not known as retired
+     */
+    private JobState retiredState(long jobID) {
+        var state = retiredJobs.get(jobID);
+        return state != null ? state : expiringRetiredJobs.get(jobID);
+    }
+
+    /**
+     * Forgets a job which is over, along with what the executor and the connections know about it
+     */
+    private void retire(Job job) {
+        var jobID = job.jobID();
+        removeJob(jobID);
+        retiredJobs.put(jobID, job.state());
+        taskExecutor.cancelJob(jobID);
+        controller.availableNodesStream().forEach(ctx -> ctx.forgetJob(jobID));
+        logger.info("Job " + jobID + " is " + job.state().name().toLowerCase(Locale.ROOT) + ", it is forgotten.");
     }
 
     /**
      * Processes the queue for answers that came from this node.
+     * The amount of answers read grows while the queue can't be emptied in one call and shrinks back otherwise,
+     * so that a fast checker does not have to wait for several loop iterations to get its answers handled.
+     * Answers of a job whose upstream connection is congested are set aside and the job is paused in the
+     * task executor until the congestion ends, the other jobs keep computing and sending their answers.
      */
     public void processTaskExecutorQueue() throws IOException {
-        for (int readCounter = 0; readCounter < TASK_EXECUTOR_MAX_READING_AMOUNT; readCounter++){
-            AnsPacket packet = taskExecutorQueue.poll();
+        releaseParkedAnswers();
+        int readCounter = 0;
+        for (; readCounter < taskExecutorReadingAmount; readCounter++){
+            AnsBatchPacket packet = taskExecutorQueue.poll();
             if (packet == null) break;
+            var job = jobs.get(packet.job_id());
+            var parked = parkedAnswers.get(packet.job_id());
+            if (parked == null && job != null && job.isCongested()) {
+                parked = new ParkedAnswers(packet.job_id(), new ArrayDeque<>());
+                parkedAnswers.put(packet.job_id(), parked);
+                taskExecutor.pauseJob(packet.job_id());
+            }
+            if (parked != null) {
+                // Answers of a job are handled in the order they were computed
+                parked.answers.add(packet);
+                continue;
+            }
             sendPacketToJob(packet, packet.job_id());
         }
+        if (readCounter == taskExecutorReadingAmount) {
+            taskExecutorReadingAmount = Integer.min(taskExecutorReadingAmount * 2, TASK_EXECUTOR_MAX_READING_AMOUNT);
+        } else {
+            taskExecutorReadingAmount = Integer.max(taskExecutorReadingAmount / 2, TASK_EXECUTOR_MIN_READING_AMOUNT);
+        }
+    }
+
+    /**
+     * Handles the answers set aside for jobs whose congestion ended, and lets the task executor compute
+     * them again once all of their answers are handled
+     */
+    private void releaseParkedAnswers() throws IOException {
+        for (var parked : parkedAnswers.values()) {
+            var job = jobs.get(parked.jobID);
+            while (!parked.answers.isEmpty() && job != null && !job.isCongested()) {
+                sendPacketToJob(parked.answers.poll(), parked.jobID);
+                job = jobs.get(parked.jobID);
+            }
+            if (job == null || parked.answers.isEmpty()) {
+                parkedAnswers.remove(parked.jobID);
+                taskExecutor.resumeJob(parked.jobID);
+            }
+        }
+    }
+
+    /**
+     * Returns true if answers from this node are waiting to be processed and can be
+     * @return true if answers from this node are waiting to be processed and can be
+     */
+    public boolean hasPendingAnswers() {
+        if (!taskExecutorQueue.isEmpty()) { return true; }
+        for (var parked : parkedAnswers.values()) {
+            if (jobs.get(parked.jobID) instanceof Job job && !job.isCongested()) { return true; }
+        }
+        return false;
     }
 
     /**
@@ -151,17 +490,13 @@ public final class Jobs {
      */
     public List<DownstreamJob> getJobsUpstreamOfNode(SelectionKey node) {
         Objects.requireNonNull(node);
-        return jobs.values().stream().<DownstreamJob>mapMulti((job, consumer) -> {
-            switch (job) {
-                case UpstreamJob ignored -> {}
-                case DownstreamJob downstreamJob -> {
-                    if (downstreamJob.getUpstreamContext().key() != node) {
-                        consumer.accept(downstreamJob);
-                    }
-                }
-                default -> throw new AssertionError();
+        var upstreamOfNode = new ArrayList<DownstreamJob>();
+        jobsByUpstream.forEach((context, upstreamJobs) -> {
+            if (context.key() != node) {
+                upstreamJobs.forEachValue(upstreamOfNode::add);
             }
-        }).toList();
+        });
+        return upstreamOfNode;
     }
 
     /**
@@ -172,17 +507,17 @@ public final class Jobs {
     public void swapUpstreamHost(SelectionKey previous, SelectionKey swap) {
         Objects.requireNonNull(previous);
         Objects.requireNonNull(swap);
-        jobs.forEach((k, job) -> {
-            switch (job) {
-                case UpstreamJob ignored -> {}
-                case DownstreamJob downstreamJob -> {
-                    if (downstreamJob.getUpstreamContext().key() == previous) {
-                        downstreamJob.setUpstreamContext((ConnectionContext) swap.attachment());
-                    }
-                }
-                default -> throw new AssertionError();
-            }
+        var swapped = new ArrayList<DownstreamJob>();
+        jobsByUpstream.entrySet().removeIf(entry -> {
+            if (entry.getKey().key() != previous) { return false; }
+            entry.getValue().forEachValue(swapped::add);
+            return true;
         });
+        var swapContext = (ConnectionContext) swap.attachment();
+        for (var downstreamJob : swapped) {
+            downstreamJob.setUpstreamContext(swapContext);
+            index(downstreamJob);
+        }
     }
 
     /**
@@ -194,7 +529,11 @@ public final class Jobs {
         var job = jobs.get(jobID);
         if (job != null) {
             switch (job) {
-                case DownstreamJob downstreamJob -> downstreamJob.setUpstreamContext(swapContext);
+                case DownstreamJob downstreamJob -> {
+                    unindex(downstreamJob);
+                    downstreamJob.setUpstreamContext(swapContext);
+                    index(downstreamJob);
+                }
                 case UpstreamJob ignored -> logger.warning("Trying to change upstream host of a job that is already upstream");
                 default -> throw new AssertionError();
             }
@@ -206,12 +545,6 @@ public final class Jobs {
      * but did not complete
      */
     public void cancelAllOngoingDownstreamWork() {
-        jobs.forEach((k, job) -> {
-            switch (job) {
-                case UpstreamJob ignored -> {}
-                case DownstreamJob downstreamJob -> downstreamJob.cancelOngoingWork();
-                default -> throw new AssertionError();
-            }
-        });
+        jobsByUpstream.values().forEach(upstreamJobs -> upstreamJobs.forEachValue(DownstreamJob::cancelOngoingWork));
     }
 }
@@ -2,31 +2,101 @@ package fr.uge.ugegreed.jobs;
 
 import fr.uge.ugegreed.Checker;
 import fr.uge.ugegreed.CheckerRetriever;
+import fr.uge.ugegreed.ConnectionContext;
 import fr.uge.ugegreed.Controller;
 import fr.uge.ugegreed.TaskExecutor;
 import fr.uge.ugegreed.packets.*;
+import fr.uge.ugegreed.utils.RangeSet;
+import fr.uge.ugegreed.utils.StridedRange;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 public final class UpstreamJob implements Job {
+    /**
+     * Range of a dynamic job given to a node, holder is null if it was taken by this node
+     */
+    private static final class Lease {
+        private final long start;
+        private final long end;
+        private final ConnectionContext holder;
+        private final long issuedAt;
+        // Number of values of the lease with no answer yet
+        private long remaining;
+        // True once the values left were given to another node as well
+        private boolean speculated = false;
+
+        private Lease(long start, long end, ConnectionContext holder, long issuedAt, long remaining) {
+            this.start = start;
+            this.end = end;
+            this.holder = holder;
+            this.issuedAt = issuedAt;
+            this.remaining = remaining;
+        }
+
+        /**
+         * Estimates the time needed to answer the rest of the lease from the rate at which it was answered so far
+         */
+        private double timeLeft(long now) {
+            var answered = end - start - remaining;
+            var elapsed = now - issuedAt;
+            if (answered == 0) {
+                return elapsed >= STRAGGLER_DELAY ? Double.POSITIVE_INFINITY : 0;
+            }
+            return (double) remaining * elapsed / answered;
+        }
+    }
+    private record Range(long start, long end) {}
+    /**
+     * Neighbor waiting for work while every value is leased
+     */
+    private record ParkedPull(ConnectionContext context, int potential) {}
     private final static Logger logger = Logger.getLogger(UpstreamJob.class.getName());
+    // A lease expected to take longer than this to be answered is given to idle nodes as well
+    private static final long STRAGGLER_DELAY = TimeUnit.SECONDS.toNanos(1);
+    // Number of rounds of blocks an interleaved job is split in, each node gets a part of every round
+    private static final long INTERLEAVE_ROUNDS = 64;
     private final TaskExecutor executor;
     private final Controller controller;
     private final long jobID;
+    // Both are replaced once the cost of the values is sampled, before the job is distributed
+    private JobOptions options;
+    private JobDescPacket descriptor;
     private final String jarURL;
     private final String className;
     private final long start;
     private final long end;
     private final Path outputPath;
     private BufferedWriter output;
-    private boolean jobRunning = false;
-    private long counter;
+    private JobState state = JobState.PREPARING;
+    // Values answered so far, the first answer of each value is kept and the others are ignored
+    private final RangeSet answered = new RangeSet();
+    // Null until the JAR is downloaded, the values of this node wait for it
     private Checker checker;
+    private final RangeSet waitingForChecker = new RangeSet();
+    // Values refused by a neighbor and split again, they are not split a second time
+    private final RangeSet redistributed = new RangeSet();
+    // Work taken from the neighbors once this node has computed its values, for static jobs
+    private final WorkStealing stealing;
+
+    // Lease table of dynamic jobs: values from leaseCursor on were never leased, returned ranges were refused
+    private ChunkPolicy chunkPolicy;
+    private long leaseCursor;
+    private final ArrayDeque<Range> returnedRanges = new ArrayDeque<>();
+    private long returnedValues;
+    private final TreeMap<Long, Lease> leases = new TreeMap<>();
+    // Size of the last lease taken by this node, more work is taken when half of it is left
+    private long lastLocalLease;
+    private final ArrayDeque<ParkedPull> parkedPulls = new ArrayDeque<>();
+
     /**
      * Creates a new upstream job
      * @param jobID id of the job
@@ -35,10 +105,11 @@ public final class UpstreamJob implements Job {
      * @param start start of the range (included)
      * @param end end of the range (excluded)
      * @param outputFilePath path to the output file
+     * @param options options of the job
      * @param executor taskExecutor this job must use
      */
     public UpstreamJob(long jobID, String jarURL, String className, long start, long end, Path outputFilePath,
-                       TaskExecutor executor, Controller controller) {
+                       JobOptions options, TaskExecutor executor, Controller controller) {
         if (jobID < 0) {
             throw new IllegalArgumentException("jobID must be positive");
         }
@@ -50,110 +121,523 @@ public final class UpstreamJob implements Job {
         }
         this.start = start;
         this.end = end;
+        this.options = Objects.requireNonNull(options);
+        this.descriptor = new JobDescPacket(jobID, jarURL, className, options.toMap());
+        this.leaseCursor = start;
         this.outputPath = Objects.requireNonNull(outputFilePath);
         this.executor = Objects.requireNonNull(executor);
         this.controller = Objects.requireNonNull(controller);
+        this.stealing = new WorkStealing(jobID);
     }
 
+    /**
+     * Gives work to the neighbors right away and downloads the JAR meanwhile, the values of this node
+     * are computed once the checker is loaded. If the cost of the values is sampled, the job is only
+     * distributed once the checker is loaded and timed. The job is cancelled if the result file can't be opened.
+     * @throws IOException in case of connection errors
+     */
     public void prepareJob() throws IOException {
+        try {
+            this.output = Files.newBufferedWriter(outputPath);
+        } catch (IOException e){
+            logger.warning("Was unable to open result file " + outputPath);
+            controller.cancelJob(jobID);
+            return;
+        }
+        executor.setWeight(jobID, options.weight());
+        // Dynamic jobs balance their work through the lease table and interleaved jobs through their blocks,
+        // sampling would only delay them
+        if (!options.sample() || options.dynamic() || options.interleave()) {
+            startJob();
+        }
         controller.downloadJar(jarURL, this);
     }
 
     @Override
     public void jarDownloadFail() {
+        if (state.isOver()) { return; }
         logger.warning("Could not download jar " + jarURL);
+        controller.cancelJob(jobID);
     }
 
     @Override
     public void jarDownloadSuccess(Path jarPath) {
+        if (state.isOver()) { return; }
         var tryChecker = CheckerRetriever.checkerFromDisk(jarPath, className, controller.useCache());
         if (tryChecker.isEmpty()) {
             logger.warning("Could not load checker from jar " + jarURL);
+            controller.cancelJob(jobID);
             return;
         }
         checker = tryChecker.get();
+        if (state == JobState.PREPARING) {
+            sampleCost();
+            return;
+        }
+        waitingForChecker.forEachRange((rangeStart, rangeEnd) -> executor.addJob(checker, jobID, rangeStart, rangeEnd));
+        logger.info("Checker of job " + jobID + " loaded, computing " + waitingForChecker.size() + " values.");
+        waitingForChecker.clear();
+    }
+
+    /**
+     * Computes values on this node, as soon as the checker is loaded
+     */
+    private void computeLocally(long rangeStart, long rangeEnd) {
+        if (rangeStart >= rangeEnd) { return; }
+        if (checker == null) {
+            waitingForChecker.add(rangeStart, rangeEnd);
+            return;
+        }
+        executor.addJob(checker, jobID, rangeStart, rangeEnd);
+    }
+
+
+    /**
+     * Times the checker on a thread of its own so that the controller keeps running, the job is
+     * distributed once the cost model is fitted
+     */
+    private void sampleCost() {
+        var sampledChecker = checker;
+        Thread.ofPlatform().daemon().name("cost-sampler-" + jobID).start(() -> {
+            CostModel costModel;
+            try {
+                costModel = CostModel.sample(sampledChecker, start, end);
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                logger.warning("Checker of job " + jobID + " failed while sampling, values are split by width");
+                costModel = CostModel.UNIFORM;
+            }
+            var sampled = costModel;
+            controller.execute(() -> costSampled(sampled));
+        });
+    }
+
+    private void costSampled(CostModel costModel) {
+        if (state != JobState.PREPARING) { return; }
+        logger.info("Cost of job " + jobID + " sampled, cost exponent " + costModel.exponent());
+        options = options.withCostModel(costModel);
+        descriptor = new JobDescPacket(jobID, jarURL, className, options.toMap());
         try {
             startJob();
-        } catch (IOException e){
-            logger.warning("Was unable to open result file " + outputPath);
+        } catch (IOException e) {
+            logger.warning("Was unable to close result file " + outputPath);
         }
     }
 
-
     private void startJob() throws IOException {
-        this.output = Files.newBufferedWriter(outputPath);
+        if (options.dynamic()) {
+            startDynamicJob();
+            return;
+        }
+
+        distribute(options.interleave() ? interleaved() : StridedRange.contiguous(start, end), null);
+        state = JobState.RUNNING;
+        logger.info("Job " + jobID + " distributed and started.");
+    }
+
+    /**
+     * Splits the range of the job in rounds of blocks, each node gets a part of every round in proportion
+     * to its potential and its values are thus spread across the whole range
+     */
+    private StridedRange interleaved() {
+        var roundSize = Long.max(Math.ceilDiv(end - start, INTERLEAVE_ROUNDS), controller.potential());
+        return StridedRange.contiguous(start, end).reblock(Long.max(1, roundSize));
+    }
 
-        // Distribution algorithm
-        var totalPotential = controller.potential();
-        var sizeOfSlices = Long.max(Math.ceilDiv(end - start, totalPotential), 1);
+    /**
+     * Splits the estimated cost of the values between this node and its neighbors in proportion to their
+     * potentials. Values taken by blocks are split block by block, each node getting the same part of every block.
+     * @param excluded neighbor which must not get any of the values, null if there is none
+     */
+    private void distribute(StridedRange range, ConnectionContext excluded) {
+        var hosts = controller.availableNodesStream()
+            .filter(ctx -> ctx != excluded)
+            .toList();
+        var localPotential = controller.localPotential();
+        var totalPotential = localPotential + hosts.stream().mapToInt(ConnectionContext::potential).sum();
 
-        var localPotential = 1;
-        var cursor = start;
+        // Parts are cut in the first block and repeated in the others
+        var costModel = options.costModel().over(range);
+        var blockStart = range.start();
+        var blockEnd = Long.min(range.end(), blockStart + range.block());
+        var localEnd = costModel.sliceEnd(blockStart, blockEnd, localPotential, totalPotential);
 
-        logger.info("Scheduling " + cursor + " to " + (cursor + sizeOfSlices * localPotential) + " for job " + jobID);
-        executor.addJob(checker, jobID, cursor, cursor + sizeOfSlices * localPotential);
-        cursor += sizeOfSlices * localPotential;
+        var local = range.part(0, localEnd - blockStart);
+        logger.info("Scheduling " + local + " for job " + jobID);
+        local.forEachBlock(this::computeLocally);
+        var cursor = localEnd;
 
-        var hosts = controller.availableNodesStream().toList();
+        var cumulativePotential = (long) localPotential;
         for (var context : hosts) {
-            if (cursor >= end) { break; }
-            localPotential = context.potential();
-            context.queuePacket(
-                new ReqPacket(jobID, jarURL, className, cursor, Long.min(cursor + sizeOfSlices * localPotential, end))
-            );
-            cursor += sizeOfSlices * localPotential;
+            if (cursor >= blockEnd) { break; }
+            cumulativePotential += context.potential();
+            var sliceEnd = costModel.sliceEnd(blockStart, blockEnd, cumulativePotential, totalPotential);
+            if (sliceEnd == cursor) { continue; }
+            context.queueRequest(descriptor, range.part(cursor - blockStart, sliceEnd - cursor));
+            stealing.addVictim(context);
+            cursor = sliceEnd;
         }
 
         // If for some reason there are remaining numbers, the node takes them
-        if (cursor < end) {
-            logger.warning("Numbers " + cursor + " to " + end + " for job " + jobID +
-                " were not distributed, scheduling them locally...");
-            executor.addJob(checker, jobID, cursor, end);
+        if (cursor < blockEnd) {
+            var leftover = range.part(cursor - blockStart, blockEnd - cursor);
+            logger.warning("Numbers " + leftover + " for job " + jobID + " were not distributed, scheduling them locally...");
+            leftover.forEachBlock(this::computeLocally);
         }
+    }
 
-        jobRunning = true;
-        logger.info("Job " + jobID + " distributed and started.");
+    /**
+     * Gives a first lease to this node and to each neighbor, the nodes ask for more work as they run out of it
+     */
+    private void startDynamicJob() throws IOException {
+        chunkPolicy = options.chunkPolicy(end - start, controller.potential());
+        state = JobState.RUNNING;
+        leaseLocally();
+        for (var context : controller.availableNodesStream().toList()) {
+            var lease = lease(context.potential(), context);
+            if (lease == null) { break; }
+            context.queueRequest(descriptor, lease.start, lease.end);
+            stealing.addVictim(context);
+        }
+        logger.info("Job " + jobID + " started in dynamic mode with " + chunkPolicy);
+        checkCompletion();
+    }
+
+    /**
+     * Takes the next values of the job for a node, its size is given by the chunk policy and refused
+     * values are given first
+     * @return the lease, or null if every value was leased already
+     */
+    private Lease lease(int potential, ConnectionContext holder) {
+        var amount = chunkPolicy.nextChunk(end - leaseCursor + returnedValues, potential, controller.potential());
+        long leaseStart;
+        long leaseEnd;
+        var returned = returnedRanges.poll();
+        if (returned != null) {
+            leaseStart = returned.start;
+            leaseEnd = Long.min(returned.end, leaseStart + amount);
+            if (leaseEnd < returned.end) {
+                returnedRanges.addFirst(new Range(leaseEnd, returned.end));
+            }
+            returnedValues -= leaseEnd - leaseStart;
+        } else if (leaseCursor < end) {
+            leaseStart = leaseCursor;
+            leaseEnd = Long.min(end, leaseStart + amount);
+            leaseCursor = leaseEnd;
+        } else {
+            return null;
+        }
+        var lease = new Lease(leaseStart, leaseEnd, holder, System.nanoTime(), unanswered(leaseStart, leaseEnd));
+        if (lease.remaining > 0) {
+            leases.put(leaseStart, lease);
+        }
+        return lease;
+    }
+
+    private long unanswered(long from, long to) {
+        return to - from - answered.count(from, to);
+    }
+
+    private void leaseLocally() {
+        // Leases are taken once the checker is loaded, the neighbors get the work meanwhile
+        if (checker == null) { return; }
+        var pending = executor.pendingValues(jobID);
+        if (pending > lastLocalLease / 2) { return; }
+        var lease = lease(controller.localPotential(), null);
+        if (lease != null) {
+            lastLocalLease = lease.end - lease.start;
+            executor.addJob(checker, jobID, lease.start, lease.end);
+            return;
+        }
+        if (pending > 0) { return; }
+        var range = speculate(null);
+        if (range != null) {
+            lastLocalLease = range.end - range.start;
+            executor.addJob(checker, jobID, range.start, range.end);
+        }
+    }
+
+    /**
+     * Finds the lease expected to be answered last, if it is late enough the values it has left are
+     * given to the idle node as well
+     * @param requester idle node, null for this node
+     * @return the range to give to the idle node, or null if no lease is late enough
+     */
+    private Range speculate(ConnectionContext requester) {
+        var now = System.nanoTime();
+        Lease slowest = null;
+        double slowestTimeLeft = STRAGGLER_DELAY;
+        for (var lease : leases.values()) {
+            if (lease.speculated || lease.holder == requester) { continue; }
+            var timeLeft = lease.timeLeft(now);
+            if (timeLeft > slowestTimeLeft) {
+                slowest = lease;
+                slowestTimeLeft = timeLeft;
+            }
+        }
+        if (slowest == null) { return null; }
+        slowest.speculated = true;
+        var rangeStart = answered.firstMissing(slowest.start);
+        logger.info("Range " + rangeStart + " to " + slowest.end + " of job " + jobID
+            + " is late, giving it to an idle node as well");
+        return new Range(rangeStart, slowest.end);
+    }
+
+    @Override
+    public void tick() {
+        if (state != JobState.RUNNING) { return; }
+        if (!options.dynamic()) {
+            // Once its own values are computed, the node takes work from its neighbors instead of waiting for them
+            if (checker != null && executor.pendingValues(jobID) == 0) {
+                stealing.steal(controller.localPotential());
+            }
+            return;
+        }
+        leaseLocally();
+        serveParkedPulls();
+    }
+
+    @Override
+    public void handlePull(ConnectionContext context, int potential) {
+        if (state != JobState.RUNNING || !options.dynamic()) {
+            // Nothing to give, the node is told so with an empty range
+            context.queueRequest(descriptor, end, end);
+            return;
+        }
+        parkedPulls.add(new ParkedPull(context, potential));
+        serveParkedPulls();
+    }
+
+    @Override
+    public void handleSteal(ConnectionContext context, int potential) {
+        // Dynamic jobs balance their work through the lease table instead
+        if (state != JobState.RUNNING || options.dynamic() || checker == null) {
+            context.queuePacket(new GivePacket(jobID, end, end));
+            return;
+        }
+        var stolen = executor.steal(jobID, (double) potential / (potential + controller.localPotential()));
+        if (stolen.isEmpty()) {
+            context.queuePacket(new GivePacket(jobID, end, end));
+            return;
+        }
+        var range = stolen.get();
+        logger.info("Giving " + range.start() + " to " + range.end() + " of job " + jobID + " to an idle neighbor");
+        context.queuePacket(new GivePacket(jobID, range.start(), range.end()));
+    }
+
+    @Override
+    public void rebalance(ConnectionContext context, int addedPotential) {
+        if (state != JobState.RUNNING) { return; }
+        if (options.dynamic()) {
+            // A node which never had the job gets a first lease, it pulls by itself afterwards
+            if (stealing.isWorkingOn(context)) { return; }
+            var lease = lease(context.potential(), context);
+            if (lease == null) { return; }
+            context.queueRequest(descriptor, lease.start, lease.end);
+            stealing.addVictim(context);
+            return;
+        }
+        if (checker == null) { return; }
+        var stolen = executor.steal(jobID, (double) addedPotential / (addedPotential + controller.localPotential()));
+        if (stolen.isEmpty()) { return; }
+        var range = stolen.get();
+        logger.info("Giving " + range.start() + " to " + range.end() + " of job " + jobID + " to new capacity");
+        context.queueRequest(descriptor, range.start(), range.end());
+        stealing.addVictim(context);
+    }
+
+    @Override
+    public void handleGive(ConnectionContext context, long giveStart, long giveEnd) {
+        stealing.answered(context, giveStart >= giveEnd);
+        if (state != JobState.RUNNING || giveStart >= giveEnd) { return; }
+        logger.info("Took " + giveStart + " to " + giveEnd + " of job " + jobID + " from a busy neighbor");
+        computeLocally(giveStart, giveEnd);
+    }
+
+    /**
+     * Gives work to the nodes waiting for it, in the order they asked. Nodes are kept waiting while
+     * every value is leased and no lease is late, until the job ends.
+     */
+    private void serveParkedPulls() {
+        for (var pull = parkedPulls.peek(); pull != null; pull = parkedPulls.peek()) {
+            var context = pull.context();
+            if (context.isUnavailableForAnswerPackets()) {
+                parkedPulls.poll();
+                continue;
+            }
+            var lease = lease(pull.potential(), context);
+            if (lease != null) {
+                context.queueRequest(descriptor, lease.start, lease.end);
+            } else {
+                var range = speculate(context);
+                if (range == null) { return; }
+                context.queueRequest(descriptor, range.start, range.end);
+            }
+            parkedPulls.poll();
+        }
+    }
+
+    /**
+     * Counts answered values in the lease table of a dynamic job
+     */
+    private void leaseAnswered(long number) {
+        if (!options.dynamic()) { return; }
+        var entry = leases.floorEntry(number);
+        if (entry == null || number >= entry.getValue().end) { return; }
+        var lease = entry.getValue();
+        lease.remaining--;
+        if (lease.remaining <= 0) {
+            leases.remove(lease.start);
+        }
+    }
+
+    /**
+     * Removes a range from the lease table, the leases it overlaps are cut around it
+     */
+    private void releaseRange(long from, long to) {
+        var firstKey = leases.floorKey(from);
+        var overlapping = new ArrayList<>(leases.subMap(firstKey == null ? from : firstKey, to).values());
+        for (var lease : overlapping) {
+            if (lease.end <= from) { continue; }
+            leases.remove(lease.start);
+            if (lease.start < from) {
+                putPart(lease, lease.start, from);
+            }
+            if (lease.end > to) {
+                putPart(lease, to, lease.end);
+            }
+        }
+    }
+
+    private void putPart(Lease lease, long partStart, long partEnd) {
+        var part = new Lease(partStart, partEnd, lease.holder, lease.issuedAt, unanswered(partStart, partEnd));
+        part.speculated = lease.speculated;
+        if (part.remaining > 0) {
+            leases.put(partStart, part);
+        }
     }
 
     public void end() throws IOException {
         this.output.close();
     }
 
+    @Override
+    public void cancel() {
+        // The result file is open once the job is prepared, even while the cost of its values is sampled
+        var wasRunning = state == JobState.RUNNING || (state == JobState.PREPARING && output != null);
+        state = JobState.CANCELLED;
+        executor.cancelJob(jobID);
+        // The nodes waiting for work are told about the cancellation as well
+        parkedPulls.clear();
+        if (!wasRunning) { return; }
+        logger.info("Job " + jobID + " cancelled, " + answered.size() + " of " + (end - start) + " values were answered.");
+        try {
+            end();
+        } catch (IOException e) {
+            logger.warning("Was unable to close result file " + outputPath);
+        }
+    }
+
     @Override
     public void handlePacket(Packet packet) throws IOException {
-        if (!jobRunning) { return; }
+        if (state != JobState.RUNNING) { return; }
         switch (packet) {
             case AnsPacket ansPacket -> handleAnswer(ansPacket);
+            case AnsBatchPacket ansBatchPacket -> handleAnswerBatch(ansBatchPacket);
             case AccPacket accPacket -> handleAccept(accPacket);
-            case RefPacket refPacket -> handleRefuse(refPacket);
+            case AccStridedPacket accStridedPacket -> handleAccept(accStridedPacket);
             default -> throw new AssertionError();
         }
     }
 
+    @Override
+    public JobState state() {
+        return state;
+    }
+
     @Override
     public long jobID() {
         return jobID;
     }
 
-    private void handleRefuse(RefPacket refPacket) {
-        // Takes job for himself
-        logger.info("Received refusal for range " + refPacket.range_start() + " to "
-            + refPacket.range_end() + ", rescheduling locally...");
-        executor.addJob(checker, jobID, refPacket.range_start(), refPacket.range_end());
+    @Override
+    public boolean isCongested() {
+        // Answers are written to a file, never sent
+        return false;
+    }
+
+    @Override
+    public void handleRefuse(ConnectionContext context, StridedRange refused) {
+        if (state != JobState.RUNNING) { return; }
+        if (options.dynamic()) {
+            // The values are leased again to the next node asking for work
+            logger.info("Received refusal for range " + refused + ", leasing it again...");
+            refused.forEachBlock((refStart, refEnd) -> {
+                releaseRange(refStart, refEnd);
+                answered.forEachMissing(refStart, refEnd, (rangeStart, rangeEnd) -> {
+                    returnedRanges.add(new Range(rangeStart, rangeEnd));
+                    returnedValues += rangeEnd - rangeStart;
+                });
+            });
+            return;
+        }
+        logger.info("Received refusal for range " + refused + ", redistributing it...");
+        if (!refused.isContiguous() && answered.count(refused) == 0 && redistributed.count(refused) == 0) {
+            // Split again as a whole, so that the values stay spread across the range
+            redistributed.add(refused);
+            distribute(refused, context);
+            return;
+        }
+        refused.forEachBlock((refStart, refEnd) -> answered.forEachMissing(refStart, refEnd, (rangeStart, rangeEnd) -> {
+            if (redistributed.count(rangeStart, rangeEnd) > 0) {
+                // Refused twice, the node takes the values for itself instead of sending them around again
+                computeLocally(rangeStart, rangeEnd);
+                return;
+            }
+            redistributed.add(rangeStart, rangeEnd);
+            distribute(StridedRange.contiguous(rangeStart, rangeEnd), context);
+        }));
     }
 
     private void handleAccept(AccPacket ignored) {
         // Do nothing
     }
 
+    private void handleAccept(AccStridedPacket ignored) {
+        // Do nothing
+    }
+
     private void handleAnswer(AnsPacket ansPacket) throws IOException {
-        output.write(ansPacket.result());
+        writeAnswer(ansPacket.number(), ansPacket.result());
+        checkCompletion();
+    }
+
+    private void handleAnswerBatch(AnsBatchPacket ansBatchPacket) throws IOException {
+        for (var i = 0; i < ansBatchPacket.size(); i++) {
+            writeAnswer(ansBatchPacket.number(i), ansBatchPacket.results()[i]);
+        }
+        checkCompletion();
+    }
+
+    private void writeAnswer(long number, String result) throws IOException {
+        // Values given to several nodes are answered several times, only the first answer is kept
+        if (number < start || number >= end || !answered.add(number)) { return; }
+        output.write(result);
         output.newLine();
-        counter++;
-        if (counter >= end - start) {
-            jobRunning = false;
+        leaseAnswered(number);
+    }
+
+    private void checkCompletion() throws IOException {
+        if (answered.size() >= end - start) {
+            state = JobState.FINISHED;
             logger.info("Job " + jobID + " finished.");
             end();
+            for (var pull = parkedPulls.poll(); pull != null; pull = parkedPulls.poll()) {
+                pull.context().queueRequest(descriptor, end, end);
+            }
+            // Values computed twice by this node are not needed anymore
+            executor.cancelJob(jobID);
         }
     }
 }
@@ -0,0 +1,102 @@
+package fr.uge.ugegreed.jobs;
+
+import fr.uge.ugegreed.ConnectionContext;
+import fr.uge.ugegreed.packets.CapaPacket;
+import fr.uge.ugegreed.packets.StealPacket;
+
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Steal requests of a job on a node which ran out of work: the neighbors working on the job are asked
+ * in turn for some of their work, one at a time. Once all of them had nothing to give, the node waits
+ * for a while before asking again.
+ */
+final class WorkStealing {
+    private static final long RETRY_DELAY = TimeUnit.SECONDS.toNanos(1);
+    private final long jobID;
+    // Neighbors working on the job, asked in turn
+    private final ArrayList<ConnectionContext> victims = new ArrayList<>();
+    private int nextVictim;
+    // Neighbor a STEAL packet was sent to and which did not answer yet
+    private ConnectionContext pending;
+    // Number of neighbors in a row which had nothing to give
+    private int refusals;
+    private long retryAt;
+
+    WorkStealing(long jobID) {
+        this.jobID = jobID;
+        this.retryAt = System.nanoTime();
+    }
+
+    /**
+     * Adds a neighbor working on the job to the ones work can be taken from
+     * @param context connection to the neighbor
+     */
+    void addVictim(ConnectionContext context) {
+        Objects.requireNonNull(context);
+        if (!victims.contains(context)) {
+            victims.add(context);
+        }
+    }
+
+    /**
+     * Returns true if the neighbor was given work on the job
+     * @param context connection to the neighbor
+     * @return true if the neighbor works on the job
+     */
+    boolean isWorkingOn(ConnectionContext context) {
+        return victims.contains(context);
+    }
+
+    /**
+     * Returns true if a neighbor was asked for work and did not answer yet, the job is not over until it does
+     * @return true if an answer to a STEAL packet is awaited
+     */
+    boolean isPending() {
+        if (pending != null && pending.isUnavailableForAnswerPackets()) {
+            // The neighbor left, its answer will never come
+            pending = null;
+        }
+        return pending != null;
+    }
+
+    /**
+     * Asks the next neighbor able to answer for some of its work, unless an answer is awaited already
+     * or every neighbor had nothing to give a moment ago
+     * @param potential potential of this node
+     */
+    void steal(int potential) {
+        if (isPending() || System.nanoTime() - retryAt < 0) { return; }
+        victims.removeIf(context -> !context.key().isValid());
+        for (var i = 0; i < victims.size(); i++) {
+            var context = victims.get((nextVictim + i) % victims.size());
+            if (context.isUnavailableForAnswerPackets() || !context.supports(CapaPacket.Capability.STEAL)) { continue; }
+            nextVictim = (nextVictim + i + 1) % victims.size();
+            pending = context;
+            context.queuePacket(new StealPacket(jobID, potential));
+            return;
+        }
+    }
+
+    /**
+     * Handles the answer of a neighbor to a STEAL packet
+     * @param context connection the answer came from
+     * @param empty true if the neighbor had nothing to give
+     */
+    void answered(ConnectionContext context, boolean empty) {
+        if (context == pending) {
+            pending = null;
+        }
+        if (!empty) {
+            refusals = 0;
+            return;
+        }
+        refusals++;
+        if (refusals >= victims.size()) {
+            refusals = 0;
+            retryAt = System.nanoTime() + RETRY_DELAY;
+        }
+    }
+}
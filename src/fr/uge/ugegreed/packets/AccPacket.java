@@ -21,10 +21,13 @@ public record AccPacket(long job_id, long range_start, long range_end) implement
     }
 
     @Override
-    public ByteBuffer toBuffer() {
-        return ByteBuffer.allocate(Byte.BYTES + Long.BYTES*3)
-                .put(CODE).putLong(job_id).putLong(range_start)
-                .putLong(range_end).flip();
+    public int encodedSize() {
+        return Byte.BYTES + Long.BYTES*3;
+    }
+
+    @Override
+    public void writeTo(ByteBuffer buffer) {
+        buffer.put(CODE).putLong(job_id).putLong(range_start).putLong(range_end);
     }
 
     @Override
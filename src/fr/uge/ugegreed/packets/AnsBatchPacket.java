@@ -0,0 +1,125 @@
+package fr.uge.ugegreed.packets;
+
+import fr.uge.ugegreed.utils.TypeToByteWriter;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Represents an ANS_BATCH packet, carrying several answers of the same job
+ * @param job_id the job id operated
+ * @param base_number number the deltas are relative to
+ * @param deltas for each answer, difference between its number and base_number
+ * @param results for each answer, the resulting string, encoded in UTF-8
+ */
+public record AnsBatchPacket(long job_id, long base_number, int[] deltas, String[] results) implements Packet {
+    private static final byte CODE = PacketCode.ANS_BATCH.getCode();
+
+    public AnsBatchPacket {
+        if (job_id < 0) {
+            throw new IllegalArgumentException("job_id must be positive");
+        }
+        Objects.requireNonNull(deltas);
+        Objects.requireNonNull(results);
+        if (deltas.length != results.length) {
+            throw new IllegalArgumentException("there must be as many deltas as results");
+        }
+        for (var i = 0; i < deltas.length; i++) {
+            if (deltas[i] < 0) {
+                throw new IllegalArgumentException("deltas must be positive");
+            }
+            Objects.requireNonNull(results[i]);
+        }
+    }
+
+    /**
+     * Returns the number of answers in the batch
+     * @return number of answers in the batch
+     */
+    public int size() {
+        return deltas.length;
+    }
+
+    /**
+     * Returns the number of an answer
+     * @param index index of the answer in the batch
+     * @return the number of the answer
+     */
+    public long number(int index) {
+        return base_number + deltas[index];
+    }
+
+    /**
+     * Returns an answer of the batch as a single ANS packet
+     * @param index index of the answer in the batch
+     * @return the answer as a single ANS packet
+     */
+    public AnsPacket answer(int index) {
+        return new AnsPacket(job_id, number(index), results[index]);
+    }
+
+    /**
+     * Reads the numbers of the answers of an encoded ANS_BATCH packet, without decoding the results
+     * @param frame buffer in read mode containing exactly the encoded packet, its position is not changed
+     * @return the numbers of the answers, in the order of the packet
+     */
+    public static long[] numbersOf(ByteBuffer frame) {
+        var offset = frame.position() + Byte.BYTES + Long.BYTES;
+        var baseNumber = frame.getLong(offset);
+        offset += Long.BYTES;
+        var numbers = new long[frame.getInt(offset)];
+        offset += Integer.BYTES;
+        for (var i = 0; i < numbers.length; i++) {
+            numbers[i] = baseNumber + frame.getInt(offset);
+            offset += Integer.BYTES;
+            // Skips the result, a size followed by its bytes
+            offset += Integer.BYTES + frame.getInt(offset);
+        }
+        return numbers;
+    }
+
+    @Override
+    public int encodedSize() {
+        var size = Byte.BYTES + Long.BYTES * 2 + Integer.BYTES * (1 + deltas.length);
+        for (var result : results) {
+            size += TypeToByteWriter.stringSize(result);
+        }
+        return size;
+    }
+
+    @Override
+    public void writeTo(ByteBuffer buffer) {
+        if (buffer.remaining() < encodedSize()) {
+            throw new BufferOverflowException();
+        }
+        buffer.put(CODE).putLong(job_id).putLong(base_number).putInt(deltas.length);
+        for (var i = 0; i < deltas.length; i++) {
+            buffer.putInt(deltas[i]);
+            TypeToByteWriter.putString(buffer, results[i]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ANS_BATCH packet(job_id: " + job_id + ", base_number: " + base_number + ", nb_answers: " + deltas.length + ")";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AnsBatchPacket that = (AnsBatchPacket) o;
+        return job_id == that.job_id && base_number == that.base_number && Arrays.equals(deltas, that.deltas)
+            && Arrays.equals(results, that.results);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Objects.hash(job_id, base_number);
+        result = 31 * result + Arrays.hashCode(deltas);
+        result = 31 * result + Arrays.hashCode(results);
+        return result;
+    }
+}
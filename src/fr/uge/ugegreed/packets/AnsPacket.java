@@ -2,6 +2,7 @@ package fr.uge.ugegreed.packets;
 
 import fr.uge.ugegreed.utils.TypeToByteWriter;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.util.Objects;
 
@@ -21,11 +22,27 @@ public record AnsPacket(long job_id, long number, String result) implements Pack
         Objects.requireNonNull(result);
     }
 
+    /**
+     * Reads the number of an encoded ANS packet, without decoding the result
+     * @param frame buffer in read mode containing exactly the encoded packet, its position is not changed
+     * @return the number of the answer
+     */
+    public static long numberOf(ByteBuffer frame) {
+        return frame.getLong(frame.position() + Byte.BYTES + Long.BYTES);
+    }
+
+    @Override
+    public int encodedSize() {
+        return Byte.BYTES + Long.BYTES*2 + TypeToByteWriter.stringSize(result);
+    }
+
     @Override
-    public ByteBuffer toBuffer() {
-        var result_bb = TypeToByteWriter.getString(result);
-        return ByteBuffer.allocate(Byte.BYTES + Long.BYTES*2 + result_bb.remaining())
-                .put(CODE).putLong(job_id).putLong(number).put(result_bb).flip();
+    public void writeTo(ByteBuffer buffer) {
+        if (buffer.remaining() < encodedSize()) {
+            throw new BufferOverflowException();
+        }
+        buffer.put(CODE).putLong(job_id).putLong(number);
+        TypeToByteWriter.putString(buffer, result);
     }
 
     @Override
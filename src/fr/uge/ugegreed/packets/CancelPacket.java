@@ -0,0 +1,32 @@
+package fr.uge.ugegreed.packets;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Represents a CANCEL packet, used to stop a job on every node computing it
+ * @param job_id the job id
+ */
+public record CancelPacket(long job_id) implements Packet {
+    private static final byte CODE = PacketCode.CANCEL.getCode();
+
+    public CancelPacket {
+        if (job_id < 0) {
+            throw new IllegalArgumentException("job_id must be positive");
+        }
+    }
+
+    @Override
+    public int encodedSize() {
+        return Byte.BYTES + Long.BYTES;
+    }
+
+    @Override
+    public void writeTo(ByteBuffer buffer) {
+        buffer.put(CODE).putLong(job_id);
+    }
+
+    @Override
+    public String toString() {
+        return "CANCEL packet(job_id: " + job_id + ")";
+    }
+}
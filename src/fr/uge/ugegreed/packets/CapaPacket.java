@@ -0,0 +1,63 @@
+package fr.uge.ugegreed.packets;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Represents a CAPA packet, used to tell a neighbor which protocol extensions the application supports
+ * @param capabilities bit mask of the supported capabilities
+ */
+public record CapaPacket(int capabilities) implements Packet {
+  private static final byte CODE = PacketCode.CAPA.getCode();
+
+  /**
+   * Protocol extensions that can be negotiated between two neighbors
+   */
+  public enum Capability {
+    ANS_BATCH(1), CREDIT(2), JOB_DESC(4), PULL(8), CANCEL(16), STEAL(32), STRIDE(64), THREADS(128);
+
+    private final int mask;
+    Capability(int mask) {
+      this.mask = mask;
+    }
+
+    public int getMask() {
+      return mask;
+    }
+  }
+
+  /**
+   * Returns a CAPA packet advertising every capability this application supports
+   * @return a CAPA packet advertising every capability this application supports
+   */
+  public static CapaPacket local() {
+    var capabilities = 0;
+    for (var capability : Capability.values()) {
+      capabilities |= capability.getMask();
+    }
+    return new CapaPacket(capabilities);
+  }
+
+  /**
+   * Returns true if the capability is part of the packet
+   * @param capability capability to test
+   * @return true if the capability is part of the packet
+   */
+  public boolean supports(Capability capability) {
+    return (capabilities & capability.getMask()) != 0;
+  }
+
+  @Override
+  public int encodedSize() {
+    return Byte.BYTES + Integer.BYTES;
+  }
+
+  @Override
+  public void writeTo(ByteBuffer buffer) {
+    buffer.put(CODE).putInt(capabilities);
+  }
+
+  @Override
+  public String toString() {
+    return "CAPA packet(capabilities: " + capabilities + ")";
+  }
+}
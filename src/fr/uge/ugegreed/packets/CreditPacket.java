@@ -0,0 +1,32 @@
+package fr.uge.ugegreed.packets;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Represents a CREDIT packet, used to allow a neighbor to send more answer packets on the connection
+ * @param credits number of answer packets the neighbor may send on top of its current credits
+ */
+public record CreditPacket(int credits) implements Packet {
+  private static final byte CODE = PacketCode.CREDIT.getCode();
+
+  public CreditPacket {
+    if (credits <= 0) {
+      throw new IllegalArgumentException("credits must be strictly positive");
+    }
+  }
+
+  @Override
+  public int encodedSize() {
+    return Byte.BYTES + Integer.BYTES;
+  }
+
+  @Override
+  public void writeTo(ByteBuffer buffer) {
+    buffer.put(CODE).putInt(credits);
+  }
+
+  @Override
+  public String toString() {
+    return "CREDIT packet(credits: " + credits + ")";
+  }
+}
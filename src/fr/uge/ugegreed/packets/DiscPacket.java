@@ -1,5 +1,6 @@
 package fr.uge.ugegreed.packets;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Objects;
@@ -25,7 +26,17 @@ public record DiscPacket(int nb_reco, int nb_jobs, InnerDiscPacket[] jobs) imple
      * @return ByteBuffer in READ mode
      */
     public ByteBuffer toBuffer() {
-      return ByteBuffer.allocate(getSize()).putLong(job_id).putInt(new_upstream).flip();
+      var buffer = ByteBuffer.allocate(getSize());
+      writeTo(buffer);
+      return buffer.flip();
+    }
+
+    /**
+     * Writes the Object directly into a buffer
+     * @param buffer buffer in write mode
+     */
+    public void writeTo(ByteBuffer buffer) {
+      buffer.putLong(job_id).putInt(new_upstream);
     }
 
     public static int getSize() {
@@ -53,13 +64,19 @@ public record DiscPacket(int nb_reco, int nb_jobs, InnerDiscPacket[] jobs) imple
   }
 
   @Override
-  public ByteBuffer toBuffer() {
-    ByteBuffer result = ByteBuffer.allocate(Byte.BYTES + Integer.BYTES*2 + InnerDiscPacket.getSize() * nb_jobs)
-            .put(CODE).putInt(nb_reco).putInt(nb_jobs);
+  public int encodedSize() {
+    return Byte.BYTES + Integer.BYTES*2 + InnerDiscPacket.getSize() * nb_jobs;
+  }
+
+  @Override
+  public void writeTo(ByteBuffer buffer) {
+    if (buffer.remaining() < encodedSize()) {
+      throw new BufferOverflowException();
+    }
+    buffer.put(CODE).putInt(nb_reco).putInt(nb_jobs);
     for (InnerDiscPacket job : jobs) {
-      result.put(job.toBuffer());
+      job.writeTo(buffer);
     }
-    return result.flip();
   }
 
   @Override
@@ -0,0 +1,45 @@
+package fr.uge.ugegreed.packets;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Represents a GIVE packet, the answer to a STEAL packet
+ * @param job_id the job id
+ * @param range_start start of the range given (inclusive)
+ * @param range_end end of the range given (exclusive), equal to range_start if nothing is given
+ */
+public record GivePacket(long job_id, long range_start, long range_end) implements Packet {
+    private static final byte CODE = PacketCode.GIVE.getCode();
+
+    public GivePacket {
+        if (job_id < 0) {
+            throw new IllegalArgumentException("job_id must be positive");
+        }
+        if (range_start > range_end) {
+            throw new IllegalArgumentException("invalid range, range_start must be lower or equal to range_end");
+        }
+    }
+
+    /**
+     * Returns true if no value is given
+     * @return true if the range is empty
+     */
+    public boolean isEmpty() {
+        return range_start == range_end;
+    }
+
+    @Override
+    public int encodedSize() {
+        return Byte.BYTES + Long.BYTES * 3;
+    }
+
+    @Override
+    public void writeTo(ByteBuffer buffer) {
+        buffer.put(CODE).putLong(job_id).putLong(range_start).putLong(range_end);
+    }
+
+    @Override
+    public String toString() {
+        return "GIVE packet(job_id: " + job_id + ", range_start: " + range_start + ", range_end: " + range_end + ")";
+    }
+}
@@ -16,8 +16,13 @@ public record InitPacket(int potential, int appID) implements Packet {
   }
 
   @Override
-  public ByteBuffer toBuffer() {
-    return ByteBuffer.allocate(Byte.BYTES + Integer.BYTES * 2).put(CODE).putInt(potential).putInt(appID).flip();
+  public int encodedSize() {
+    return Byte.BYTES + Integer.BYTES * 2;
+  }
+
+  @Override
+  public void writeTo(ByteBuffer buffer) {
+    buffer.put(CODE).putInt(potential).putInt(appID);
   }
 
   @Override
@@ -0,0 +1,78 @@
+package fr.uge.ugegreed.packets;
+
+import fr.uge.ugegreed.utils.TypeToByteWriter;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Represents a JOB_DESC packet, which describes a job once per connection so that requests for
+ * ranges of that job can be sent as REQ_RANGE packets
+ * @param job_id the job id
+ * @param jar_URL path to the jar to execute
+ * @param class_name name of the main class to execute
+ * @param options options of the job, by key
+ */
+public record JobDescPacket(long job_id, String jar_URL, String class_name, Map<Integer, Long> options) implements Packet {
+    private static final byte CODE = PacketCode.JOB_DESC.getCode();
+
+    public JobDescPacket {
+        if (job_id < 0) {
+            throw new IllegalArgumentException("job_id must be positive");
+        }
+        Objects.requireNonNull(jar_URL);
+        Objects.requireNonNull(class_name);
+        if (jar_URL.isEmpty() || class_name.isEmpty()) {
+            throw new IllegalArgumentException("jarURL and className must not be empty");
+        }
+        // Sorted so that the encoding does not depend on the map given
+        options = Collections.unmodifiableMap(new TreeMap<>(options));
+    }
+
+    /**
+     * Returns the description of the job requested by a REQ packet
+     * @param reqPacket REQ packet
+     * @return the description of the job, without options
+     */
+    public static JobDescPacket of(ReqPacket reqPacket) {
+        return new JobDescPacket(reqPacket.job_id(), reqPacket.jar_URL(), reqPacket.class_name(), Map.of());
+    }
+
+    /**
+     * Returns a REQ packet for a range of this job, for neighbors which do not support JOB_DESC
+     * @param range_start start of the range (inclusive)
+     * @param range_end end of the range (exclusive)
+     * @return the REQ packet
+     */
+    public ReqPacket request(long range_start, long range_end) {
+        return new ReqPacket(job_id, jar_URL, class_name, range_start, range_end);
+    }
+
+    @Override
+    public int encodedSize() {
+        return Byte.BYTES + Long.BYTES + TypeToByteWriter.stringSize(jar_URL, StandardCharsets.US_ASCII)
+            + TypeToByteWriter.stringSize(class_name) + Integer.BYTES + options.size() * (Integer.BYTES + Long.BYTES);
+    }
+
+    @Override
+    public void writeTo(ByteBuffer buffer) {
+        if (buffer.remaining() < encodedSize()) {
+            throw new BufferOverflowException();
+        }
+        buffer.put(CODE).putLong(job_id);
+        TypeToByteWriter.putString(buffer, jar_URL, StandardCharsets.US_ASCII);
+        TypeToByteWriter.putString(buffer, class_name);
+        buffer.putInt(options.size());
+        options.forEach((key, value) -> buffer.putInt(key).putLong(value));
+    }
+
+    @Override
+    public String toString() {
+        return "JOB_DESC packet(job_id: " + job_id + ", jar_URL: " + jar_URL + ", class_name: " + class_name + ", options: " + options + ")";
+    }
+}
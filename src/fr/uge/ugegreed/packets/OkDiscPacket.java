@@ -9,8 +9,13 @@ public record OkDiscPacket() implements Packet {
   private static final byte CODE = PacketCode.OK_DISC.getCode();
 
   @Override
-  public ByteBuffer toBuffer() {
-    return ByteBuffer.allocate(Byte.BYTES).put(CODE).flip();
+  public int encodedSize() {
+    return Byte.BYTES;
+  }
+
+  @Override
+  public void writeTo(ByteBuffer buffer) {
+    buffer.put(CODE);
   }
 
   @Override
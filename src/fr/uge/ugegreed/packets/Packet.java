@@ -6,12 +6,14 @@ import java.util.Optional;
 /**
  * Represents a TCP packet
  */
-public sealed interface Packet permits AccPacket, AnsPacket, DiscPacket, InitPacket, OkDiscPacket, RediPacket, RefPacket, ReqPacket, UpdtPacket {
+public sealed interface Packet permits AccPacket, AccStridedPacket, AnsBatchPacket, AnsPacket, CancelPacket, CapaPacket, CreditPacket, DiscPacket, GivePacket, InitPacket, JobDescPacket, OkDiscPacket, PullPacket, RawPacket, RediPacket, RefPacket, RefStridedPacket, ReqPacket, ReqRangePacket, ReqStridedPacket, StealPacket, UpdtPacket {
   /**
    * Defines the packet types and associated code
    */
   enum PacketCode {
-    INIT(1), UPDT(2), REQ(3), ACC(4), REF(5), ANS(6), REDI(7), DISC(8), OK_DISC(9);
+    INIT(1), UPDT(2), REQ(3), ACC(4), REF(5), ANS(6), REDI(7), DISC(8), OK_DISC(9), CAPA(10),
+    ANS_BATCH(11), CREDIT(12), JOB_DESC(13), REQ_RANGE(14), PULL(15), CANCEL(16), STEAL(17), GIVE(18),
+    REQ_STRIDED(19), ACC_STRIDED(20), REF_STRIDED(21);
 
     private final int code;
     PacketCode(int code) {
@@ -38,14 +40,43 @@ public sealed interface Packet permits AccPacket, AnsPacket, DiscPacket, InitPac
         case 7 -> Optional.of(REDI);
         case 8 -> Optional.of(DISC);
         case 9 -> Optional.of(OK_DISC);
+        case 10 -> Optional.of(CAPA);
+        case 11 -> Optional.of(ANS_BATCH);
+        case 12 -> Optional.of(CREDIT);
+        case 13 -> Optional.of(JOB_DESC);
+        case 14 -> Optional.of(REQ_RANGE);
+        case 15 -> Optional.of(PULL);
+        case 16 -> Optional.of(CANCEL);
+        case 17 -> Optional.of(STEAL);
+        case 18 -> Optional.of(GIVE);
+        case 19 -> Optional.of(REQ_STRIDED);
+        case 20 -> Optional.of(ACC_STRIDED);
+        case 21 -> Optional.of(REF_STRIDED);
         default -> Optional.empty();
       };
     }
   }
 
+  /**
+   * Returns the number of bytes the packet takes once encoded
+   * @return the number of bytes the packet takes once encoded
+   */
+  int encodedSize();
+
+  /**
+   * Writes the encoded packet directly into a buffer
+   * @param buffer buffer in write mode, it must have at least encodedSize() bytes remaining
+   * @throws java.nio.BufferOverflowException if the buffer is too small
+   */
+  void writeTo(ByteBuffer buffer);
+
   /**
    * Transforms the packet into ByteBuffer form, in a read state.
    * @return ByteBuffer containing the packet
    */
-  ByteBuffer toBuffer();
+  default ByteBuffer toBuffer() {
+    var buffer = ByteBuffer.allocate(encodedSize());
+    writeTo(buffer);
+    return buffer.flip();
+  }
 }
@@ -0,0 +1,36 @@
+package fr.uge.ugegreed.packets;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Represents a PULL packet, used by a node to ask for more work on a dynamic job
+ * @param job_id the job id
+ * @param potential potential of the node asking for work, the origin of the job sizes the range it gives after it
+ */
+public record PullPacket(long job_id, int potential) implements Packet {
+    private static final byte CODE = PacketCode.PULL.getCode();
+
+    public PullPacket {
+        if (job_id < 0) {
+            throw new IllegalArgumentException("job_id must be positive");
+        }
+        if (potential <= 0) {
+            throw new IllegalArgumentException("potential must be strictly positive");
+        }
+    }
+
+    @Override
+    public int encodedSize() {
+        return Byte.BYTES + Long.BYTES + Integer.BYTES;
+    }
+
+    @Override
+    public void writeTo(ByteBuffer buffer) {
+        buffer.put(CODE).putLong(job_id).putInt(potential);
+    }
+
+    @Override
+    public String toString() {
+        return "PULL packet(job_id: " + job_id + ", potential: " + potential + ")";
+    }
+}
@@ -0,0 +1,64 @@
+package fr.uge.ugegreed.packets;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Represents an already encoded packet, which is sent as is. It is used to relay packets
+ * from one neighbor to another without decoding them.
+ * @param frame bytes of the encoded packet, including its initial byte
+ */
+public record RawPacket(byte[] frame) implements Packet {
+
+  public RawPacket {
+    Objects.requireNonNull(frame);
+    if (frame.length == 0) {
+      throw new IllegalArgumentException("frame cannot be empty");
+    }
+  }
+
+  /**
+   * Creates a raw packet by copying the remaining bytes of a buffer
+   * @param buffer buffer in read mode, positioned on the packet, it is consumed
+   * @return the raw packet
+   */
+  public static RawPacket copyOf(ByteBuffer buffer) {
+    var frame = new byte[buffer.remaining()];
+    buffer.get(frame);
+    return new RawPacket(frame);
+  }
+
+  /**
+   * Returns the id of the job of a relayed answer, ANS and ANS_BATCH packets both start with it
+   * @return the id of the job
+   */
+  public long answerJobID() {
+    return ByteBuffer.wrap(frame, Byte.BYTES, Long.BYTES).getLong();
+  }
+
+  @Override
+  public int encodedSize() {
+    return frame.length;
+  }
+
+  @Override
+  public void writeTo(ByteBuffer buffer) {
+    buffer.put(frame);
+  }
+
+  @Override
+  public String toString() {
+    return "RAW packet(code: " + frame[0] + ", size: " + frame.length + ")";
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof RawPacket that && Arrays.equals(frame, that.frame);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(frame);
+  }
+}
@@ -18,9 +18,14 @@ public record RediPacket(InetSocketAddress new_parent) implements Packet {
   }
 
   @Override
-  public ByteBuffer toBuffer() {
-    var new_parent_bb = TypeToByteWriter.getHost(new_parent);
-    return ByteBuffer.allocate(Byte.BYTES + new_parent_bb.remaining()).put(CODE).put(new_parent_bb).flip();
+  public int encodedSize() {
+    return Byte.BYTES + TypeToByteWriter.HOST_SIZE;
+  }
+
+  @Override
+  public void writeTo(ByteBuffer buffer) {
+    buffer.put(CODE);
+    TypeToByteWriter.putHost(buffer, new_parent);
   }
 
   @Override
@@ -0,0 +1,57 @@
+package fr.uge.ugegreed.packets;
+
+import fr.uge.ugegreed.utils.StridedRange;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Represents a REF_STRIDED packet, a REF packet for values taken by blocks at regular intervals across a range
+ * @param job_id the job id
+ * @param range_start start of the first block (inclusive)
+ * @param range_end end of the range (exclusive)
+ * @param block number of values of each block
+ * @param stride distance between the starts of two blocks
+ */
+public record RefStridedPacket(long job_id, long range_start, long range_end, long block, long stride) implements Packet {
+    private static final byte CODE = PacketCode.REF_STRIDED.getCode();
+
+    public RefStridedPacket {
+        if (job_id < 0) {
+            throw new IllegalArgumentException("job_id must be positive");
+        }
+        if (range_start > range_end) {
+            throw new IllegalArgumentException("invalid range, range_start must be lower or equal to range_end");
+        }
+        if (stride <= 0 || block < 0 || block > stride) {
+            throw new IllegalArgumentException("invalid blocks, block must be between 0 and stride, which must be positive");
+        }
+    }
+
+    public RefStridedPacket(long job_id, StridedRange range) {
+        this(job_id, range.start(), range.end(), range.block(), range.stride());
+    }
+
+    /**
+     * Returns the values of the packet
+     * @return the strided range
+     */
+    public StridedRange range() {
+        return new StridedRange(range_start, range_end, block, stride);
+    }
+
+    @Override
+    public int encodedSize() {
+        return Byte.BYTES + Long.BYTES * 5;
+    }
+
+    @Override
+    public void writeTo(ByteBuffer buffer) {
+        buffer.put(CODE).putLong(job_id).putLong(range_start).putLong(range_end).putLong(block).putLong(stride);
+    }
+
+    @Override
+    public String toString() {
+        return "REF_STRIDED packet(job_id: " + job_id + ", range_start: " + range_start + ", range_end: " + range_end
+            + ", block: " + block + ", stride: " + stride + ")";
+    }
+}
@@ -2,6 +2,7 @@ package fr.uge.ugegreed.packets;
 
 import fr.uge.ugegreed.utils.TypeToByteWriter;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Objects;
@@ -32,12 +33,20 @@ public record ReqPacket(long job_id, String jar_URL, String class_name, long ran
     }
 
     @Override
-    public ByteBuffer toBuffer() {
-        var jar_url_bb = TypeToByteWriter.getString(jar_URL, StandardCharsets.US_ASCII);
-        var class_name_bb = TypeToByteWriter.getString(class_name);
-        return ByteBuffer.allocate(Byte.BYTES + Long.BYTES*3 + jar_url_bb.remaining() + class_name_bb.remaining())
-                .put(CODE).putLong(job_id).put(jar_url_bb).put(class_name_bb).putLong(range_start)
-                .putLong(range_end).flip();
+    public int encodedSize() {
+        return Byte.BYTES + Long.BYTES*3 + TypeToByteWriter.stringSize(jar_URL, StandardCharsets.US_ASCII)
+            + TypeToByteWriter.stringSize(class_name);
+    }
+
+    @Override
+    public void writeTo(ByteBuffer buffer) {
+        if (buffer.remaining() < encodedSize()) {
+            throw new BufferOverflowException();
+        }
+        buffer.put(CODE).putLong(job_id);
+        TypeToByteWriter.putString(buffer, jar_URL, StandardCharsets.US_ASCII);
+        TypeToByteWriter.putString(buffer, class_name);
+        buffer.putLong(range_start).putLong(range_end);
     }
 
     @Override
@@ -0,0 +1,37 @@
+package fr.uge.ugegreed.packets;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Represents a REQ_RANGE packet, a REQ packet for a job already described by a JOB_DESC packet
+ * @param job_id the job id to operate
+ * @param range_start start range of number to operate on (inclusive)
+ * @param range_end end range of number to operate on (exclusive)
+ */
+public record ReqRangePacket(long job_id, long range_start, long range_end) implements Packet {
+    private static final byte CODE = PacketCode.REQ_RANGE.getCode();
+
+    public ReqRangePacket {
+        if (job_id < 0) {
+            throw new IllegalArgumentException("job_id must be positive");
+        }
+        if (range_start > range_end) {
+            throw new IllegalArgumentException("invalid range, range_start must be lower or equal to range_end");
+        }
+    }
+
+    @Override
+    public int encodedSize() {
+        return Byte.BYTES + Long.BYTES*3;
+    }
+
+    @Override
+    public void writeTo(ByteBuffer buffer) {
+        buffer.put(CODE).putLong(job_id).putLong(range_start).putLong(range_end);
+    }
+
+    @Override
+    public String toString() {
+        return "REQ_RANGE packet(job_id: " + job_id + ", range_start: " + range_start + ", range_end: " + range_end + ")";
+    }
+}
@@ -0,0 +1,36 @@
+package fr.uge.ugegreed.packets;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Represents a STEAL packet, used by a node which ran out of work on a job to take some from a neighbor
+ * @param job_id the job id
+ * @param potential potential of the node asking for work, the neighbor gives a share of its work after it
+ */
+public record StealPacket(long job_id, int potential) implements Packet {
+    private static final byte CODE = PacketCode.STEAL.getCode();
+
+    public StealPacket {
+        if (job_id < 0) {
+            throw new IllegalArgumentException("job_id must be positive");
+        }
+        if (potential <= 0) {
+            throw new IllegalArgumentException("potential must be strictly positive");
+        }
+    }
+
+    @Override
+    public int encodedSize() {
+        return Byte.BYTES + Long.BYTES + Integer.BYTES;
+    }
+
+    @Override
+    public void writeTo(ByteBuffer buffer) {
+        buffer.put(CODE).putLong(job_id).putInt(potential);
+    }
+
+    @Override
+    public String toString() {
+        return "STEAL packet(job_id: " + job_id + ", potential: " + potential + ")";
+    }
+}
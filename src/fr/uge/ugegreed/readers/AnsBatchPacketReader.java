@@ -0,0 +1,118 @@
+package fr.uge.ugegreed.readers;
+
+import fr.uge.ugegreed.packets.AnsBatchPacket;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reader for ANS_BATCH packets, does NOT read the initial byte
+ */
+public final class AnsBatchPacketReader implements Reader<AnsBatchPacket> {
+
+  private enum State {
+    DONE, WAITING_JOB_ID, WAITING_BASE_NUMBER, WAITING_NB_ANSWERS, WAITING_DELTA, WAITING_RESULT, ERROR
+  }
+
+  private State state = State.WAITING_JOB_ID;
+  private int step;
+  private long jobId;
+  private long baseNumber;
+  private int[] deltas;
+  private String[] results;
+
+  private final Reader<Long> longReader = BaseReader.longReader();
+  private final Reader<Integer> intReader = BaseReader.intReader();
+  private final Reader<String> stringReader = new StringReader();
+
+  @Override
+  public ProcessStatus process(ByteBuffer byteBuffer) {
+    if (state == State.DONE || state == State.ERROR) {
+      throw new IllegalStateException();
+    }
+
+    while (state != State.DONE) {
+      switch (state) {
+        case WAITING_JOB_ID -> {
+          var result = longReader.process(byteBuffer);
+          if (result == ProcessStatus.REFILL) { return ProcessStatus.REFILL; }
+          jobId = longReader.get();
+          longReader.reset();
+          if (jobId < 0) {
+            state = State.ERROR;
+            return ProcessStatus.ERROR;
+          }
+          state = State.WAITING_BASE_NUMBER;
+        }
+
+        case WAITING_BASE_NUMBER -> {
+          var result = longReader.process(byteBuffer);
+          if (result == ProcessStatus.REFILL) { return ProcessStatus.REFILL; }
+          baseNumber = longReader.get();
+          longReader.reset();
+          state = State.WAITING_NB_ANSWERS;
+        }
+
+        case WAITING_NB_ANSWERS -> {
+          var result = intReader.process(byteBuffer);
+          if (result == ProcessStatus.REFILL) { return ProcessStatus.REFILL; }
+          var numberOfAnswers = intReader.get();
+          intReader.reset();
+          if (numberOfAnswers < 0) {
+            state = State.ERROR;
+            return ProcessStatus.ERROR;
+          }
+          deltas = new int[numberOfAnswers];
+          results = new String[numberOfAnswers];
+          state = numberOfAnswers == 0 ? State.DONE : State.WAITING_DELTA;
+        }
+
+        case WAITING_DELTA -> {
+          var result = intReader.process(byteBuffer);
+          if (result == ProcessStatus.REFILL) { return ProcessStatus.REFILL; }
+          deltas[step] = intReader.get();
+          intReader.reset();
+          if (deltas[step] < 0) {
+            state = State.ERROR;
+            return ProcessStatus.ERROR;
+          }
+          state = State.WAITING_RESULT;
+        }
+
+        case WAITING_RESULT -> {
+          var result = stringReader.process(byteBuffer);
+          if (result == ProcessStatus.REFILL) { return ProcessStatus.REFILL; }
+          if (result == ProcessStatus.ERROR) {
+            state = State.ERROR;
+            return ProcessStatus.ERROR;
+          }
+          results[step] = stringReader.get();
+          stringReader.reset();
+          step++;
+          state = step >= deltas.length ? State.DONE : State.WAITING_DELTA;
+        }
+        default -> throw new AssertionError();
+      }
+    }
+
+    return ProcessStatus.DONE;
+  }
+
+  @Override
+  public AnsBatchPacket get() {
+    if (state != State.DONE) {
+      throw new IllegalStateException();
+    }
+    return new AnsBatchPacket(jobId, baseNumber, deltas, results);
+  }
+
+  @Override
+  public void reset() {
+    step = 0;
+    deltas = null;
+    results = null;
+    longReader.reset();
+    intReader.reset();
+    stringReader.reset();
+    state = State.WAITING_JOB_ID;
+  }
+}
@@ -103,6 +103,25 @@ public final class BasePacketReader<T> implements Reader<T> {
     });
   }
 
+  @SuppressWarnings("unchecked")
+  public static Reader<CapaPacket> capaPacketReader() {
+    return new BasePacketReader<>(List.of(BaseReader.intReader()), readers -> {
+      int capabilities = ((Reader<Integer>) readers.get(0)).get();
+      return Optional.of(new CapaPacket(capabilities));
+    });
+  }
+
+  @SuppressWarnings("unchecked")
+  public static Reader<CreditPacket> creditPacketReader() {
+    return new BasePacketReader<>(List.of(BaseReader.intReader()), readers -> {
+      int credits = ((Reader<Integer>) readers.get(0)).get();
+      if (credits <= 0) {
+        return Optional.empty();
+      }
+      return Optional.of(new CreditPacket(credits));
+    });
+  }
+
   @SuppressWarnings("unchecked")
   public static Reader<ReqPacket> reqPacketReader() {
     return new BasePacketReader<>(List.of(BaseReader.longReader(), new StringReader(StandardCharsets.US_ASCII),
@@ -138,6 +157,85 @@ public final class BasePacketReader<T> implements Reader<T> {
         });
   }
 
+  /**
+   * Compact variant of the REQ packet reader, for jobs described by a JOB_DESC packet
+   */
+  @SuppressWarnings("unchecked")
+  public static Reader<ReqRangePacket> reqRangePacketReader() {
+    return new BasePacketReader<>(List.of(BaseReader.longReader(), BaseReader.longReader(), BaseReader.longReader()),
+        readers -> {
+          var job_id = ((Reader<Long>) readers.get(0)).get();
+          var rangeStart = ((Reader<Long>) readers.get(1)).get();
+          var rangeEnd = ((Reader<Long>) readers.get(2)).get();
+
+          try {
+            return Optional.of(new ReqRangePacket(job_id, rangeStart, rangeEnd));
+          } catch (IllegalArgumentException e) {
+            return Optional.empty();
+          }
+        });
+  }
+
+  @SuppressWarnings("unchecked")
+  public static Reader<CancelPacket> cancelPacketReader() {
+    return new BasePacketReader<>(List.of(BaseReader.longReader()),
+        readers -> {
+          var job_id = ((Reader<Long>) readers.get(0)).get();
+
+          try {
+            return Optional.of(new CancelPacket(job_id));
+          } catch (IllegalArgumentException e) {
+            return Optional.empty();
+          }
+        });
+  }
+
+  @SuppressWarnings("unchecked")
+  public static Reader<PullPacket> pullPacketReader() {
+    return new BasePacketReader<>(List.of(BaseReader.longReader(), BaseReader.intReader()),
+        readers -> {
+          var job_id = ((Reader<Long>) readers.get(0)).get();
+          var potential = ((Reader<Integer>) readers.get(1)).get();
+
+          try {
+            return Optional.of(new PullPacket(job_id, potential));
+          } catch (IllegalArgumentException e) {
+            return Optional.empty();
+          }
+        });
+  }
+
+  @SuppressWarnings("unchecked")
+  public static Reader<StealPacket> stealPacketReader() {
+    return new BasePacketReader<>(List.of(BaseReader.longReader(), BaseReader.intReader()),
+        readers -> {
+          var job_id = ((Reader<Long>) readers.get(0)).get();
+          var potential = ((Reader<Integer>) readers.get(1)).get();
+
+          try {
+            return Optional.of(new StealPacket(job_id, potential));
+          } catch (IllegalArgumentException e) {
+            return Optional.empty();
+          }
+        });
+  }
+
+  @SuppressWarnings("unchecked")
+  public static Reader<GivePacket> givePacketReader() {
+    return new BasePacketReader<>(List.of(BaseReader.longReader(), BaseReader.longReader(), BaseReader.longReader()),
+        readers -> {
+          var job_id = ((Reader<Long>) readers.get(0)).get();
+          var rangeStart = ((Reader<Long>) readers.get(1)).get();
+          var rangeEnd = ((Reader<Long>) readers.get(2)).get();
+
+          try {
+            return Optional.of(new GivePacket(job_id, rangeStart, rangeEnd));
+          } catch (IllegalArgumentException e) {
+            return Optional.empty();
+          }
+        });
+  }
+
   @SuppressWarnings("unchecked")
   public static Reader<RefPacket> refPacketReader() {
     return new BasePacketReader<>(List.of(BaseReader.longReader(), BaseReader.longReader(), BaseReader.longReader()),
@@ -154,6 +252,63 @@ public final class BasePacketReader<T> implements Reader<T> {
         });
   }
 
+  @SuppressWarnings("unchecked")
+  public static Reader<ReqStridedPacket> reqStridedPacketReader() {
+    return new BasePacketReader<>(List.of(BaseReader.longReader(), BaseReader.longReader(), BaseReader.longReader(),
+        BaseReader.longReader(), BaseReader.longReader()),
+        readers -> {
+          var job_id = ((Reader<Long>) readers.get(0)).get();
+          var rangeStart = ((Reader<Long>) readers.get(1)).get();
+          var rangeEnd = ((Reader<Long>) readers.get(2)).get();
+          var block = ((Reader<Long>) readers.get(3)).get();
+          var stride = ((Reader<Long>) readers.get(4)).get();
+
+          try {
+            return Optional.of(new ReqStridedPacket(job_id, rangeStart, rangeEnd, block, stride));
+          } catch (IllegalArgumentException e) {
+            return Optional.empty();
+          }
+        });
+  }
+
+  @SuppressWarnings("unchecked")
+  public static Reader<AccStridedPacket> accStridedPacketReader() {
+    return new BasePacketReader<>(List.of(BaseReader.longReader(), BaseReader.longReader(), BaseReader.longReader(),
+        BaseReader.longReader(), BaseReader.longReader()),
+        readers -> {
+          var job_id = ((Reader<Long>) readers.get(0)).get();
+          var rangeStart = ((Reader<Long>) readers.get(1)).get();
+          var rangeEnd = ((Reader<Long>) readers.get(2)).get();
+          var block = ((Reader<Long>) readers.get(3)).get();
+          var stride = ((Reader<Long>) readers.get(4)).get();
+
+          try {
+            return Optional.of(new AccStridedPacket(job_id, rangeStart, rangeEnd, block, stride));
+          } catch (IllegalArgumentException e) {
+            return Optional.empty();
+          }
+        });
+  }
+
+  @SuppressWarnings("unchecked")
+  public static Reader<RefStridedPacket> refStridedPacketReader() {
+    return new BasePacketReader<>(List.of(BaseReader.longReader(), BaseReader.longReader(), BaseReader.longReader(),
+        BaseReader.longReader(), BaseReader.longReader()),
+        readers -> {
+          var job_id = ((Reader<Long>) readers.get(0)).get();
+          var rangeStart = ((Reader<Long>) readers.get(1)).get();
+          var rangeEnd = ((Reader<Long>) readers.get(2)).get();
+          var block = ((Reader<Long>) readers.get(3)).get();
+          var stride = ((Reader<Long>) readers.get(4)).get();
+
+          try {
+            return Optional.of(new RefStridedPacket(job_id, rangeStart, rangeEnd, block, stride));
+          } catch (IllegalArgumentException e) {
+            return Optional.empty();
+          }
+        });
+  }
+
   @SuppressWarnings("unchecked")
   public static Reader<AnsPacket> ansPacketReader() {
     return new BasePacketReader<>(List.of(BaseReader.longReader(), BaseReader.longReader(), new StringReader()),
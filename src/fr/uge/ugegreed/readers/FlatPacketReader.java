@@ -0,0 +1,346 @@
+package fr.uge.ugegreed.readers;
+
+import fr.uge.ugegreed.packets.*;
+import fr.uge.ugegreed.utils.TypeToByteWriter;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+/**
+ * Reader for complete packets, including initial byte, protocol-compatible with PacketReader.
+ * Instead of copying each field into its own reader, it waits for a packet to be fully present
+ * in the buffer and then decodes it in a single pass, straight from the buffer.
+ * Packets which are too big to ever fit in the buffer are read incrementally by a PacketReader,
+ * unless the owner of the buffer is willing to grow it up to a maximum frame size.
+ */
+public final class FlatPacketReader implements Reader<Packet> {
+
+  private enum State {
+    DONE, WAITING, FALLBACK, ERROR
+  }
+
+  // Returned by frameSize when the packet is invalid
+  private static final long INVALID = -1;
+
+  private final int maxFrameSize;
+  private State state = State.WAITING;
+  private Packet value;
+  private final PacketReader fallbackReader = new PacketReader();
+  // Used to decode strings from buffers which are not backed by an array
+  private byte[] scratch = new byte[256];
+
+  /**
+   * Creates a reader which reads incrementally the packets larger than the buffer
+   */
+  public FlatPacketReader() {
+    this(0);
+  }
+
+  /**
+   * Creates a reader for a buffer which can grow
+   * @param maxFrameSize size up to which packets are waited for in full, the buffer must be grown
+   *                     to the size given by pendingFrameSize when REFILL is returned
+   */
+  public FlatPacketReader(int maxFrameSize) {
+    if (maxFrameSize < 0) {
+      throw new IllegalArgumentException("maxFrameSize cannot be negative");
+    }
+    this.maxFrameSize = maxFrameSize;
+  }
+
+  /**
+   * Processes a buffer in write mode, as any other reader
+   * @param byteBuffer in write mode
+   * @return status after processing
+   */
+  @Override
+  public ProcessStatus process(ByteBuffer byteBuffer) {
+    byteBuffer.flip();
+    try {
+      return processFrame(byteBuffer);
+    } finally {
+      byteBuffer.compact();
+    }
+  }
+
+  /**
+   * Processes a buffer in read mode, which allows reading several packets in a row
+   * without compacting the buffer in between.
+   * The bytes of a packet are only consumed once the whole packet is present.
+   * @param byteBuffer in read mode
+   * @return status after processing
+   * @throws IllegalStateException if trying to process while status is DONE or ERROR
+   */
+  public ProcessStatus processFrame(ByteBuffer byteBuffer) {
+    if (state == State.DONE || state == State.ERROR) {
+      throw new IllegalStateException();
+    }
+    if (state == State.FALLBACK) {
+      return processFallback(byteBuffer);
+    }
+
+    var size = frameSize(byteBuffer);
+    if (size == INVALID) {
+      state = State.ERROR;
+      return ProcessStatus.ERROR;
+    }
+    if (size > byteBuffer.remaining()) {
+      if (size > byteBuffer.capacity() && size > maxFrameSize) {
+        // Will never fit, reads it piece by piece
+        state = State.FALLBACK;
+        return processFallback(byteBuffer);
+      }
+      return ProcessStatus.REFILL;
+    }
+
+    try {
+      value = decode(byteBuffer);
+    } catch (IllegalArgumentException e) {
+      state = State.ERROR;
+      return ProcessStatus.ERROR;
+    }
+    state = State.DONE;
+    return ProcessStatus.DONE;
+  }
+
+  /**
+   * Returns the size of the packet at the head of the buffer if it is fully present and the reader
+   * is not in the middle of another packet, which allows the caller to handle the raw bytes itself.
+   * @param byteBuffer in read mode, it is not modified
+   * @return size of the packet, or -1 if it is not fully present
+   */
+  public int completeFrameSize(ByteBuffer byteBuffer) {
+    if (state != State.WAITING) { return -1; }
+    var size = frameSize(byteBuffer);
+    if (size == INVALID || size > byteBuffer.remaining()) { return -1; }
+    return (int) size;
+  }
+
+  /**
+   * Returns the number of bytes needed to go on reading the packet at the head of the buffer, which may
+   * be a lower bound if the buffer does not contain enough of the packet to know its exact size.
+   * @param byteBuffer in read mode, it is not modified
+   * @return number of bytes needed, or -1 if the reader is not waiting for a packet to be complete
+   */
+  public int pendingFrameSize(ByteBuffer byteBuffer) {
+    if (state != State.WAITING) { return -1; }
+    var size = frameSize(byteBuffer);
+    if (size == INVALID || size > maxFrameSize) { return -1; }
+    return (int) size;
+  }
+
+  private ProcessStatus processFallback(ByteBuffer byteBuffer) {
+    byteBuffer.compact();
+    ProcessStatus status;
+    try {
+      status = fallbackReader.process(byteBuffer);
+    } finally {
+      byteBuffer.flip();
+    }
+    switch (status) {
+      case DONE -> {
+        value = fallbackReader.get();
+        fallbackReader.reset();
+        state = State.DONE;
+      }
+      case ERROR -> state = State.ERROR;
+      case REFILL -> {}
+    }
+    return status;
+  }
+
+  /**
+   * Returns the size of the packet starting at the position of the buffer.
+   * If the buffer does not contain enough bytes to know the exact size, returns a lower bound
+   * which is larger than the number of bytes remaining in the buffer.
+   * @param buffer in read mode, it is not modified
+   * @return size of the packet or a lower bound, INVALID if the packet can't be valid
+   */
+  static long frameSize(ByteBuffer buffer) {
+    var start = buffer.position();
+    var available = buffer.remaining();
+    if (available < Byte.BYTES) { return Byte.BYTES; }
+    var codeOpt = Packet.PacketCode.getPacketCodeFromByte(buffer.get(start));
+    if (codeOpt.isEmpty()) { return INVALID; }
+    return switch (codeOpt.get()) {
+      case INIT, UPDT -> Byte.BYTES + Integer.BYTES * 2;
+      case ACC, REF, REQ_RANGE -> Byte.BYTES + Long.BYTES * 3;
+      case REDI -> Byte.BYTES + TypeToByteWriter.HOST_SIZE;
+      case OK_DISC -> Byte.BYTES;
+      case PULL -> Byte.BYTES + Long.BYTES + Integer.BYTES;
+      case CANCEL -> Byte.BYTES + Long.BYTES;
+      case STEAL -> Byte.BYTES + Long.BYTES + Integer.BYTES;
+      case GIVE -> Byte.BYTES + Long.BYTES * 3;
+      case REQ_STRIDED, ACC_STRIDED, REF_STRIDED -> Byte.BYTES + Long.BYTES * 5;
+      case CAPA, CREDIT -> Byte.BYTES + Integer.BYTES;
+      case ANS -> {
+        long offset = Byte.BYTES + Long.BYTES * 2;
+        yield stringEnd(buffer, offset);
+      }
+      case REQ -> {
+        long offset = stringEnd(buffer, Byte.BYTES + Long.BYTES);
+        if (offset == INVALID || offset > available) { yield offset; }
+        offset = stringEnd(buffer, offset);
+        if (offset == INVALID) { yield INVALID; }
+        yield offset + Long.BYTES * 2;
+      }
+      case JOB_DESC -> {
+        long offset = stringEnd(buffer, Byte.BYTES + Long.BYTES);
+        if (offset == INVALID || offset > available) { yield offset; }
+        offset = stringEnd(buffer, offset);
+        if (offset == INVALID) { yield INVALID; }
+        if (offset + Integer.BYTES > available) { yield offset + Integer.BYTES; }
+        var numberOfOptions = buffer.getInt(start + (int) offset);
+        if (numberOfOptions < 0) { yield INVALID; }
+        yield offset + Integer.BYTES + (long) numberOfOptions * (Integer.BYTES + Long.BYTES);
+      }
+      case DISC -> {
+        long offset = Byte.BYTES + Integer.BYTES * 2;
+        if (available < offset) { yield offset; }
+        var numberOfJobs = buffer.getInt(start + Byte.BYTES + Integer.BYTES);
+        if (numberOfJobs < 0) { yield INVALID; }
+        yield offset + (long) numberOfJobs * DiscPacket.InnerDiscPacket.getSize();
+      }
+      case ANS_BATCH -> {
+        long offset = Byte.BYTES + Long.BYTES * 2 + Integer.BYTES;
+        if (available < offset) { yield offset; }
+        var numberOfAnswers = buffer.getInt(start + Byte.BYTES + Long.BYTES * 2);
+        if (numberOfAnswers < 0) { yield INVALID; }
+        for (var i = 0; i < numberOfAnswers; i++) {
+          offset = stringEnd(buffer, offset + Integer.BYTES);
+          if (offset == INVALID) { yield INVALID; }
+          if (offset > available) {
+            // Every remaining answer takes at least a delta and the size of its result
+            yield offset + (long) (numberOfAnswers - i - 1) * Integer.BYTES * 2;
+          }
+        }
+        yield offset;
+      }
+    };
+  }
+
+  /**
+   * Returns the offset of the end of the string starting at the given offset, or a lower bound of it
+   */
+  private static long stringEnd(ByteBuffer buffer, long offset) {
+    if (offset + Integer.BYTES > buffer.remaining()) { return offset + Integer.BYTES; }
+    var size = buffer.getInt(buffer.position() + (int) offset);
+    if (size < 0) { return INVALID; }
+    return offset + Integer.BYTES + size;
+  }
+
+  private Packet decode(ByteBuffer buffer) {
+    var code = Packet.PacketCode.getPacketCodeFromByte(buffer.get()).orElseThrow(AssertionError::new);
+    return switch (code) {
+      case INIT -> new InitPacket(buffer.getInt(), buffer.getInt());
+      case UPDT -> new UpdtPacket(buffer.getInt(), buffer.getInt());
+      case REQ -> {
+        var jobId = buffer.getLong();
+        var jarURL = getString(buffer, StandardCharsets.US_ASCII);
+        var className = getString(buffer, StandardCharsets.UTF_8);
+        yield new ReqPacket(jobId, jarURL, className, buffer.getLong(), buffer.getLong());
+      }
+      case ACC -> new AccPacket(buffer.getLong(), buffer.getLong(), buffer.getLong());
+      case REF -> new RefPacket(buffer.getLong(), buffer.getLong(), buffer.getLong());
+      case ANS -> {
+        var jobId = buffer.getLong();
+        var number = buffer.getLong();
+        yield new AnsPacket(jobId, number, getString(buffer, StandardCharsets.UTF_8));
+      }
+      case REDI -> new RediPacket(getHost(buffer));
+      case DISC -> {
+        var numberOfReconnections = buffer.getInt();
+        var numberOfJobs = buffer.getInt();
+        var jobs = new DiscPacket.InnerDiscPacket[numberOfJobs];
+        for (var i = 0; i < numberOfJobs; i++) {
+          jobs[i] = new DiscPacket.InnerDiscPacket(buffer.getLong(), buffer.getInt());
+        }
+        yield new DiscPacket(numberOfReconnections, numberOfJobs, jobs);
+      }
+      case OK_DISC -> new OkDiscPacket();
+      case CAPA -> new CapaPacket(buffer.getInt());
+      case CREDIT -> new CreditPacket(buffer.getInt());
+      case JOB_DESC -> {
+        var jobId = buffer.getLong();
+        var jarURL = getString(buffer, StandardCharsets.US_ASCII);
+        var className = getString(buffer, StandardCharsets.UTF_8);
+        var numberOfOptions = buffer.getInt();
+        var options = new HashMap<Integer, Long>();
+        for (var i = 0; i < numberOfOptions; i++) {
+          options.put(buffer.getInt(), buffer.getLong());
+        }
+        yield new JobDescPacket(jobId, jarURL, className, options);
+      }
+      case REQ_RANGE -> new ReqRangePacket(buffer.getLong(), buffer.getLong(), buffer.getLong());
+      case PULL -> new PullPacket(buffer.getLong(), buffer.getInt());
+      case CANCEL -> new CancelPacket(buffer.getLong());
+      case STEAL -> new StealPacket(buffer.getLong(), buffer.getInt());
+      case GIVE -> new GivePacket(buffer.getLong(), buffer.getLong(), buffer.getLong());
+      case REQ_STRIDED -> new ReqStridedPacket(buffer.getLong(), buffer.getLong(), buffer.getLong(),
+          buffer.getLong(), buffer.getLong());
+      case ACC_STRIDED -> new AccStridedPacket(buffer.getLong(), buffer.getLong(), buffer.getLong(),
+          buffer.getLong(), buffer.getLong());
+      case REF_STRIDED -> new RefStridedPacket(buffer.getLong(), buffer.getLong(), buffer.getLong(),
+          buffer.getLong(), buffer.getLong());
+      case ANS_BATCH -> {
+        var jobId = buffer.getLong();
+        var baseNumber = buffer.getLong();
+        var numberOfAnswers = buffer.getInt();
+        var deltas = new int[numberOfAnswers];
+        var results = new String[numberOfAnswers];
+        for (var i = 0; i < numberOfAnswers; i++) {
+          deltas[i] = buffer.getInt();
+          results[i] = getString(buffer, StandardCharsets.UTF_8);
+        }
+        yield new AnsBatchPacket(jobId, baseNumber, deltas, results);
+      }
+    };
+  }
+
+  private String getString(ByteBuffer buffer, Charset charset) {
+    var size = buffer.getInt();
+    String result;
+    if (buffer.hasArray()) {
+      result = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), size, charset);
+      buffer.position(buffer.position() + size);
+    } else {
+      if (scratch.length < size) {
+        scratch = new byte[Integer.max(size, scratch.length * 2)];
+      }
+      buffer.get(scratch, 0, size);
+      result = new String(scratch, 0, size, charset);
+    }
+    return result;
+  }
+
+  private static InetSocketAddress getHost(ByteBuffer buffer) {
+    var ip = new byte[4];
+    buffer.get(ip);
+    var port = Short.toUnsignedInt(buffer.getShort());
+    try {
+      return new InetSocketAddress(InetAddress.getByAddress(ip), port);
+    } catch (UnknownHostException e) {
+      // ip array is necessarily of the correct size
+      throw new AssertionError();
+    }
+  }
+
+  @Override
+  public Packet get() {
+    if (state != State.DONE) {
+      throw new IllegalStateException();
+    }
+    return value;
+  }
+
+  @Override
+  public void reset() {
+    value = null;
+    state = State.WAITING;
+  }
+}
@@ -0,0 +1,128 @@
+package fr.uge.ugegreed.readers;
+
+import fr.uge.ugegreed.packets.JobDescPacket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+/**
+ * Reader for JOB_DESC packets, does NOT read the initial byte
+ */
+public final class JobDescPacketReader implements Reader<JobDescPacket> {
+
+  private enum State {
+    DONE, WAITING_JOB_ID, WAITING_JAR_URL, WAITING_CLASS_NAME, WAITING_NB_OPTIONS, WAITING_KEY, WAITING_VALUE, ERROR
+  }
+
+  private State state = State.WAITING_JOB_ID;
+  private int numberOfOptions;
+  private long jobId;
+  private String jarURL;
+  private String className;
+  private int key;
+  private final HashMap<Integer, Long> options = new HashMap<>();
+  private JobDescPacket value;
+
+  private final Reader<Long> longReader = BaseReader.longReader();
+  private final Reader<Integer> intReader = BaseReader.intReader();
+  private final Reader<String> asciiReader = new StringReader(StandardCharsets.US_ASCII);
+  private final Reader<String> stringReader = new StringReader();
+
+  @Override
+  public ProcessStatus process(ByteBuffer byteBuffer) {
+    if (state == State.DONE || state == State.ERROR) {
+      throw new IllegalStateException();
+    }
+
+    while (state != State.DONE) {
+      switch (state) {
+        case WAITING_JOB_ID -> {
+          var result = longReader.process(byteBuffer);
+          if (result == ProcessStatus.REFILL) { return ProcessStatus.REFILL; }
+          jobId = longReader.get();
+          longReader.reset();
+          state = State.WAITING_JAR_URL;
+        }
+
+        case WAITING_JAR_URL -> {
+          var result = asciiReader.process(byteBuffer);
+          if (result == ProcessStatus.REFILL) { return ProcessStatus.REFILL; }
+          if (result == ProcessStatus.ERROR) { return error(); }
+          jarURL = asciiReader.get();
+          asciiReader.reset();
+          state = State.WAITING_CLASS_NAME;
+        }
+
+        case WAITING_CLASS_NAME -> {
+          var result = stringReader.process(byteBuffer);
+          if (result == ProcessStatus.REFILL) { return ProcessStatus.REFILL; }
+          if (result == ProcessStatus.ERROR) { return error(); }
+          className = stringReader.get();
+          stringReader.reset();
+          state = State.WAITING_NB_OPTIONS;
+        }
+
+        case WAITING_NB_OPTIONS -> {
+          var result = intReader.process(byteBuffer);
+          if (result == ProcessStatus.REFILL) { return ProcessStatus.REFILL; }
+          numberOfOptions = intReader.get();
+          intReader.reset();
+          if (numberOfOptions < 0) { return error(); }
+          state = numberOfOptions == 0 ? State.DONE : State.WAITING_KEY;
+        }
+
+        case WAITING_KEY -> {
+          var result = intReader.process(byteBuffer);
+          if (result == ProcessStatus.REFILL) { return ProcessStatus.REFILL; }
+          key = intReader.get();
+          intReader.reset();
+          state = State.WAITING_VALUE;
+        }
+
+        case WAITING_VALUE -> {
+          var result = longReader.process(byteBuffer);
+          if (result == ProcessStatus.REFILL) { return ProcessStatus.REFILL; }
+          options.put(key, longReader.get());
+          longReader.reset();
+          numberOfOptions--;
+          state = numberOfOptions == 0 ? State.DONE : State.WAITING_KEY;
+        }
+        default -> throw new AssertionError();
+      }
+    }
+
+    try {
+      value = new JobDescPacket(jobId, jarURL, className, options);
+    } catch (IllegalArgumentException e) {
+      return error();
+    }
+    return ProcessStatus.DONE;
+  }
+
+  private ProcessStatus error() {
+    state = State.ERROR;
+    return ProcessStatus.ERROR;
+  }
+
+  @Override
+  public JobDescPacket get() {
+    if (state != State.DONE) {
+      throw new IllegalStateException();
+    }
+    return value;
+  }
+
+  @Override
+  public void reset() {
+    value = null;
+    jarURL = null;
+    className = null;
+    options.clear();
+    longReader.reset();
+    intReader.reset();
+    asciiReader.reset();
+    stringReader.reset();
+    state = State.WAITING_JOB_ID;
+  }
+}
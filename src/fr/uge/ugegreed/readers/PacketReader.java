@@ -26,7 +26,19 @@ public class PacketReader implements Reader<Packet> {
       Map.entry(Packet.PacketCode.REF, BasePacketReader.refPacketReader()),
       Map.entry(Packet.PacketCode.ANS, BasePacketReader.ansPacketReader()),
       Map.entry(Packet.PacketCode.REDI, BasePacketReader.rediPacketReader()),
-      Map.entry(Packet.PacketCode.DISC, new DiscPacketReader())
+      Map.entry(Packet.PacketCode.DISC, new DiscPacketReader()),
+      Map.entry(Packet.PacketCode.CAPA, BasePacketReader.capaPacketReader()),
+      Map.entry(Packet.PacketCode.ANS_BATCH, new AnsBatchPacketReader()),
+      Map.entry(Packet.PacketCode.CREDIT, BasePacketReader.creditPacketReader()),
+      Map.entry(Packet.PacketCode.JOB_DESC, new JobDescPacketReader()),
+      Map.entry(Packet.PacketCode.REQ_RANGE, BasePacketReader.reqRangePacketReader()),
+      Map.entry(Packet.PacketCode.PULL, BasePacketReader.pullPacketReader()),
+      Map.entry(Packet.PacketCode.CANCEL, BasePacketReader.cancelPacketReader()),
+      Map.entry(Packet.PacketCode.STEAL, BasePacketReader.stealPacketReader()),
+      Map.entry(Packet.PacketCode.GIVE, BasePacketReader.givePacketReader()),
+      Map.entry(Packet.PacketCode.REQ_STRIDED, BasePacketReader.reqStridedPacketReader()),
+      Map.entry(Packet.PacketCode.ACC_STRIDED, BasePacketReader.accStridedPacketReader()),
+      Map.entry(Packet.PacketCode.REF_STRIDED, BasePacketReader.refStridedPacketReader())
   );
 
   private final Reader<Byte> byteReader = BaseReader.byteReader();
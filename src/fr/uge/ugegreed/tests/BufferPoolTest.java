@@ -0,0 +1,62 @@
+package fr.uge.ugegreed.tests;
+
+import fr.uge.ugegreed.utils.BufferPool;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BufferPoolTest {
+    @Test
+    public void capacities() {
+        var pool = new BufferPool(1024, 8192);
+        assertEquals(1024, pool.capacityFor(0));
+        assertEquals(1024, pool.capacityFor(1024));
+        assertEquals(2048, pool.capacityFor(1025));
+        assertEquals(8192, pool.capacityFor(8192));
+        assertEquals(10_000, pool.capacityFor(10_000));
+    }
+
+    @Test
+    public void acquireGivesDirectClearedBuffer() {
+        var pool = new BufferPool(1024, 8192);
+        var buffer = pool.acquire(3000);
+        assertTrue(buffer.isDirect());
+        assertEquals(4096, buffer.capacity());
+        assertEquals(0, buffer.position());
+        assertEquals(4096, buffer.limit());
+    }
+
+    @Test
+    public void releasedBufferIsReused() {
+        var pool = new BufferPool(1024, 8192);
+        var buffer = pool.acquire(0);
+        buffer.putInt(42);
+        pool.release(buffer);
+        assertEquals(1, pool.freeBuffers(0));
+        var reused = pool.acquire(10);
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(0, pool.freeBuffers(0));
+    }
+
+    @Test
+    public void foreignBuffersAreNotKept() {
+        var pool = new BufferPool(1024, 8192);
+        pool.release(ByteBuffer.allocate(1024));
+        pool.release(ByteBuffer.allocateDirect(1000));
+        pool.release(pool.acquire(10_000));
+        assertEquals(0, pool.freeBuffers(1024));
+        assertEquals(0, pool.freeBuffers(10_000));
+    }
+
+    @Test
+    public void invalidSizes() {
+        assertThrows(IllegalArgumentException.class, () -> new BufferPool(1000, 8192));
+        assertThrows(IllegalArgumentException.class, () -> new BufferPool(8192, 1024));
+    }
+}
@@ -0,0 +1,47 @@
+package fr.uge.ugegreed.tests;
+
+import fr.uge.ugegreed.jobs.ChunkPolicy;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ChunkPolicyTest {
+    @Test
+    public void chunksShrinkWithTheValuesLeft() {
+        var policy = new ChunkPolicy(1, Long.MAX_VALUE);
+        assertEquals(500, policy.nextChunk(10_000, 1, 10));
+        assertEquals(50, policy.nextChunk(1_000, 1, 10));
+        assertEquals(5, policy.nextChunk(100, 1, 10));
+    }
+
+    @Test
+    public void chunksFollowThePotential() {
+        var policy = new ChunkPolicy(1, Long.MAX_VALUE);
+        assertEquals(2_000, policy.nextChunk(10_000, 4, 10));
+    }
+
+    @Test
+    public void chunksAreBounded() {
+        var policy = new ChunkPolicy(20, 100);
+        assertEquals(100, policy.nextChunk(10_000, 1, 10));
+        assertEquals(400, policy.nextChunk(10_000, 4, 10));
+        assertEquals(20, policy.nextChunk(100, 1, 10));
+        assertEquals(80, policy.nextChunk(100, 4, 10));
+    }
+
+    @Test
+    public void chunksNeverExceedTheValuesLeft() {
+        var policy = new ChunkPolicy(50, 100);
+        assertEquals(30, policy.nextChunk(30, 1, 10));
+        assertEquals(120, policy.nextChunk(120, 4, 10));
+        assertEquals(0, policy.nextChunk(0, 1, 10));
+        assertEquals(Long.MAX_VALUE, new ChunkPolicy(1, Long.MAX_VALUE).nextChunk(Long.MAX_VALUE, 64, 1));
+    }
+
+    @Test
+    public void checkPreconditions() {
+        assertThrows(IllegalArgumentException.class, () -> new ChunkPolicy(0, 10));
+        assertThrows(IllegalArgumentException.class, () -> new ChunkPolicy(10, 5));
+    }
+}
@@ -0,0 +1,99 @@
+package fr.uge.ugegreed.tests;
+
+import fr.uge.ugegreed.jobs.CostModel;
+import fr.uge.ugegreed.utils.StridedRange;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CostModelTest {
+    @Test
+    public void uniformSlicesAreSplitByWidth() {
+        assertEquals(250, CostModel.UNIFORM.sliceEnd(0, 1000, 1, 4));
+        assertEquals(750, CostModel.UNIFORM.sliceEnd(0, 1000, 3, 4));
+        assertEquals(1000, CostModel.UNIFORM.sliceEnd(0, 1000, 4, 4));
+        assertEquals(4, CostModel.UNIFORM.sliceEnd(0, 10, 1, 3));
+    }
+
+    @Test
+    public void expensiveValuesGetNarrowerSlices() {
+        // With a linear cost, half of the cost of [0, 1000) lies under about 1000 / sqrt(2)
+        var model = CostModel.of(1);
+        var middle = model.sliceEnd(0, 1000, 1, 2);
+        assertTrue(Math.abs(middle - 707) <= 1, "middle was " + middle);
+        assertEquals(1000, model.sliceEnd(0, 1000, 2, 2));
+        var firstQuarter = model.sliceEnd(0, 1000, 1, 4);
+        var lastQuarter = 1000 - model.sliceEnd(0, 1000, 3, 4);
+        assertTrue(firstQuarter > lastQuarter);
+    }
+
+    @Test
+    public void interleavedBlocksAreSplitByWidth() {
+        // Two nodes of the same potential, the first one takes the same part of each of the 64 rounds
+        var range = StridedRange.contiguous(0, 64_000_000).reblock(1_000_000);
+        var model = CostModel.of(1).over(range);
+        assertEquals(CostModel.UNIFORM, model);
+        var localEnd = model.sliceEnd(range.start(), range.start() + range.block(), 1, 2);
+        assertEquals(32_000_000, range.part(0, localEnd - range.start()).size());
+        var contiguous = StridedRange.contiguous(0, 1000);
+        assertEquals(CostModel.of(1), CostModel.of(1).over(contiguous));
+    }
+
+    @Test
+    public void slicesOfNegativeValues() {
+        var model = CostModel.of(2);
+        assertEquals(0, model.sliceEnd(-1000, 1000, 1, 2));
+    }
+
+    @Test
+    public void fitPowerLaw() {
+        var values = new long[] { 100, 1_000, 10_000, 100_000 };
+        var nanos = new long[] { 10, 100, 1_000, 10_000 };
+        assertEquals(1, CostModel.fit(values, nanos, values.length).exponent(), 0.01);
+        var constant = new long[] { 500, 500, 500, 500 };
+        assertEquals(CostModel.UNIFORM, CostModel.fit(values, constant, values.length));
+        assertEquals(CostModel.UNIFORM, CostModel.fit(values, nanos, 1));
+    }
+
+    @Test
+    public void sampleChecker() throws InterruptedException {
+        assertEquals(CostModel.UNIFORM, CostModel.sample(value -> "", 0, 10));
+        // The clock only moves when values are checked, each value costs as much as its tenth
+        var clock = new long[1];
+        var model = CostModel.sample(value -> {
+            clock[0] += value / 10;
+            return "";
+        }, 100_000, 1_000_000, () -> clock[0]);
+        assertEquals(1, model.exponent(), 0.01);
+        var flat = CostModel.sample(value -> {
+            clock[0] += 1_000;
+            return "";
+        }, 100_000, 1_000_000, () -> clock[0]);
+        assertEquals(CostModel.UNIFORM, flat);
+    }
+
+    @Test
+    public void samplingStopsAtTheBudget() throws InterruptedException {
+        // A value takes a second, only the first group is timed and nothing can be fitted on it
+        var clock = new long[1];
+        var checked = new int[1];
+        var model = CostModel.sample(value -> {
+            clock[0] += 1_000_000_000L;
+            checked[0]++;
+            return "";
+        }, 100_000, 1_000_000, () -> clock[0]);
+        assertEquals(CostModel.UNIFORM, model);
+        assertEquals(4, checked[0]);
+    }
+
+    @Test
+    public void exponentIsRoundedAndClamped() {
+        assertEquals(new CostModel(1.235), CostModel.of(1.23456));
+        assertEquals(new CostModel(CostModel.MAX_EXPONENT), CostModel.of(10));
+        assertEquals(CostModel.UNIFORM, CostModel.of(-1));
+        assertEquals(CostModel.UNIFORM, CostModel.of(Double.NaN));
+        assertThrows(IllegalArgumentException.class, () -> new CostModel(-1));
+    }
+}
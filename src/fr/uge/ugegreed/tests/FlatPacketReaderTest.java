@@ -0,0 +1,141 @@
+package fr.uge.ugegreed.tests;
+
+import fr.uge.ugegreed.packets.*;
+import fr.uge.ugegreed.readers.FlatPacketReader;
+import fr.uge.ugegreed.readers.Reader;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class FlatPacketReaderTest {
+    private static final List<Packet> PACKETS = List.of(
+        new InitPacket(3, 7777),
+        new UpdtPacket(5, 7777),
+        new ReqPacket(1, "http://www.jars.com/jar1.jar", "HelloWorld€", 1, 2),
+        new AccPacket(1, 2, 3),
+        new RefPacket(1, 2, 3),
+        new AnsPacket(1, 2, "€a€"),
+        new RediPacket(new InetSocketAddress("127.0.0.1", 7777)),
+        new DiscPacket(0, 1, new DiscPacket.InnerDiscPacket[]{new DiscPacket.InnerDiscPacket(1, 7777)}),
+        new OkDiscPacket(),
+        new CapaPacket(1),
+        new AnsBatchPacket(1, 40, new int[]{0, 2}, new String[]{"40", "42"}),
+        new CreditPacket(64),
+        new JobDescPacket(1, "http://www.jars.com/jar1.jar", "HelloWorld€", Map.of(1, 10L)),
+        new ReqRangePacket(1, 2, 3),
+        new PullPacket(1, 2),
+        new CancelPacket(1),
+        new StealPacket(1, 2),
+        new GivePacket(1, 2, 3),
+        new ReqStridedPacket(1, 0, 100, 10, 40),
+        new AccStridedPacket(1, 0, 100, 10, 40),
+        new RefStridedPacket(1, 0, 100, 10, 40)
+    );
+
+    @Test
+    public void everyPacketType() {
+        var reader = new FlatPacketReader();
+        for (var packet : PACKETS) {
+            var buffer = ByteBuffer.allocate(1024).put(packet.toBuffer());
+            assertEquals(Reader.ProcessStatus.DONE, reader.process(buffer));
+            assertEquals(packet, reader.get());
+            assertEquals(0, buffer.position());
+            reader.reset();
+        }
+    }
+
+    @Test
+    public void byteByByte() {
+        var reader = new FlatPacketReader();
+        var buffer = ByteBuffer.allocate(1024);
+        for (var packet : PACKETS) {
+            var packetBuffer = packet.toBuffer();
+            while (packetBuffer.remaining() > 1) {
+                buffer.put(packetBuffer.get());
+                assertEquals(Reader.ProcessStatus.REFILL, reader.process(buffer));
+            }
+            buffer.put(packetBuffer.get());
+            assertEquals(Reader.ProcessStatus.DONE, reader.process(buffer));
+            assertEquals(packet, reader.get());
+            reader.reset();
+        }
+    }
+
+    @Test
+    public void severalPacketsInReadMode() {
+        var buffer = ByteBuffer.allocate(1024);
+        PACKETS.forEach(packet -> buffer.put(packet.toBuffer()));
+        buffer.flip();
+        var reader = new FlatPacketReader();
+        for (var packet : PACKETS) {
+            assertEquals(Reader.ProcessStatus.DONE, reader.processFrame(buffer));
+            assertEquals(packet, reader.get());
+            reader.reset();
+        }
+        assertEquals(Reader.ProcessStatus.REFILL, reader.processFrame(buffer));
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void packetBiggerThanBuffer() {
+        var packet = new AnsPacket(1, 2, "a".repeat(200));
+        var packetBuffer = packet.toBuffer();
+        var buffer = ByteBuffer.allocate(32);
+        var reader = new FlatPacketReader();
+        var status = Reader.ProcessStatus.REFILL;
+        while (status == Reader.ProcessStatus.REFILL) {
+            var oldLimit = packetBuffer.limit();
+            packetBuffer.limit(Integer.min(oldLimit, packetBuffer.position() + buffer.remaining()));
+            buffer.put(packetBuffer);
+            packetBuffer.limit(oldLimit);
+            status = reader.process(buffer);
+        }
+        assertEquals(Reader.ProcessStatus.DONE, status);
+        assertEquals(packet, reader.get());
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void growingBuffer() {
+        var packet = new AnsPacket(1, 2, "a".repeat(200));
+        var packetBuffer = packet.toBuffer();
+        var reader = new FlatPacketReader(1024);
+        var buffer = ByteBuffer.allocate(32);
+        buffer.put(packetBuffer.limit(buffer.capacity()));
+        assertEquals(Reader.ProcessStatus.REFILL, reader.process(buffer));
+        assertEquals(32, buffer.position());
+
+        var needed = reader.pendingFrameSize(buffer.flip());
+        assertEquals(packet.encodedSize(), needed);
+        var bigger = ByteBuffer.allocate(needed).put(buffer);
+        bigger.put(packetBuffer.limit(packetBuffer.capacity()));
+        assertEquals(Reader.ProcessStatus.DONE, reader.process(bigger));
+        assertEquals(packet, reader.get());
+    }
+
+    @Test
+    public void errorUnknownCode() {
+        var buffer = ByteBuffer.allocate(16).put((byte) 99);
+        var reader = new FlatPacketReader();
+        assertEquals(Reader.ProcessStatus.ERROR, reader.process(buffer));
+    }
+
+    @Test
+    public void errorNegJobId() {
+        var buffer = ByteBuffer.allocate(32).put((byte) 4).putLong(-1).putLong(0).putLong(1);
+        var reader = new FlatPacketReader();
+        assertEquals(Reader.ProcessStatus.ERROR, reader.process(buffer));
+    }
+
+    @Test
+    public void errorGet() {
+        var reader = new FlatPacketReader();
+        assertThrows(IllegalStateException.class, reader::get);
+    }
+}
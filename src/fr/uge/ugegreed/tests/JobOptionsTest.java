@@ -0,0 +1,78 @@
+package fr.uge.ugegreed.tests;
+
+import fr.uge.ugegreed.jobs.ChunkPolicy;
+import fr.uge.ugegreed.jobs.CostModel;
+import fr.uge.ugegreed.jobs.JobOptions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JobOptionsTest {
+    @Test
+    public void defaultOptionsAreNotSent() {
+        assertEquals(Map.of(), JobOptions.DEFAULT.toMap());
+        assertEquals(JobOptions.DEFAULT, JobOptions.fromMap(Map.of()));
+    }
+
+    @Test
+    public void mapRoundTrip() {
+        var options = new JobOptions(true, 10, 5000, 3);
+        assertEquals(options, JobOptions.fromMap(options.toMap()));
+    }
+
+    @Test
+    public void costModelIsSentButNotTheOriginFlags() {
+        var options = new JobOptions(false, 0, 0, 1, true, CostModel.of(1.5), true);
+        assertEquals(Map.of(5, 1500L), options.toMap());
+        assertEquals(JobOptions.DEFAULT.withCostModel(CostModel.of(1.5)), JobOptions.fromMap(options.toMap()));
+        assertEquals(JobOptions.DEFAULT, JobOptions.fromMap(Map.of(5, -200L)));
+        assertEquals(JobOptions.DEFAULT, JobOptions.fromMap(Map.of(5, 1_000_000L)));
+    }
+
+    @Test
+    public void unknownAndInvalidKeysAreIgnored() {
+        assertEquals(JobOptions.DEFAULT, JobOptions.fromMap(Map.of(2, -5L, 4, 0L, 999, 1L)));
+        assertEquals(new JobOptions(false, 50, 0, 1), JobOptions.fromMap(Map.of(2, 50L, 3, 10L)));
+    }
+
+    @Test
+    public void parseConsoleOptions() {
+        assertEquals(Optional.of(JobOptions.DEFAULT), JobOptions.parse(new String[0]));
+        assertEquals(Optional.of(new JobOptions(true, 10, 100, 1)),
+            JobOptions.parse(new String[]{"dynamic=true", "minchunk=10", "maxchunk=100"}));
+        assertEquals(Optional.of(new JobOptions(true, 0, 0, 1)), JobOptions.parse(new String[]{"DYNAMIC=true"}));
+        assertEquals(Optional.of(new JobOptions(false, 0, 0, 4)), JobOptions.parse(new String[]{"weight=4"}));
+        assertEquals(Optional.of(new JobOptions(false, 0, 0, 1, true, CostModel.UNIFORM, false)),
+            JobOptions.parse(new String[]{"sample=true"}));
+        assertEquals(Optional.of(new JobOptions(false, 0, 0, 1, false, CostModel.UNIFORM, true)),
+            JobOptions.parse(new String[]{"interleave=true"}));
+    }
+
+    @Test
+    public void parseInvalidConsoleOptions() {
+        assertTrue(JobOptions.parse(new String[]{"dynamic"}).isEmpty());
+        assertTrue(JobOptions.parse(new String[]{"minchunk=abc"}).isEmpty());
+        assertTrue(JobOptions.parse(new String[]{"minchunk=-1"}).isEmpty());
+        assertTrue(JobOptions.parse(new String[]{"minchunk=10", "maxchunk=5"}).isEmpty());
+        assertTrue(JobOptions.parse(new String[]{"weight=0"}).isEmpty());
+        assertTrue(JobOptions.parse(new String[]{"speed=2"}).isEmpty());
+    }
+
+    @Test
+    public void automaticChunkPolicy() {
+        assertEquals(new ChunkPolicy(15, Long.MAX_VALUE), JobOptions.DEFAULT.chunkPolicy(64_000, 64));
+        assertEquals(new ChunkPolicy(1, Long.MAX_VALUE), JobOptions.DEFAULT.chunkPolicy(10, 64));
+        assertEquals(new ChunkPolicy(7, 7), new JobOptions(true, 0, 7, 1).chunkPolicy(64_000, 64));
+        assertEquals(new ChunkPolicy(3, 9), new JobOptions(true, 3, 9, 1).chunkPolicy(64_000, 64));
+    }
+
+    @Test
+    public void checkPreconditions() {
+        assertThrows(IllegalArgumentException.class, () -> new JobOptions(false, -1, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new JobOptions(false, 10, 5, 1));
+        assertThrows(IllegalArgumentException.class, () -> new JobOptions(false, 0, 0, 0));
+    }
+}
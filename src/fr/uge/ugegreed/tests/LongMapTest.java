@@ -0,0 +1,70 @@
+package fr.uge.ugegreed.tests;
+
+import fr.uge.ugegreed.utils.LongMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LongMapTest {
+    @Test
+    public void putGetRemove() {
+        var map = new LongMap<String>();
+        assertNull(map.put(1, "one"));
+        assertNull(map.put(-5, "minus five"));
+        assertEquals("one", map.put(1, "uno"));
+        assertEquals("uno", map.get(1));
+        assertEquals("minus five", map.get(-5));
+        assertNull(map.get(2));
+        assertEquals(2, map.size());
+        assertEquals("uno", map.remove(1));
+        assertNull(map.remove(1));
+        assertFalse(map.containsKey(1));
+        assertTrue(map.containsKey(-5));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void sameAsHashMap() {
+        var map = new LongMap<Long>();
+        var expected = new HashMap<Long, Long>();
+        var random = new Random(0);
+        for (var i = 0; i < 100_000; i++) {
+            // Few distinct keys so that removals hit often and probe sequences get shifted
+            var key = (long) random.nextInt(512) * (random.nextBoolean() ? 1 : 1L << 40);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals(value, map.get(key)));
+        assertEquals(new HashSet<>(expected.values()), new HashSet<>(map.values()));
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        var map = new LongMap<String>();
+        map.put(1, "one");
+        var copy = map.copy();
+        copy.put(2, "two");
+        map.remove(1);
+        assertEquals("one", copy.get(1));
+        assertEquals(2, copy.size());
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void nullValuesAreRejected() {
+        var map = new LongMap<String>();
+        assertThrows(NullPointerException.class, () -> map.put(1, null));
+    }
+}
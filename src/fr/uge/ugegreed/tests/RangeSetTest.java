@@ -0,0 +1,147 @@
+package fr.uge.ugegreed.tests;
+
+import fr.uge.ugegreed.utils.RangeSet;
+import fr.uge.ugegreed.utils.StridedRange;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RangeSetTest {
+    private static List<List<Long>> missing(RangeSet set, long start, long end) {
+        var missing = new ArrayList<List<Long>>();
+        set.forEachMissing(start, end, (rangeStart, rangeEnd) -> missing.add(List.of(rangeStart, rangeEnd)));
+        return missing;
+    }
+
+    @Test
+    public void addIsIdempotent() {
+        var set = new RangeSet();
+        assertTrue(set.add(5));
+        assertFalse(set.add(5));
+        assertEquals(1, set.size());
+        assertEquals(2, set.add(4, 7));
+        assertEquals(0, set.add(4, 7));
+        assertEquals(3, set.size());
+    }
+
+    @Test
+    public void adjacentRangesAreMerged() {
+        var set = new RangeSet();
+        set.add(0, 2);
+        set.add(4, 6);
+        assertEquals(2, set.rangeCount());
+        set.add(2);
+        set.add(3);
+        assertEquals(1, set.rangeCount());
+        assertEquals(6, set.size());
+        assertEquals("[0, 6)", set.toString());
+    }
+
+    @Test
+    public void outOfOrderAdds() {
+        var set = new RangeSet();
+        for (var value : new long[] { 9, 3, 7, 1, 5, 0, 8, 2, 6, 4, 3, 9 }) {
+            set.add(value);
+        }
+        assertEquals(10, set.size());
+        assertEquals(1, set.rangeCount());
+    }
+
+    @Test
+    public void addOverlappingSeveralRanges() {
+        var set = new RangeSet();
+        set.add(0, 2);
+        set.add(4, 6);
+        set.add(8, 10);
+        assertEquals(4, set.add(1, 9));
+        assertEquals("[0, 10)", set.toString());
+        assertEquals(10, set.size());
+    }
+
+    @Test
+    public void containsAndCount() {
+        var set = new RangeSet();
+        set.add(10, 20);
+        set.add(30, 40);
+        assertTrue(set.contains(10));
+        assertTrue(set.contains(19));
+        assertFalse(set.contains(20));
+        assertFalse(set.contains(9));
+        assertEquals(10, set.count(15, 35));
+        assertEquals(0, set.count(20, 30));
+        assertEquals(20, set.count(0, 100));
+    }
+
+    @Test
+    public void firstMissing() {
+        var set = new RangeSet();
+        set.add(10, 20);
+        assertEquals(5, set.firstMissing(5));
+        assertEquals(20, set.firstMissing(10));
+        assertEquals(20, set.firstMissing(15));
+        assertEquals(20, set.firstMissing(20));
+    }
+
+    @Test
+    public void forEachMissing() {
+        var set = new RangeSet();
+        set.add(2, 4);
+        set.add(6, 8);
+        assertEquals(List.of(List.of(0L, 2L), List.of(4L, 6L), List.of(8L, 10L)), missing(set, 0, 10));
+        assertEquals(List.of(List.of(4L, 5L)), missing(set, 3, 5));
+        assertEquals(List.of(), missing(set, 6, 8));
+        assertEquals(List.of(List.of(0L, 10L)), missing(new RangeSet(), 0, 10));
+    }
+
+    @Test
+    public void forEachRangeWithin() {
+        var set = new RangeSet();
+        set.add(2, 4);
+        set.add(6, 8);
+        var parts = new ArrayList<List<Long>>();
+        set.forEachRange(3, 7, (rangeStart, rangeEnd) -> parts.add(List.of(rangeStart, rangeEnd)));
+        assertEquals(List.of(List.of(3L, 4L), List.of(6L, 7L)), parts);
+        parts.clear();
+        set.forEachRange(4, 6, (rangeStart, rangeEnd) -> parts.add(List.of(rangeStart, rangeEnd)));
+        assertEquals(List.of(), parts);
+    }
+
+    @Test
+    public void stridedRanges() {
+        var set = new RangeSet();
+        var range = new StridedRange(0, 25, 2, 10);
+        assertEquals(6, set.add(range));
+        assertEquals("[0, 2) [10, 12) [20, 22)", set.toString());
+        assertEquals(3, set.count(new StridedRange(1, 25, 2, 10)));
+        assertEquals(4, set.remove(new StridedRange(0, 15, 5, 10)));
+        assertEquals("[20, 22)", set.toString());
+    }
+
+    @Test
+    public void removeSplitsRanges() {
+        var set = new RangeSet();
+        set.add(0, 10);
+        assertEquals(3, set.remove(3, 6));
+        assertEquals("[0, 3) [6, 10)", set.toString());
+        assertEquals(4, set.remove(2, 9));
+        assertEquals("[0, 2) [9, 10)", set.toString());
+        assertEquals(3, set.size());
+        assertEquals(0, set.remove(4, 8));
+    }
+
+    @Test
+    public void invalidRanges() {
+        var set = new RangeSet();
+        assertThrows(IllegalArgumentException.class, () -> set.add(5, 4));
+        assertThrows(IllegalArgumentException.class, () -> set.remove(5, 4));
+        assertThrows(IllegalArgumentException.class, () -> set.count(5, 4));
+        assertEquals(0, set.add(5, 5));
+        assertTrue(set.isEmpty());
+    }
+}
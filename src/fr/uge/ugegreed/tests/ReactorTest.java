@@ -0,0 +1,29 @@
+package fr.uge.ugegreed.tests;
+
+import fr.uge.ugegreed.Reactor;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReactorTest {
+    @Test
+    public void failingTaskDoesNotStopTheLoop() throws IOException, InterruptedException {
+        var reactor = new Reactor(key -> {});
+        reactor.start("reactor-test");
+        var ran = new CountDownLatch(1);
+        reactor.execute(() -> {
+            throw new IllegalStateException("task failure");
+        });
+        reactor.execute(ran::countDown);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+
+        // Still running once the queue is empty again
+        var ranLater = new CountDownLatch(1);
+        reactor.execute(ranLater::countDown);
+        assertTrue(ranLater.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,113 @@
+package fr.uge.ugegreed.tests;
+
+import fr.uge.ugegreed.utils.SignalingQueue;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SignalingQueueTest {
+    /**
+     * Starts a thread putting an element in the queue, the latch is counted down once it is added
+     */
+    private static CountDownLatch putInBackground(SignalingQueue<Integer> queue, int element) {
+        var added = new CountDownLatch(1);
+        Thread.ofPlatform().daemon().start(() -> {
+            try {
+                queue.put(element);
+                added.countDown();
+            } catch (InterruptedException e) {
+                // The test is over
+            }
+        });
+        return added;
+    }
+
+    @Test
+    public void signalFiresOnceWhenQueueBecomesNonEmpty() throws InterruptedException {
+        var signals = new AtomicInteger();
+        var queue = new SignalingQueue<Integer>(signals::incrementAndGet);
+        queue.offer(1);
+        queue.offer(2);
+        queue.put(3);
+        assertEquals(1, signals.get());
+        assertEquals(1, queue.peek());
+        assertEquals(1, queue.poll());
+        assertEquals(2, queue.poll());
+        queue.offer(4);
+        assertEquals(1, signals.get());
+        assertEquals(3, queue.poll());
+        assertEquals(4, queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+        queue.offer(5);
+        assertEquals(2, signals.get());
+    }
+
+    @Test
+    public void unboundedQueueNeverBlocks() throws InterruptedException {
+        var queue = new SignalingQueue<Integer>(() -> {});
+        for (var i = 0; i < 10_000; i++) {
+            queue.put(i);
+        }
+        assertEquals(0, queue.poll());
+    }
+
+    @Test
+    public void putBlocksUntilHalfOfTheQueueIsEmptied() throws InterruptedException {
+        var queue = new SignalingQueue<Integer>(4, () -> {});
+        for (var i = 0; i < 4; i++) {
+            queue.offer(i);
+        }
+        var added = putInBackground(queue, 4);
+        assertFalse(added.await(200, TimeUnit.MILLISECONDS));
+        // Three elements left, more than half of the capacity
+        queue.poll();
+        assertFalse(added.await(200, TimeUnit.MILLISECONDS));
+        queue.poll();
+        assertTrue(added.await(5, TimeUnit.SECONDS));
+        assertEquals(2, queue.poll());
+        assertEquals(3, queue.poll());
+        assertEquals(4, queue.poll());
+    }
+
+    @Test
+    public void putGivesUpWhenCancelled() throws InterruptedException {
+        var queue = new SignalingQueue<Integer>(2, () -> {});
+        queue.offer(0);
+        queue.offer(1);
+        var cancelled = new AtomicBoolean();
+        var result = new AtomicBoolean(true);
+        var returned = new CountDownLatch(1);
+        Thread.ofPlatform().daemon().start(() -> {
+            try {
+                result.set(queue.put(2, cancelled::get));
+                returned.countDown();
+            } catch (InterruptedException e) {
+                // The test is over
+            }
+        });
+        assertFalse(returned.await(200, TimeUnit.MILLISECONDS));
+        cancelled.set(true);
+        queue.wakeUpProducers();
+        assertTrue(returned.await(5, TimeUnit.SECONDS));
+        assertFalse(result.get());
+        assertEquals(0, queue.poll());
+        assertEquals(1, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void invalidCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new SignalingQueue<Integer>(0, () -> {}));
+        assertThrows(NullPointerException.class, () -> new SignalingQueue<Integer>(4, null));
+    }
+}
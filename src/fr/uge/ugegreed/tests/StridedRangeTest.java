@@ -0,0 +1,78 @@
+package fr.uge.ugegreed.tests;
+
+import fr.uge.ugegreed.utils.StridedRange;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StridedRangeTest {
+    private static List<List<Long>> blocks(StridedRange range) {
+        var blocks = new ArrayList<List<Long>>();
+        range.forEachBlock((blockStart, blockEnd) -> blocks.add(List.of(blockStart, blockEnd)));
+        return blocks;
+    }
+
+    @Test
+    public void contiguousRange() {
+        var range = StridedRange.contiguous(10, 20);
+        assertTrue(range.isContiguous());
+        assertEquals(20, range.contiguousEnd());
+        assertEquals(10, range.size());
+        assertEquals(List.of(List.of(10L, 20L)), blocks(range));
+        assertTrue(StridedRange.contiguous(5, 5).isEmpty());
+        assertEquals(0, StridedRange.contiguous(5, 5).size());
+    }
+
+    @Test
+    public void blocksAreCutAtTheEnd() {
+        var range = new StridedRange(0, 23, 3, 10);
+        assertFalse(range.isContiguous());
+        assertEquals(3 + 3 + 3, range.size());
+        assertEquals(List.of(List.of(0L, 3L), List.of(10L, 13L), List.of(20L, 23L)), blocks(range));
+        var cut = new StridedRange(0, 21, 3, 10);
+        assertEquals(7, cut.size());
+        assertEquals(List.of(List.of(0L, 3L), List.of(10L, 13L), List.of(20L, 21L)), blocks(cut));
+    }
+
+    @Test
+    public void singleBlockIsContiguous() {
+        var range = new StridedRange(0, 8, 3, 10);
+        assertTrue(range.isContiguous());
+        assertEquals(3, range.contiguousEnd());
+        assertThrows(IllegalStateException.class, () -> new StridedRange(0, 30, 3, 10).contiguousEnd());
+    }
+
+    @Test
+    public void partsOfEveryBlock() {
+        var rounds = StridedRange.contiguous(0, 100).reblock(20);
+        assertEquals(List.of(List.of(0L, 100L)), blocks(rounds));
+        var part = rounds.part(5, 10);
+        assertEquals(new StridedRange(5, 100, 10, 20), part);
+        assertEquals(50, part.size());
+        assertEquals(List.of(List.of(7L, 9L), List.of(27L, 29L), List.of(47L, 49L), List.of(67L, 69L),
+            List.of(87L, 89L)), blocks(part.part(2, 2)));
+        assertEquals(0, rounds.part(20, 0).size());
+        assertThrows(IllegalArgumentException.class, () -> rounds.part(15, 10));
+    }
+
+    @Test
+    public void partsCoverTheRange() {
+        var range = StridedRange.contiguous(3, 1003).reblock(70);
+        var total = range.part(0, 25).size() + range.part(25, 30).size() + range.part(55, 15).size();
+        assertEquals(1000, total);
+    }
+
+    @Test
+    public void invalidRanges() {
+        assertThrows(IllegalArgumentException.class, () -> new StridedRange(5, 4, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new StridedRange(0, 10, 1, 0));
+        assertThrows(IllegalArgumentException.class, () -> new StridedRange(0, 10, 3, 2));
+        assertThrows(IllegalArgumentException.class, () -> new StridedRange(0, 10, -1, 2));
+    }
+}
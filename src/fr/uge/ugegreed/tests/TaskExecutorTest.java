@@ -0,0 +1,202 @@
+package fr.uge.ugegreed.tests;
+
+import fr.uge.ugegreed.Checker;
+import fr.uge.ugegreed.TaskExecutor;
+import fr.uge.ugegreed.packets.AnsBatchPacket;
+import fr.uge.ugegreed.utils.SignalingQueue;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TaskExecutorTest {
+    // Executors of these tests have a single worker, so that the order of the answers is the order of the chunks
+    private static final int THREADS = 1;
+
+    private static Checker busy(long nanosPerValue) {
+        return value -> {
+            var end = System.nanoTime() + nanosPerValue;
+            while (System.nanoTime() - end < 0) {
+                Thread.onSpinWait();
+            }
+            return "";
+        };
+    }
+
+    private static TaskExecutor executor(SignalingQueue<AnsBatchPacket> queue) {
+        var previous = TaskExecutor.getThreadAmount();
+        TaskExecutor.setThreadAmount(THREADS);
+        try {
+            return new TaskExecutor(queue);
+        } finally {
+            TaskExecutor.setThreadAmount(previous);
+        }
+    }
+
+    /**
+     * Takes the batches of the queue in order until a job got the given number of answers
+     */
+    private static List<AnsBatchPacket> drainUntil(SignalingQueue<AnsBatchPacket> queue, long jobID, int answers)
+        throws InterruptedException {
+        var batches = new ArrayList<AnsBatchPacket>();
+        var received = 0;
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (received < answers) {
+            assertTrue(System.nanoTime() - deadline < 0, "answers of job " + jobID + " never came");
+            var batch = queue.poll();
+            if (batch == null) {
+                Thread.sleep(1);
+                continue;
+            }
+            batches.add(batch);
+            if (batch.job_id() == jobID) {
+                received += batch.size();
+            }
+        }
+        return batches;
+    }
+
+    /**
+     * Returns the number of answers of each job among the batches
+     */
+    private static HashMap<Long, Integer> count(List<AnsBatchPacket> batches) {
+        var counts = new HashMap<Long, Integer>();
+        batches.forEach(batch -> counts.merge(batch.job_id(), batch.size(), Integer::sum));
+        return counts;
+    }
+
+    @Test
+    public void shortJobAddedBehindLongOneFinishesFirst() throws InterruptedException {
+        var queue = new SignalingQueue<AnsBatchPacket>(() -> {});
+        var executor = executor(queue);
+        var started = new CountDownLatch(1);
+        var slow = busy(TimeUnit.MICROSECONDS.toNanos(50));
+        executor.addJob(value -> {
+            started.countDown();
+            return slow.check(value);
+        }, 1, 0, 4_000);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.addJob(busy(0), 2, 0, 10);
+
+        var counts = count(drainUntil(queue, 2, 10));
+        // The short job only waited for the chunk of the long job being computed
+        assertTrue(counts.getOrDefault(1L, 0) < 4_000, "long job answered " + counts.get(1L) + " values first");
+        drainUntil(queue, 1, 4_000 - counts.getOrDefault(1L, 0));
+    }
+
+    @Test
+    public void weightsSkewTheShareOfTheThreads() throws InterruptedException {
+        var queue = new SignalingQueue<AnsBatchPacket>(() -> {});
+        var executor = executor(queue);
+        executor.setWeight(1, 3);
+        executor.setWeight(2, 1);
+        var checker = busy(TimeUnit.MICROSECONDS.toNanos(5));
+        executor.addJob(checker, 1, 0, 20_000);
+        executor.addJob(checker, 2, 0, 20_000);
+
+        var counts = count(drainUntil(queue, 1, 20_000));
+        // About a third of the job of weight 1 is computed by then, all of it with equal weights
+        var lighter = counts.getOrDefault(2L, 0);
+        assertTrue(lighter < 12_000, "job of weight 1 answered " + lighter + " values");
+        drainUntil(queue, 2, 20_000 - lighter);
+        assertThrows(IllegalArgumentException.class, () -> executor.setWeight(3, 0));
+    }
+
+    @Test
+    public void cancelDropsQueuedWork() throws InterruptedException {
+        var queue = new SignalingQueue<AnsBatchPacket>(() -> {});
+        var executor = executor(queue);
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        executor.addJob(value -> {
+            started.countDown();
+            release.await();
+            return "";
+        }, 1, 0, 100_000);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.cancelJob(1);
+        release.countDown();
+        assertEquals(0, executor.pendingValues(1));
+
+        executor.addJob(busy(0), 2, 0, 10);
+        var counts = count(drainUntil(queue, 2, 10));
+        assertEquals(0, counts.getOrDefault(1L, 0));
+    }
+
+    @Test
+    public void cancelFreesWorkersWaitingForRoomInTheQueue() throws InterruptedException {
+        var queue = new SignalingQueue<AnsBatchPacket>(2, () -> {});
+        var executor = executor(queue);
+        // Each answer fills a batch of its own
+        var large = "x".repeat(8_192);
+        executor.addJob(value -> large, 1, 0, 1_000);
+        // The worker fills the queue and waits for room
+        Thread.sleep(200);
+        executor.cancelJob(1);
+        Thread.sleep(100);
+        assertEquals(1L, queue.poll().job_id());
+        assertEquals(1L, queue.poll().job_id());
+
+        executor.addJob(busy(0), 2, 0, 10);
+        var counts = count(drainUntil(queue, 2, 10));
+        assertEquals(0, counts.getOrDefault(1L, 0));
+    }
+
+    @Test
+    public void failingCheckerDoesNotStopTheWorker() throws InterruptedException {
+        var queue = new SignalingQueue<AnsBatchPacket>(() -> {});
+        var executor = executor(queue);
+        executor.addJob(value -> {
+            if (value == 5) {
+                throw new IllegalStateException("checker failure");
+            }
+            return "";
+        }, 1, 0, 10);
+        // The only worker computes the other job once it is over with the failing chunk
+        executor.addJob(busy(0), 2, 0, 10);
+        drainUntil(queue, 2, 10);
+        // Values are counted as computed once their chunk is over, after its answers are queued
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (executor.pendingValues(1) + executor.pendingValues(2) > 0) {
+            assertTrue(System.nanoTime() - deadline < 0, "values of the failing job are still pending");
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void stealLeavesAtLeastOneChunk() throws InterruptedException {
+        var queue = new SignalingQueue<AnsBatchPacket>(() -> {});
+        var executor = executor(queue);
+        // The only worker is kept busy so that the range of the other job stays unclaimed
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        executor.addJob(value -> {
+            started.countDown();
+            release.await();
+            return "";
+        }, 1, 0, 1);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        try {
+            // Ranges this large are cut in chunks of 1024 values
+            executor.addJob(busy(0), 2, 0, 100_000);
+            assertEquals(new TaskExecutor.StolenRange(1_024, 100_000), executor.steal(2, 0.999).orElseThrow());
+            // Less than two chunks unclaimed
+            assertTrue(executor.steal(2, 0.5).isEmpty());
+            assertTrue(executor.steal(3, 0.5).isEmpty());
+            assertEquals(1_024, executor.pendingValues(2));
+            assertThrows(IllegalArgumentException.class, () -> executor.steal(2, 1));
+            assertThrows(IllegalArgumentException.class, () -> executor.steal(2, 0));
+        } finally {
+            release.countDown();
+        }
+        var counts = count(drainUntil(queue, 2, 1_024));
+        assertEquals(1_024, counts.get(2L));
+    }
+}
@@ -6,9 +6,12 @@ import org.junit.jupiter.api.Test;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class TypeToByteWriterTest {
     @Test
@@ -29,6 +32,32 @@ public class TypeToByteWriterTest {
         assertEquals("coucou", result);
     }
 
+    @Test
+    public void stringSizeMatchesEncoding() {
+        for (var string : new String[]{"", "coucou", "€a€", "\uD83D\uDE00", "\uD800"}) {
+            assertEquals(Integer.BYTES + StandardCharsets.UTF_8.encode(string).remaining(),
+                TypeToByteWriter.stringSize(string));
+            assertEquals(Integer.BYTES + StandardCharsets.US_ASCII.encode(string).remaining(),
+                TypeToByteWriter.stringSize(string, StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    public void putStringInPlace() {
+        var bb = ByteBuffer.allocate(64).putInt(42);
+        TypeToByteWriter.putString(bb, "€a€");
+        bb.flip();
+        assertEquals(42, bb.getInt());
+        assertEquals(7, bb.getInt());
+        assertEquals("€a€", StandardCharsets.UTF_8.decode(bb).toString());
+    }
+
+    @Test
+    public void putStringTooSmall() {
+        var bb = ByteBuffer.allocate(6);
+        assertThrows(BufferOverflowException.class, () -> TypeToByteWriter.putString(bb, "€a€"));
+    }
+
     @Test
     public void simpleHost() throws UnknownHostException {
         var host = new InetSocketAddress("42.69.00.30", 7777);
@@ -0,0 +1,39 @@
+package fr.uge.ugegreed.tests.basePacket;
+
+import fr.uge.ugegreed.packets.AccStridedPacket;
+import fr.uge.ugegreed.readers.BasePacketReader;
+import fr.uge.ugegreed.readers.Reader;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AccStridedPacketTest {
+    @Test
+    public void simpleAccStridedPacket() {
+        var packet = new AccStridedPacket(1, 2, 30, 4, 8);
+        var buffer = packet.toBuffer();
+        buffer.position(buffer.position() + 1).compact();
+        var reader = BasePacketReader.accStridedPacketReader();
+
+        assertEquals(Reader.ProcessStatus.DONE, reader.process(buffer));
+        assertEquals(packet, reader.get());
+        assertEquals(0, buffer.position());
+        assertEquals(buffer.capacity(), buffer.limit());
+    }
+
+    @Test
+    public void errorInvalidBlocks() {
+        var buffer = ByteBuffer.allocate(40).putLong(1).putLong(2).putLong(30).putLong(8).putLong(4);
+        var reader = BasePacketReader.accStridedPacketReader();
+        assertEquals(Reader.ProcessStatus.ERROR, reader.process(buffer));
+    }
+
+    @Test
+    public void errorGetAccStridedPacket() {
+        var reader = BasePacketReader.accStridedPacketReader();
+        assertThrows(IllegalStateException.class, reader::get);
+    }
+}
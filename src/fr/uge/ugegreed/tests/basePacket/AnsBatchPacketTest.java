@@ -0,0 +1,95 @@
+package fr.uge.ugegreed.tests.basePacket;
+
+import fr.uge.ugegreed.packets.AnsBatchPacket;
+import fr.uge.ugegreed.readers.AnsBatchPacketReader;
+import fr.uge.ugegreed.readers.Reader;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AnsBatchPacketTest {
+    @Test
+    public void simpleAnsBatchPacket() {
+        var packet = new AnsBatchPacket(1, 40, new int[]{0, 2}, new String[]{"40", "42"});
+        var buffer = packet.toBuffer();
+        buffer.position(buffer.position() + 1).compact();
+        var reader = new AnsBatchPacketReader();
+
+        assertEquals(Reader.ProcessStatus.DONE, reader.process(buffer));
+        assertEquals(packet, reader.get());
+        assertEquals(0, buffer.position());
+        assertEquals(buffer.capacity(), buffer.limit());
+    }
+
+    @Test
+    public void emptyAnsBatchPacket() {
+        var packet = new AnsBatchPacket(1, 40, new int[0], new String[0]);
+        var buffer = packet.toBuffer();
+        buffer.position(buffer.position() + 1).compact();
+        var reader = new AnsBatchPacketReader();
+
+        assertEquals(Reader.ProcessStatus.DONE, reader.process(buffer));
+        assertEquals(packet, reader.get());
+    }
+
+    @Test
+    public void resetAnsBatchPacket() {
+        var packet = new AnsBatchPacket(1, 0, new int[]{0}, new String[]{"0"});
+        var packet2 = new AnsBatchPacket(2, 200, new int[]{0, 1, 2}, new String[]{"200", "201", "202"});
+        var buffer = packet.toBuffer();
+        buffer.position(buffer.position() + 1).compact();
+        var buffer2 = packet2.toBuffer();
+        buffer2.position(buffer2.position() + 1).compact();
+
+        var reader = new AnsBatchPacketReader();
+
+        assertEquals(Reader.ProcessStatus.DONE, reader.process(buffer));
+        assertEquals(packet, reader.get());
+        reader.reset();
+        assertEquals(Reader.ProcessStatus.DONE, reader.process(buffer2));
+        assertEquals(packet2, reader.get());
+        assertEquals(0, buffer2.position());
+        assertEquals(buffer2.capacity(), buffer2.limit());
+    }
+
+    @Test
+    public void fragmentedAnsBatchPacket() {
+        var packet = new AnsBatchPacket(1, 0, new int[]{0, 1}, new String[]{"zero", "one"});
+        var buffer = packet.toBuffer();
+        buffer.position(buffer.position() + 1);
+        var reader = new AnsBatchPacketReader();
+
+        var byteBuffer = ByteBuffer.allocate(1);
+        while (buffer.remaining() > 1) {
+            byteBuffer.put(buffer.get());
+            assertEquals(Reader.ProcessStatus.REFILL, reader.process(byteBuffer));
+        }
+        byteBuffer.put(buffer.get());
+        assertEquals(Reader.ProcessStatus.DONE, reader.process(byteBuffer));
+        assertEquals(packet, reader.get());
+    }
+
+    @Test
+    public void errorNegAnsBatchPacket() {
+        var buffer = ByteBuffer.allocate(Long.BYTES * 2 + Integer.BYTES)
+            .putLong(-1).putLong(0).putInt(0);
+        var reader = new AnsBatchPacketReader();
+        // JOB_ID INVALID
+        assertEquals(Reader.ProcessStatus.ERROR, reader.process(buffer));
+
+        reader.reset();
+        buffer.clear();
+        buffer.putLong(1).putLong(0).putInt(-1);
+        // NB_ANSWERS INVALID
+        assertEquals(Reader.ProcessStatus.ERROR, reader.process(buffer));
+    }
+
+    @Test
+    public void errorGetAnsBatchPacket() {
+        var reader = new AnsBatchPacketReader();
+        assertThrows(IllegalStateException.class, reader::get);
+    }
+}
@@ -0,0 +1,39 @@
+package fr.uge.ugegreed.tests.basePacket;
+
+import fr.uge.ugegreed.packets.CancelPacket;
+import fr.uge.ugegreed.readers.BasePacketReader;
+import fr.uge.ugegreed.readers.Reader;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CancelPacketTest {
+    @Test
+    public void simpleCancelPacket() {
+        var packet = new CancelPacket(1);
+        var buffer = packet.toBuffer();
+        buffer.position(buffer.position() + 1).compact();
+        var reader = BasePacketReader.cancelPacketReader();
+
+        assertEquals(Reader.ProcessStatus.DONE, reader.process(buffer));
+        assertEquals(packet, reader.get());
+        assertEquals(0, buffer.position());
+        assertEquals(buffer.capacity(), buffer.limit());
+    }
+
+    @Test
+    public void errorNegativeJobID() {
+        var buffer = ByteBuffer.allocate(8).putLong(-1);
+        var reader = BasePacketReader.cancelPacketReader();
+        assertEquals(Reader.ProcessStatus.ERROR, reader.process(buffer));
+    }
+
+    @Test
+    public void errorGetCancelPacket() {
+        var reader = BasePacketReader.cancelPacketReader();
+        assertThrows(IllegalStateException.class, reader::get);
+    }
+}
@@ -0,0 +1,50 @@
+package fr.uge.ugegreed.tests.basePacket;
+
+import fr.uge.ugegreed.packets.CapaPacket;
+import fr.uge.ugegreed.readers.BasePacketReader;
+import fr.uge.ugegreed.readers.Reader;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CapaPacketTest {
+    @Test
+    public void simpleCapaPacket() {
+        var packet = new CapaPacket(1);
+        var buffer = packet.toBuffer();
+        buffer.position(buffer.position() + 1).compact();
+        var reader = BasePacketReader.capaPacketReader();
+
+        assertEquals(Reader.ProcessStatus.DONE, reader.process(buffer));
+        assertEquals(packet, reader.get());
+        assertEquals(0, buffer.position());
+        assertEquals(buffer.capacity(), buffer.limit());
+    }
+
+    @Test
+    public void fragmentedCapaPacket() {
+        var packet = new CapaPacket(7);
+        var buffer = packet.toBuffer();
+        buffer.position(buffer.position() + 1);
+
+        var oldLimit = buffer.limit();
+        buffer.limit(buffer.position() + 2);
+        var buffer2 = ByteBuffer.allocate(2).put(buffer);
+        buffer.limit(oldLimit).compact();
+
+        var reader = BasePacketReader.capaPacketReader();
+
+        assertEquals(Reader.ProcessStatus.REFILL, reader.process(buffer2));
+        assertEquals(Reader.ProcessStatus.DONE, reader.process(buffer));
+        assertEquals(packet, reader.get());
+    }
+
+    @Test
+    public void errorGetCapaPacket() {
+        var reader = BasePacketReader.capaPacketReader();
+        assertThrows(IllegalStateException.class, reader::get);
+    }
+}
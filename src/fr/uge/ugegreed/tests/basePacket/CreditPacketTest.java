@@ -0,0 +1,39 @@
+package fr.uge.ugegreed.tests.basePacket;
+
+import fr.uge.ugegreed.packets.CreditPacket;
+import fr.uge.ugegreed.readers.BasePacketReader;
+import fr.uge.ugegreed.readers.Reader;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CreditPacketTest {
+    @Test
+    public void simpleCreditPacket() {
+        var packet = new CreditPacket(256);
+        var buffer = packet.toBuffer();
+        buffer.position(buffer.position() + 1).compact();
+        var reader = BasePacketReader.creditPacketReader();
+
+        assertEquals(Reader.ProcessStatus.DONE, reader.process(buffer));
+        assertEquals(packet, reader.get());
+        assertEquals(0, buffer.position());
+        assertEquals(buffer.capacity(), buffer.limit());
+    }
+
+    @Test
+    public void errorZeroCredits() {
+        var buffer = ByteBuffer.allocate(4).putInt(0);
+        var reader = BasePacketReader.creditPacketReader();
+        assertEquals(Reader.ProcessStatus.ERROR, reader.process(buffer));
+    }
+
+    @Test
+    public void errorGetCreditPacket() {
+        var reader = BasePacketReader.creditPacketReader();
+        assertThrows(IllegalStateException.class, reader::get);
+    }
+}
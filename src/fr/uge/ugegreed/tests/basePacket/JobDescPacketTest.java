@@ -0,0 +1,74 @@
+package fr.uge.ugegreed.tests.basePacket;
+
+import fr.uge.ugegreed.packets.JobDescPacket;
+import fr.uge.ugegreed.readers.JobDescPacketReader;
+import fr.uge.ugegreed.readers.Reader;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class JobDescPacketTest {
+    @Test
+    public void simpleJobDescPacket() {
+        var packet = new JobDescPacket(1, "http://www.jars.com/jar1.jar", "HelloWorld€", Map.of(1, 10L, 2, -20L));
+        var buffer = packet.toBuffer();
+        buffer.position(buffer.position() + 1).compact();
+        var reader = new JobDescPacketReader();
+
+        assertEquals(Reader.ProcessStatus.DONE, reader.process(buffer));
+        assertEquals(packet, reader.get());
+        assertEquals(0, buffer.position());
+        assertEquals(buffer.capacity(), buffer.limit());
+    }
+
+    @Test
+    public void fragmentedJobDescPacket() {
+        var packet = new JobDescPacket(1, "http://www.jars.com/jar1.jar", "HelloWorld", Map.of(1, 10L));
+        var packetBuffer = packet.toBuffer();
+        packetBuffer.position(1);
+        var buffer = ByteBuffer.allocate(1);
+        var reader = new JobDescPacketReader();
+        var status = Reader.ProcessStatus.REFILL;
+        while (packetBuffer.hasRemaining()) {
+            assertEquals(Reader.ProcessStatus.REFILL, status);
+            buffer.put(packetBuffer.get());
+            status = reader.process(buffer);
+        }
+        assertEquals(Reader.ProcessStatus.DONE, status);
+        assertEquals(packet, reader.get());
+    }
+
+    @Test
+    public void resetJobDescPacket() {
+        var first = new JobDescPacket(1, "a", "b", Map.of(1, 10L));
+        var second = new JobDescPacket(2, "c", "d", Map.of());
+        var buffer = ByteBuffer.allocate(1024);
+        buffer.put(first.toBuffer().position(1)).put(second.toBuffer().position(1));
+        var reader = new JobDescPacketReader();
+
+        assertEquals(Reader.ProcessStatus.DONE, reader.process(buffer));
+        assertEquals(first, reader.get());
+        reader.reset();
+        assertEquals(Reader.ProcessStatus.DONE, reader.process(buffer));
+        assertEquals(second, reader.get());
+    }
+
+    @Test
+    public void errorNegativeOptions() {
+        var buffer = new JobDescPacket(1, "a", "b", Map.of()).toBuffer().position(1);
+        var bytes = ByteBuffer.allocate(buffer.remaining()).put(buffer);
+        bytes.putInt(bytes.position() - Integer.BYTES, -1);
+        var reader = new JobDescPacketReader();
+        assertEquals(Reader.ProcessStatus.ERROR, reader.process(bytes));
+    }
+
+    @Test
+    public void errorGetJobDescPacket() {
+        var reader = new JobDescPacketReader();
+        assertThrows(IllegalStateException.class, reader::get);
+    }
+}
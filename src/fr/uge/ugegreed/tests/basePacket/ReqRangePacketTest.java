@@ -0,0 +1,39 @@
+package fr.uge.ugegreed.tests.basePacket;
+
+import fr.uge.ugegreed.packets.ReqRangePacket;
+import fr.uge.ugegreed.readers.BasePacketReader;
+import fr.uge.ugegreed.readers.Reader;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ReqRangePacketTest {
+    @Test
+    public void simpleReqRangePacket() {
+        var packet = new ReqRangePacket(1, 2, 3);
+        var buffer = packet.toBuffer();
+        buffer.position(buffer.position() + 1).compact();
+        var reader = BasePacketReader.reqRangePacketReader();
+
+        assertEquals(Reader.ProcessStatus.DONE, reader.process(buffer));
+        assertEquals(packet, reader.get());
+        assertEquals(0, buffer.position());
+        assertEquals(buffer.capacity(), buffer.limit());
+    }
+
+    @Test
+    public void errorInvalidRange() {
+        var buffer = ByteBuffer.allocate(24).putLong(1).putLong(3).putLong(2);
+        var reader = BasePacketReader.reqRangePacketReader();
+        assertEquals(Reader.ProcessStatus.ERROR, reader.process(buffer));
+    }
+
+    @Test
+    public void errorGetReqRangePacket() {
+        var reader = BasePacketReader.reqRangePacketReader();
+        assertThrows(IllegalStateException.class, reader::get);
+    }
+}
@@ -0,0 +1,42 @@
+package fr.uge.ugegreed.tests.packets;
+
+import fr.uge.ugegreed.packets.AccStridedPacket;
+import fr.uge.ugegreed.utils.StridedRange;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AccStridedPacketTest {
+  @Test
+  public void correctToBuffer() {
+    var packet = new AccStridedPacket(1337, 10, 100, 5, 20);
+    var buffer = ByteBuffer.allocate(1024).put((byte) 20).putLong(1337).putLong(10).putLong(100)
+        .putLong(5).putLong(20).flip();
+    var toBuffer = packet.toBuffer();
+    assertEquals(buffer, toBuffer);
+  }
+
+  @Test
+  public void checkPreconditions() {
+    assertThrows(IllegalArgumentException.class, () -> new AccStridedPacket(-1, 0, 1, 1, 1));
+    assertThrows(IllegalArgumentException.class, () -> new AccStridedPacket(0, 2, 1, 1, 1));
+    assertThrows(IllegalArgumentException.class, () -> new AccStridedPacket(0, 0, 10, 1, 0));
+    assertThrows(IllegalArgumentException.class, () -> new AccStridedPacket(0, 0, 10, 5, 4));
+  }
+
+  @Test
+  public void rangeRoundTrip() {
+    var range = new StridedRange(10, 100, 5, 20);
+    assertEquals(range, new AccStridedPacket(1337, range).range());
+  }
+
+  @Test
+  public void correctToString() {
+    var packet = new AccStridedPacket(1337, 10, 100, 5, 20);
+    assertEquals("ACC_STRIDED packet(job_id: 1337, range_start: 10, range_end: 100, block: 5, stride: 20)",
+        packet.toString());
+  }
+}
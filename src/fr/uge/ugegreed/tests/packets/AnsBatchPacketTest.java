@@ -0,0 +1,67 @@
+package fr.uge.ugegreed.tests.packets;
+
+import fr.uge.ugegreed.packets.AnsBatchPacket;
+import fr.uge.ugegreed.packets.AnsPacket;
+import fr.uge.ugegreed.utils.TypeToByteWriter;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AnsBatchPacketTest {
+  @Test
+  public void correctToBuffer() {
+    var packet = new AnsBatchPacket(9001, 40, new int[]{0, 2}, new String[]{"forty", "forty-two"});
+    var buffer = ByteBuffer.allocate(1024)
+        .put((byte) 11)
+        .putLong(9001)
+        .putLong(40)
+        .putInt(2)
+        .putInt(0)
+        .put(TypeToByteWriter.getString("forty"))
+        .putInt(2)
+        .put(TypeToByteWriter.getString("forty-two"))
+        .flip();
+    var toBuffer = packet.toBuffer();
+    assertEquals(buffer, toBuffer);
+  }
+
+  @Test
+  public void correctAnswers() {
+    var packet = new AnsBatchPacket(1, 40, new int[]{0, 2}, new String[]{"forty", "forty-two"});
+    assertEquals(2, packet.size());
+    assertEquals(42, packet.number(1));
+    assertEquals(new AnsPacket(1, 42, "forty-two"), packet.answer(1));
+  }
+
+  @Test
+  public void numbersOfFrame() {
+    var packet = new AnsBatchPacket(1, 40, new int[]{0, 2, 5}, new String[]{"forty", "", "forty-five"});
+    var frame = ByteBuffer.allocate(1024).put((byte) 0).put(packet.toBuffer()).flip().position(1);
+    assertArrayEquals(new long[]{40, 42, 45}, AnsBatchPacket.numbersOf(frame));
+    assertEquals(1, frame.position());
+  }
+
+  @Test
+  public void checkPreconditions() {
+    assertThrows(IllegalArgumentException.class, () ->
+        new AnsBatchPacket(-1, 0, new int[0], new String[0]));
+    assertThrows(IllegalArgumentException.class, () ->
+        new AnsBatchPacket(1, 0, new int[]{0, 1}, new String[]{"0"}));
+    assertThrows(IllegalArgumentException.class, () ->
+        new AnsBatchPacket(1, 0, new int[]{-1}, new String[]{"0"}));
+    assertThrows(NullPointerException.class, () ->
+        new AnsBatchPacket(1, 0, new int[]{0}, new String[]{null}));
+    assertThrows(NullPointerException.class, () ->
+        new AnsBatchPacket(1, 0, null, new String[0]));
+  }
+
+  @Test
+  public void correctToString() {
+    var packet = new AnsBatchPacket(1, 2, new int[]{0, 1}, new String[]{"2", "3"});
+    assertEquals("ANS_BATCH packet(job_id: 1, base_number: 2, nb_answers: 2)", packet.toString());
+  }
+}
@@ -23,6 +23,22 @@ public class AnsPacketTest {
     assertEquals(buffer, toBuffer);
   }
 
+  @Test
+  public void correctWriteTo() {
+    var packet = new AnsPacket(9001, 42, "IT IS OVER NINE THOUSAND!");
+    var buffer = ByteBuffer.allocate(1024).put((byte) 1);
+    packet.writeTo(buffer);
+    assertEquals(1 + packet.encodedSize(), buffer.position());
+    assertEquals(packet.toBuffer(), buffer.flip().position(1));
+  }
+
+  @Test
+  public void numberOfFrame() {
+    var frame = new AnsPacket(9001, 42, "IT IS OVER NINE THOUSAND!").toBuffer();
+    assertEquals(42, AnsPacket.numberOf(frame));
+    assertEquals(0, frame.position());
+  }
+
   @Test
   public void checkPreconditions() {
     assertThrows(IllegalArgumentException.class, () ->
@@ -0,0 +1,30 @@
+package fr.uge.ugegreed.tests.packets;
+
+import fr.uge.ugegreed.packets.CancelPacket;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CancelPacketTest {
+  @Test
+  public void correctToBuffer() {
+    var packet = new CancelPacket(1337);
+    var buffer = ByteBuffer.allocate(1024).put((byte) 16).putLong(1337).flip();
+    var toBuffer = packet.toBuffer();
+    assertEquals(buffer, toBuffer);
+  }
+
+  @Test
+  public void checkPreconditions() {
+    assertThrows(IllegalArgumentException.class, () -> new CancelPacket(-1));
+  }
+
+  @Test
+  public void correctToString() {
+    var packet = new CancelPacket(1337);
+    assertEquals("CANCEL packet(job_id: 1337)", packet.toString());
+  }
+}
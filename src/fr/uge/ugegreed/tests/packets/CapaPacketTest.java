@@ -0,0 +1,40 @@
+package fr.uge.ugegreed.tests.packets;
+
+import fr.uge.ugegreed.packets.CapaPacket;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CapaPacketTest {
+  @Test
+  public void correctToBuffer() {
+    var packet = new CapaPacket(1);
+    var buffer = ByteBuffer.allocate(1024).put((byte) 10).putInt(1).flip();
+    var toBuffer = packet.toBuffer();
+    assertEquals(buffer, toBuffer);
+  }
+
+  @Test
+  public void correctSupports() {
+    assertTrue(new CapaPacket(CapaPacket.Capability.ANS_BATCH.getMask()).supports(CapaPacket.Capability.ANS_BATCH));
+    assertFalse(new CapaPacket(0).supports(CapaPacket.Capability.ANS_BATCH));
+    assertTrue(CapaPacket.local().supports(CapaPacket.Capability.ANS_BATCH));
+    assertTrue(CapaPacket.local().supports(CapaPacket.Capability.CREDIT));
+    assertTrue(CapaPacket.local().supports(CapaPacket.Capability.PULL));
+    assertTrue(CapaPacket.local().supports(CapaPacket.Capability.CANCEL));
+    assertTrue(CapaPacket.local().supports(CapaPacket.Capability.STEAL));
+    assertTrue(CapaPacket.local().supports(CapaPacket.Capability.STRIDE));
+    assertTrue(CapaPacket.local().supports(CapaPacket.Capability.THREADS));
+    assertEquals(128, CapaPacket.Capability.THREADS.getMask());
+  }
+
+  @Test
+  public void correctToString() {
+    var packet = new CapaPacket(3);
+    assertEquals("CAPA packet(capabilities: 3)", packet.toString());
+  }
+}
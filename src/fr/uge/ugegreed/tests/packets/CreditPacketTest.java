@@ -0,0 +1,31 @@
+package fr.uge.ugegreed.tests.packets;
+
+import fr.uge.ugegreed.packets.CreditPacket;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CreditPacketTest {
+  @Test
+  public void correctToBuffer() {
+    var packet = new CreditPacket(64);
+    var buffer = ByteBuffer.allocate(1024).put((byte) 12).putInt(64).flip();
+    var toBuffer = packet.toBuffer();
+    assertEquals(buffer, toBuffer);
+  }
+
+  @Test
+  public void nonPositiveCredits() {
+    assertThrows(IllegalArgumentException.class, () -> new CreditPacket(0));
+    assertThrows(IllegalArgumentException.class, () -> new CreditPacket(-1));
+  }
+
+  @Test
+  public void correctToString() {
+    var packet = new CreditPacket(64);
+    assertEquals("CREDIT packet(credits: 64)", packet.toString());
+  }
+}
@@ -0,0 +1,39 @@
+package fr.uge.ugegreed.tests.packets;
+
+import fr.uge.ugegreed.packets.GivePacket;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GivePacketTest {
+  @Test
+  public void correctToBuffer() {
+    var packet = new GivePacket(1337, 10, 20);
+    var buffer = ByteBuffer.allocate(1024).put((byte) 18).putLong(1337).putLong(10).putLong(20).flip();
+    var toBuffer = packet.toBuffer();
+    assertEquals(buffer, toBuffer);
+  }
+
+  @Test
+  public void checkPreconditions() {
+    assertThrows(IllegalArgumentException.class, () -> new GivePacket(-1, 0, 1));
+    assertThrows(IllegalArgumentException.class, () -> new GivePacket(0, 2, 1));
+  }
+
+  @Test
+  public void emptyRange() {
+    assertTrue(new GivePacket(1337, 20, 20).isEmpty());
+    assertFalse(new GivePacket(1337, 10, 20).isEmpty());
+  }
+
+  @Test
+  public void correctToString() {
+    var packet = new GivePacket(1337, 10, 20);
+    assertEquals("GIVE packet(job_id: 1337, range_start: 10, range_end: 20)", packet.toString());
+  }
+}
@@ -0,0 +1,59 @@
+package fr.uge.ugegreed.tests.packets;
+
+import fr.uge.ugegreed.packets.JobDescPacket;
+import fr.uge.ugegreed.packets.ReqPacket;
+import fr.uge.ugegreed.utils.TypeToByteWriter;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class JobDescPacketTest {
+  @Test
+  public void correctToBuffer() {
+    var packet = new JobDescPacket(1337, "www.jars.com/jar1", "HelloWorld", Map.of(2, 20L, 1, 10L));
+    var buffer = ByteBuffer.allocate(1024)
+        .put((byte) 13)
+        .putLong(1337)
+        .put(TypeToByteWriter.getString("www.jars.com/jar1", StandardCharsets.US_ASCII))
+        .put(TypeToByteWriter.getString("HelloWorld"))
+        .putInt(2)
+        .putInt(1).putLong(10)
+        .putInt(2).putLong(20)
+        .flip();
+    var toBuffer = packet.toBuffer();
+    assertEquals(buffer, toBuffer);
+    assertEquals(buffer.remaining(), packet.encodedSize());
+  }
+
+  @Test
+  public void checkPreconditions() {
+    assertThrows(IllegalArgumentException.class, () ->
+        new JobDescPacket(-1, "abc", "abc", Map.of()));
+    assertThrows(NullPointerException.class, () ->
+        new JobDescPacket(0, null, "abc", Map.of()));
+    assertThrows(NullPointerException.class, () ->
+        new JobDescPacket(0, "abc", "abc", null));
+    assertThrows(IllegalArgumentException.class, () ->
+        new JobDescPacket(0, "", "abc", Map.of()));
+  }
+
+  @Test
+  public void fromAndToRequest() {
+    var reqPacket = new ReqPacket(1337, "www.jars.com/jar1", "HelloWorld", 42, 420);
+    var packet = JobDescPacket.of(reqPacket);
+    assertEquals(new JobDescPacket(1337, "www.jars.com/jar1", "HelloWorld", Map.of()), packet);
+    assertEquals(reqPacket, packet.request(42, 420));
+  }
+
+  @Test
+  public void correctToString() {
+    var packet = new JobDescPacket(1337, "www.jars.com/jar1", "HelloWorld", Map.of(1, 10L));
+    assertEquals("JOB_DESC packet(job_id: 1337, jar_URL: www.jars.com/jar1, class_name: HelloWorld, options: {1=10})",
+        packet.toString());
+  }
+}
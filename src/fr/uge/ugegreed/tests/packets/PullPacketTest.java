@@ -0,0 +1,31 @@
+package fr.uge.ugegreed.tests.packets;
+
+import fr.uge.ugegreed.packets.PullPacket;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PullPacketTest {
+  @Test
+  public void correctToBuffer() {
+    var packet = new PullPacket(1337, 420);
+    var buffer = ByteBuffer.allocate(1024).put((byte) 15).putLong(1337).putInt(420).flip();
+    var toBuffer = packet.toBuffer();
+    assertEquals(buffer, toBuffer);
+  }
+
+  @Test
+  public void checkPreconditions() {
+    assertThrows(IllegalArgumentException.class, () -> new PullPacket(-1, 1));
+    assertThrows(IllegalArgumentException.class, () -> new PullPacket(0, 0));
+  }
+
+  @Test
+  public void correctToString() {
+    var packet = new PullPacket(1337, 420);
+    assertEquals("PULL packet(job_id: 1337, potential: 420)", packet.toString());
+  }
+}
@@ -0,0 +1,44 @@
+package fr.uge.ugegreed.tests.packets;
+
+import fr.uge.ugegreed.packets.AnsBatchPacket;
+import fr.uge.ugegreed.packets.AnsPacket;
+import fr.uge.ugegreed.packets.RawPacket;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RawPacketTest {
+  @Test
+  public void sameBytesAsOriginal() {
+    var original = new AnsPacket(1, 2, "result");
+    var packet = RawPacket.copyOf(original.toBuffer());
+    assertEquals(original.encodedSize(), packet.encodedSize());
+    assertEquals(original.toBuffer(), packet.toBuffer());
+  }
+
+  @Test
+  public void answerJobID() {
+    assertEquals(42, RawPacket.copyOf(new AnsPacket(42, 2, "result").toBuffer()).answerJobID());
+    assertEquals(43, RawPacket.copyOf(new AnsBatchPacket(43, 2, new int[] { 0, 1 }, new String[] { "a", "b" }).toBuffer()).answerJobID());
+  }
+
+  @Test
+  public void copyOfConsumesBuffer() {
+    var buffer = ByteBuffer.allocate(16).put((byte) 9).flip();
+    assertEquals(new RawPacket(new byte[] { 9 }), RawPacket.copyOf(buffer));
+    assertEquals(0, buffer.remaining());
+  }
+
+  @Test
+  public void emptyFrameThrows() {
+    assertThrows(IllegalArgumentException.class, () -> new RawPacket(new byte[0]));
+  }
+
+  @Test
+  public void correctToString() {
+    assertEquals("RAW packet(code: 9, size: 1)", new RawPacket(new byte[] { 9 }).toString());
+  }
+}
@@ -0,0 +1,31 @@
+package fr.uge.ugegreed.tests.packets;
+
+import fr.uge.ugegreed.packets.ReqRangePacket;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ReqRangePacketTest {
+  @Test
+  public void correctToBuffer() {
+    var packet = new ReqRangePacket(1337, 42, 420);
+    var buffer = ByteBuffer.allocate(1024).put((byte) 14).putLong(1337).putLong(42).putLong(420).flip();
+    var toBuffer = packet.toBuffer();
+    assertEquals(buffer, toBuffer);
+  }
+
+  @Test
+  public void checkPreconditions() {
+    assertThrows(IllegalArgumentException.class, () -> new ReqRangePacket(-1, 0, 1));
+    assertThrows(IllegalArgumentException.class, () -> new ReqRangePacket(0, 25, 12));
+  }
+
+  @Test
+  public void correctToString() {
+    var packet = new ReqRangePacket(1337, 42, 420);
+    assertEquals("REQ_RANGE packet(job_id: 1337, range_start: 42, range_end: 420)", packet.toString());
+  }
+}
@@ -0,0 +1,31 @@
+package fr.uge.ugegreed.tests.packets;
+
+import fr.uge.ugegreed.packets.StealPacket;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class StealPacketTest {
+  @Test
+  public void correctToBuffer() {
+    var packet = new StealPacket(1337, 420);
+    var buffer = ByteBuffer.allocate(1024).put((byte) 17).putLong(1337).putInt(420).flip();
+    var toBuffer = packet.toBuffer();
+    assertEquals(buffer, toBuffer);
+  }
+
+  @Test
+  public void checkPreconditions() {
+    assertThrows(IllegalArgumentException.class, () -> new StealPacket(-1, 1));
+    assertThrows(IllegalArgumentException.class, () -> new StealPacket(0, 0));
+  }
+
+  @Test
+  public void correctToString() {
+    var packet = new StealPacket(1337, 420);
+    assertEquals("STEAL packet(job_id: 1337, potential: 420)", packet.toString());
+  }
+}
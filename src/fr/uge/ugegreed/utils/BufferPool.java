@@ -0,0 +1,106 @@
+package fr.uge.ugegreed.utils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread-safe pool of direct buffers.
+ * Capacities are powers of two from the slab size up to the largest pooled size, larger buffers are
+ * allocated when asked but never kept. Each size class keeps at most a fixed amount of memory.
+ */
+public final class BufferPool {
+    private static final int MAX_BYTES_PER_CLASS = 4 * 1024 * 1024;
+
+    private final int slabSize;
+    private final int maxPooledSize;
+    private final List<ConcurrentLinkedQueue<ByteBuffer>> freeBuffers;
+    private final AtomicInteger[] freeCounts;
+
+    /**
+     * Creates a new pool
+     * @param slabSize smallest capacity of the buffers, must be a power of two
+     * @param maxPooledSize largest capacity of the buffers kept by the pool, must be a power of two
+     */
+    public BufferPool(int slabSize, int maxPooledSize) {
+        if (Integer.bitCount(slabSize) != 1 || Integer.bitCount(maxPooledSize) != 1 || maxPooledSize < slabSize) {
+            throw new IllegalArgumentException("sizes must be powers of two and maxPooledSize >= slabSize");
+        }
+        this.slabSize = slabSize;
+        this.maxPooledSize = maxPooledSize;
+        var classes = Integer.numberOfTrailingZeros(maxPooledSize) - Integer.numberOfTrailingZeros(slabSize) + 1;
+        var queues = new ArrayList<ConcurrentLinkedQueue<ByteBuffer>>(classes);
+        freeCounts = new AtomicInteger[classes];
+        for (var i = 0; i < classes; i++) {
+            queues.add(new ConcurrentLinkedQueue<>());
+            freeCounts[i] = new AtomicInteger();
+        }
+        freeBuffers = List.copyOf(queues);
+    }
+
+    /**
+     * Returns the capacity of the buffers given for a requested capacity
+     * @param capacity requested capacity
+     * @return capacity of the buffer which would be given
+     */
+    public int capacityFor(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity cannot be negative");
+        }
+        if (capacity <= slabSize) { return slabSize; }
+        if (capacity > maxPooledSize) { return capacity; }
+        return Integer.highestOneBit(capacity - 1) << 1;
+    }
+
+    /**
+     * Gives a cleared direct buffer of at least the given capacity
+     * @param capacity minimum capacity
+     * @return the buffer, in write mode
+     */
+    public ByteBuffer acquire(int capacity) {
+        var actualCapacity = capacityFor(capacity);
+        if (actualCapacity > maxPooledSize) {
+            return ByteBuffer.allocateDirect(actualCapacity);
+        }
+        var index = classIndex(actualCapacity);
+        var buffer = freeBuffers.get(index).poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(actualCapacity);
+        }
+        freeCounts[index].decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Gives a buffer back to the pool, it must not be used afterwards
+     * @param buffer buffer acquired from this pool
+     */
+    public void release(ByteBuffer buffer) {
+        var capacity = buffer.capacity();
+        if (!buffer.isDirect() || capacity > maxPooledSize || capacityFor(capacity) != capacity) { return; }
+        var index = classIndex(capacity);
+        if (freeCounts[index].incrementAndGet() > MAX_BYTES_PER_CLASS / capacity) {
+            // Enough buffers of that size are kept already, this one is left to the garbage collector
+            freeCounts[index].decrementAndGet();
+            return;
+        }
+        freeBuffers.get(index).offer(buffer.clear());
+    }
+
+    /**
+     * Returns the number of buffers kept by the pool for the given capacity
+     * @param capacity capacity of the buffers
+     * @return number of buffers kept
+     */
+    public int freeBuffers(int capacity) {
+        var actualCapacity = capacityFor(capacity);
+        if (actualCapacity > maxPooledSize) { return 0; }
+        return freeCounts[classIndex(actualCapacity)].get();
+    }
+
+    private int classIndex(int capacity) {
+        return Integer.numberOfTrailingZeros(capacity) - Integer.numberOfTrailingZeros(slabSize);
+    }
+}
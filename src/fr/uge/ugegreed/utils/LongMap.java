@@ -0,0 +1,182 @@
+package fr.uge.ugegreed.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Hash map from primitive longs to non-null values, using open addressing with linear probing.
+ * Keys are never boxed, lookups do not allocate. Not thread-safe.
+ * @param <V> type of the values
+ */
+public final class LongMap<V> {
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] keys;
+    // Null for free slots
+    private V[] values;
+    private int size;
+
+    /**
+     * Creates an empty map
+     */
+    public LongMap() {
+        this(MIN_CAPACITY);
+    }
+
+    @SuppressWarnings("unchecked")
+    private LongMap(int capacity) {
+        keys = new long[capacity];
+        values = (V[]) new Object[capacity];
+    }
+
+    private static int hash(long key) {
+        var hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Returns the slot of the key, or -1 - the free slot where it would go if it is absent
+     */
+    private int slotOf(long key) {
+        var mask = keys.length - 1;
+        for (var slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            if (values[slot] == null) { return -1 - slot; }
+            if (keys[slot] == key) { return slot; }
+        }
+    }
+
+    /**
+     * Returns the value of a key
+     * @param key key
+     * @return the value of the key, or null if it is absent
+     */
+    public V get(long key) {
+        var slot = slotOf(key);
+        return slot < 0 ? null : values[slot];
+    }
+
+    /**
+     * Returns true if the key has a value
+     * @param key key
+     * @return true if the key has a value
+     */
+    public boolean containsKey(long key) {
+        return slotOf(key) >= 0;
+    }
+
+    /**
+     * Associates a value to a key
+     * @param key key
+     * @param value value, cannot be null
+     * @return the previous value of the key, or null if it was absent
+     */
+    public V put(long key, V value) {
+        Objects.requireNonNull(value);
+        var slot = slotOf(key);
+        if (slot >= 0) {
+            var previous = values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        // The table is kept at most half full so that probe sequences stay short
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+            slot = slotOf(key);
+        }
+        slot = -1 - slot;
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        return null;
+    }
+
+    /**
+     * Removes a key
+     * @param key key
+     * @return the value of the key, or null if it was absent
+     */
+    public V remove(long key) {
+        var slot = slotOf(key);
+        if (slot < 0) { return null; }
+        var previous = values[slot];
+        var mask = keys.length - 1;
+        // Entries of the probe sequence after the removed one are shifted back, so that lookups never stop early
+        for (var next = (slot + 1) & mask; values[next] != null; next = (next + 1) & mask) {
+            var home = hash(keys[next]) & mask;
+            var stays = slot <= next ? slot < home && home <= next : slot < home || home <= next;
+            if (stays) { continue; }
+            keys[slot] = keys[next];
+            values[slot] = values[next];
+            slot = next;
+        }
+        values[slot] = null;
+        size--;
+        return previous;
+    }
+
+    private void resize(int capacity) {
+        var oldKeys = keys;
+        var oldValues = values;
+        var resized = new LongMap<V>(capacity);
+        for (var i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                resized.put(oldKeys[i], oldValues[i]);
+            }
+        }
+        keys = resized.keys;
+        values = resized.values;
+    }
+
+    /**
+     * Returns the number of keys
+     * @return number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if the map has no key
+     * @return true if the map has no key
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Calls the consumer for each value, in no particular order
+     * @param consumer consumer of the values
+     */
+    public void forEachValue(Consumer<? super V> consumer) {
+        for (var value : values) {
+            if (value != null) {
+                consumer.accept(value);
+            }
+        }
+    }
+
+    /**
+     * Returns the values, the list is a copy which can be used while the map is modified
+     * @return the values, in no particular order
+     */
+    public List<V> values() {
+        var list = new ArrayList<V>(size);
+        forEachValue(list::add);
+        return list;
+    }
+
+    /**
+     * Returns a copy of the map
+     * @return a copy of the map
+     */
+    public LongMap<V> copy() {
+        var copy = new LongMap<V>(keys.length);
+        copy.keys = Arrays.copyOf(keys, keys.length);
+        copy.values = Arrays.copyOf(values, values.length);
+        copy.size = size;
+        return copy;
+    }
+}
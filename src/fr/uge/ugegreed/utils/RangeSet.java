@@ -0,0 +1,244 @@
+package fr.uge.ugegreed.utils;
+
+import java.util.ArrayList;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Set of long values stored as disjoint ranges, adjacent ranges are merged.
+ * Adding a value already in the set changes nothing, and adding or looking up a value takes
+ * a logarithmic time in the number of ranges. Not thread-safe.
+ */
+public final class RangeSet {
+    // Start of each range (included) to its end (excluded), no two ranges overlap or touch
+    private final TreeMap<Long, Long> ranges = new TreeMap<>();
+    private long size;
+
+    private static void checkRange(long start, long end) {
+        if (end < start) {
+            throw new IllegalArgumentException("end must be superior to start");
+        }
+    }
+
+    private static long overlap(long start1, long end1, long start2, long end2) {
+        return Long.max(0, Long.min(end1, end2) - Long.max(start1, start2));
+    }
+
+    /**
+     * Adds a value to the set
+     * @param value value to add, must be lower than Long.MAX_VALUE
+     * @return true if the value was not in the set already
+     */
+    public boolean add(long value) {
+        return add(value, value + 1) != 0;
+    }
+
+    /**
+     * Adds a range of values to the set
+     * @param start start of the range (included)
+     * @param end end of the range (excluded)
+     * @return number of values which were not in the set already
+     */
+    public long add(long start, long end) {
+        checkRange(start, end);
+        if (start == end) { return 0; }
+        var floor = ranges.floorEntry(start);
+        if (floor != null && floor.getValue() >= end) { return 0; }
+        var mergedStart = floor != null && floor.getValue() >= start ? floor.getKey() : start;
+        var mergedEnd = end;
+        var added = end - start;
+        // Every range overlapping or touching the new one is merged into it
+        var merged = ranges.subMap(mergedStart, true, end, true);
+        for (var range : merged.entrySet()) {
+            added -= overlap(range.getKey(), range.getValue(), start, end);
+            mergedEnd = Long.max(mergedEnd, range.getValue());
+        }
+        merged.clear();
+        ranges.put(mergedStart, mergedEnd);
+        size += added;
+        return added;
+    }
+
+    /**
+     * Adds the values of every block of a strided range to the set
+     * @param range values to add
+     * @return number of values which were not in the set already
+     */
+    public long add(StridedRange range) {
+        var added = new long[1];
+        range.forEachBlock((blockStart, blockEnd) -> added[0] += add(blockStart, blockEnd));
+        return added[0];
+    }
+
+    /**
+     * Removes a range of values from the set
+     * @param start start of the range (included)
+     * @param end end of the range (excluded)
+     * @return number of values which were in the set
+     */
+    public long remove(long start, long end) {
+        checkRange(start, end);
+        if (start == end) { return 0; }
+        var firstKey = ranges.floorKey(start);
+        var overlapping = ranges.subMap(firstKey == null ? start : firstKey, true, end, false);
+        var removed = 0L;
+        var kept = new ArrayList<long[]>(2);
+        for (var iterator = overlapping.entrySet().iterator(); iterator.hasNext(); ) {
+            var range = iterator.next();
+            var rangeStart = range.getKey();
+            var rangeEnd = range.getValue();
+            if (rangeEnd <= start) { continue; }
+            removed += overlap(rangeStart, rangeEnd, start, end);
+            iterator.remove();
+            if (rangeStart < start) { kept.add(new long[] { rangeStart, start }); }
+            if (rangeEnd > end) { kept.add(new long[] { end, rangeEnd }); }
+        }
+        kept.forEach(range -> ranges.put(range[0], range[1]));
+        size -= removed;
+        return removed;
+    }
+
+    /**
+     * Removes the values of every block of a strided range from the set
+     * @param range values to remove
+     * @return number of values which were in the set
+     */
+    public long remove(StridedRange range) {
+        var removed = new long[1];
+        range.forEachBlock((blockStart, blockEnd) -> removed[0] += remove(blockStart, blockEnd));
+        return removed[0];
+    }
+
+    /**
+     * Removes every value of the set
+     */
+    public void clear() {
+        ranges.clear();
+        size = 0;
+    }
+
+    /**
+     * Returns true if the value is in the set
+     * @param value value to look for
+     * @return true if the value is in the set
+     */
+    public boolean contains(long value) {
+        var floor = ranges.floorEntry(value);
+        return floor != null && floor.getValue() > value;
+    }
+
+    /**
+     * Counts the values of a range which are in the set
+     * @param start start of the range (included)
+     * @param end end of the range (excluded)
+     * @return number of values of the range in the set
+     */
+    public long count(long start, long end) {
+        checkRange(start, end);
+        if (start == end) { return 0; }
+        var firstKey = ranges.floorKey(start);
+        var count = 0L;
+        for (var range : ranges.subMap(firstKey == null ? start : firstKey, true, end, false).entrySet()) {
+            count += overlap(range.getKey(), range.getValue(), start, end);
+        }
+        return count;
+    }
+
+    /**
+     * Counts the values of a strided range which are in the set
+     * @param range values to count
+     * @return number of values of the range in the set
+     */
+    public long count(StridedRange range) {
+        var count = new long[1];
+        range.forEachBlock((blockStart, blockEnd) -> count[0] += count(blockStart, blockEnd));
+        return count[0];
+    }
+
+    /**
+     * Returns the smallest value which is not in the set, starting from the given one
+     * @param from first value to consider
+     * @return the smallest value greater or equal to from which is not in the set
+     */
+    public long firstMissing(long from) {
+        var floor = ranges.floorEntry(from);
+        // Ranges never touch, so the end of a range is never in the set
+        return floor != null && floor.getValue() > from ? floor.getValue() : from;
+    }
+
+    /**
+     * Calls the consumer, in increasing order, for each sub range of the given range whose values are not in the set
+     * @param start start of the range (included)
+     * @param end end of the range (excluded)
+     * @param consumer consumer receiving the start (included) and the end (excluded) of each missing sub range
+     */
+    public void forEachMissing(long start, long end, BiConsumer<Long, Long> consumer) {
+        checkRange(start, end);
+        var cursor = firstMissing(start);
+        if (cursor >= end) { return; }
+        for (var range : ranges.subMap(cursor, false, end, false).entrySet()) {
+            consumer.accept(cursor, range.getKey());
+            cursor = range.getValue();
+        }
+        if (cursor < end) { consumer.accept(cursor, end); }
+    }
+
+    /**
+     * Calls the consumer, in increasing order, for each range of the set
+     * @param consumer consumer receiving the start (included) and the end (excluded) of each range
+     */
+    public void forEachRange(BiConsumer<Long, Long> consumer) {
+        ranges.forEach(consumer);
+    }
+
+    /**
+     * Calls the consumer, in increasing order, for each part of the given range which is in the set
+     * @param start start of the range (included)
+     * @param end end of the range (excluded)
+     * @param consumer consumer receiving the start (included) and the end (excluded) of each part
+     */
+    public void forEachRange(long start, long end, BiConsumer<Long, Long> consumer) {
+        checkRange(start, end);
+        if (start == end) { return; }
+        var firstKey = ranges.floorKey(start);
+        for (var range : ranges.subMap(firstKey == null ? start : firstKey, true, end, false).entrySet()) {
+            var rangeStart = Long.max(range.getKey(), start);
+            var rangeEnd = Long.min(range.getValue(), end);
+            if (rangeStart < rangeEnd) {
+                consumer.accept(rangeStart, rangeEnd);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of values in the set
+     * @return number of values in the set
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of disjoint ranges the set is made of
+     * @return number of ranges
+     */
+    public int rangeCount() {
+        return ranges.size();
+    }
+
+    /**
+     * Returns true if the set has no value
+     * @return true if the set has no value
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public String toString() {
+        var builder = new StringBuilder();
+        ranges.forEach((start, end) -> builder.append(builder.isEmpty() ? "" : " ")
+            .append('[').append(start).append(", ").append(end).append(')'));
+        return builder.toString();
+    }
+}
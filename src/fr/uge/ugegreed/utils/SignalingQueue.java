@@ -0,0 +1,126 @@
+package fr.uge.ugegreed.utils;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Lock-free queue meant to pass elements from many producer threads to a single consumer thread.
+ * A signal is emitted each time the queue goes from empty to non-empty, so the consumer can sleep
+ * while there is nothing to read without having to poll the queue.
+ * Producers putting elements in a full queue are blocked until the consumer empties half of it.
+ * @param <E> type of the elements
+ */
+public final class SignalingQueue<E> {
+    private final ConcurrentLinkedQueue<E> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final Runnable onNonEmpty;
+    private final int capacity;
+    private final Object fullLock = new Object();
+
+    /**
+     * Creates a new unbounded queue
+     * @param onNonEmpty action to run when the queue goes from empty to non-empty, run by the producer thread
+     */
+    public SignalingQueue(Runnable onNonEmpty) {
+        this(Integer.MAX_VALUE, onNonEmpty);
+    }
+
+    /**
+     * Creates a new queue
+     * @param capacity number of elements from which producers calling put are blocked
+     * @param onNonEmpty action to run when the queue goes from empty to non-empty, run by the producer thread
+     */
+    public SignalingQueue(int capacity, Runnable onNonEmpty) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be strictly positive");
+        }
+        this.capacity = capacity;
+        this.onNonEmpty = Objects.requireNonNull(onNonEmpty);
+    }
+
+    /**
+     * Adds an element to the queue, never blocks
+     * @param element element to add
+     */
+    public void offer(E element) {
+        Objects.requireNonNull(element);
+        queue.offer(element);
+        if (size.getAndIncrement() == 0) {
+            onNonEmpty.run();
+        }
+    }
+
+    /**
+     * Adds an element to the queue, waiting for the consumer to empty half of it if it's full
+     * @param element element to add
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void put(E element) throws InterruptedException {
+        put(element, () -> false);
+    }
+
+    /**
+     * Adds an element to the queue, waiting for the consumer to empty half of it if it's full.
+     * The producer gives up if cancelled becomes true while it waits, it is checked each time
+     * wakeUpProducers is called.
+     * @param element element to add
+     * @param cancelled true if the element is not needed anymore
+     * @return true if the element was added, false if the producer gave up
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean put(E element, BooleanSupplier cancelled) throws InterruptedException {
+        Objects.requireNonNull(element);
+        Objects.requireNonNull(cancelled);
+        if (size.get() >= capacity) {
+            synchronized (fullLock) {
+                while (size.get() > capacity / 2) {
+                    if (cancelled.getAsBoolean()) { return false; }
+                    fullLock.wait();
+                }
+            }
+        }
+        offer(element);
+        return true;
+    }
+
+    /**
+     * Wakes up the producers waiting in put so that they check whether they should give up
+     */
+    public void wakeUpProducers() {
+        synchronized (fullLock) {
+            fullLock.notifyAll();
+        }
+    }
+
+    /**
+     * Removes the head of the queue
+     * @return head of the queue, or null if the queue is empty
+     */
+    public E poll() {
+        var element = queue.poll();
+        if (element != null && size.decrementAndGet() == capacity / 2) {
+            synchronized (fullLock) {
+                fullLock.notifyAll();
+            }
+        }
+        return element;
+    }
+
+    /**
+     * Returns the head of the queue without removing it, only the consumer thread may call it
+     * @return head of the queue, or null if the queue is empty
+     */
+    public E peek() {
+        return queue.peek();
+    }
+
+    /**
+     * Returns true if the queue contains no element
+     * @return true if the queue contains no element
+     */
+    public boolean isEmpty() {
+        return size.get() == 0;
+    }
+}
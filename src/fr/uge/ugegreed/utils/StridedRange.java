@@ -0,0 +1,129 @@
+package fr.uge.ugegreed.utils;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Values of a range taken by blocks at regular intervals: blocks start at start, start + stride,
+ * start + 2 * stride and so on, each of them holds block values and the last one is cut at end.
+ * A range whose block is as large as its stride is contiguous.
+ * @param start start of the first block (included)
+ * @param end end of the range (excluded)
+ * @param block number of values of each block, 0 if the range is empty
+ * @param stride distance between the starts of two blocks
+ */
+public record StridedRange(long start, long end, long block, long stride) {
+    public StridedRange {
+        if (end < start) {
+            throw new IllegalArgumentException("end must be superior to start");
+        }
+        if (stride <= 0) {
+            throw new IllegalArgumentException("stride must be strictly positive");
+        }
+        if (block < 0 || block > stride) {
+            throw new IllegalArgumentException("block must be between 0 and stride");
+        }
+    }
+
+    /**
+     * Returns a contiguous range, made of a single block
+     * @param start start of the range (included)
+     * @param end end of the range (excluded)
+     * @return the range
+     */
+    public static StridedRange contiguous(long start, long end) {
+        var size = Long.max(1, end - start);
+        return new StridedRange(start, end, size, size);
+    }
+
+    /**
+     * Returns true if the range holds no value
+     * @return true if the range is empty
+     */
+    public boolean isEmpty() {
+        return start >= end || block == 0;
+    }
+
+    /**
+     * Returns true if the values of the range follow each other, either because blocks leave no gap
+     * between them or because only the first block starts before the end
+     * @return true if the range is contiguous
+     */
+    public boolean isContiguous() {
+        return block == stride || end - start <= stride;
+    }
+
+    /**
+     * Returns the end of the values of a contiguous range
+     * @return end of the values (excluded)
+     * @throws IllegalStateException if the range is not contiguous
+     */
+    public long contiguousEnd() {
+        if (!isContiguous()) {
+            throw new IllegalStateException("range is not contiguous");
+        }
+        return block == stride ? end : Long.min(end, start + block);
+    }
+
+    /**
+     * Returns the number of values of the range
+     * @return number of values
+     */
+    public long size() {
+        if (isEmpty()) { return 0; }
+        var width = end - start;
+        return width / stride * block + Long.min(width % stride, block);
+    }
+
+    /**
+     * Calls the consumer with the start (included) and end (excluded) of each block, in order
+     * @param consumer consumer of the blocks
+     */
+    public void forEachBlock(BiConsumer<Long, Long> consumer) {
+        if (isEmpty()) { return; }
+        if (block == stride) {
+            consumer.accept(start, end);
+            return;
+        }
+        for (var blockStart = start; blockStart < end; blockStart += stride) {
+            consumer.accept(blockStart, Long.min(end, blockStart + block));
+            if (end - blockStart <= stride) { return; }
+        }
+    }
+
+    /**
+     * Returns the same part of every block: the values from offset (included) to offset + width (excluded)
+     * from the start of each block
+     * @param offset offset of the part in the blocks
+     * @param width number of values of the part in each block
+     * @return the part of the range
+     */
+    public StridedRange part(long offset, long width) {
+        if (offset < 0 || width < 0 || offset + width > block) {
+            throw new IllegalArgumentException("the part must lie within a block");
+        }
+        return new StridedRange(Long.min(end, start + offset), end, width, stride);
+    }
+
+    /**
+     * Returns the same values split in blocks of another size, for the parts of each block to be
+     * spread over the whole range
+     * @param newBlock size of the blocks, strictly positive
+     * @return the range split in blocks
+     * @throws IllegalStateException if the range is not contiguous
+     */
+    public StridedRange reblock(long newBlock) {
+        if (newBlock <= 0) {
+            throw new IllegalArgumentException("newBlock must be strictly positive");
+        }
+        var rangeEnd = contiguousEnd();
+        return new StridedRange(start, rangeEnd, newBlock, newBlock);
+    }
+
+    @Override
+    public String toString() {
+        if (isContiguous()) {
+            return "[" + start + ", " + contiguousEnd() + ")";
+        }
+        return "[" + start + ", " + end + ") by " + block + " every " + stride;
+    }
+}
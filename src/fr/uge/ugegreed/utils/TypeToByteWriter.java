@@ -1,14 +1,41 @@
 package fr.uge.ugegreed.utils;
 
 import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 
 /**
  * Class providing methods to convert Object to ByteBuffer in write mode
  */
 public final class TypeToByteWriter {
+    /**
+     * Size of a host (ipv4 + port) in bytes
+     */
+    public static final int HOST_SIZE = 6;
+
+    // Encoders are stateful, each thread writing packets gets its own
+    private static final ThreadLocal<CharsetEncoder> UTF_8_ENCODER =
+        ThreadLocal.withInitial(() -> newEncoder(StandardCharsets.UTF_8));
+    private static final ThreadLocal<CharsetEncoder> US_ASCII_ENCODER =
+        ThreadLocal.withInitial(() -> newEncoder(StandardCharsets.US_ASCII));
+
+    // Same behavior as Charset.encode, which replaces malformed and unmappable characters
+    private static CharsetEncoder newEncoder(Charset cs) {
+        return cs.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    private static CharsetEncoder encoder(Charset cs) {
+        if (cs.equals(StandardCharsets.UTF_8)) { return UTF_8_ENCODER.get(); }
+        if (cs.equals(StandardCharsets.US_ASCII)) { return US_ASCII_ENCODER.get(); }
+        return newEncoder(cs);
+    }
 
     /**
      * Return a byteBuffer containing the String encoded in UTF-8
@@ -17,20 +44,103 @@ public final class TypeToByteWriter {
      * @return ByteBuffer READ mode
      */
     public static ByteBuffer getString(String input, Charset cs) {
-        ByteBuffer translatedInput = cs.encode(input);
-        return ByteBuffer.allocate(Integer.BYTES + translatedInput.remaining()).putInt(translatedInput.remaining()).put(translatedInput).flip();
+        var buffer = ByteBuffer.allocate(stringSize(input, cs));
+        putString(buffer, input, cs);
+        return buffer.flip();
     }
 
     public static ByteBuffer getString(String input) {
         return getString(input, StandardCharsets.UTF_8);
     }
 
+    /**
+     * Writes a String prefixed by its byte size directly in a buffer, without intermediate allocation
+     * @param buffer buffer in write mode, it must have at least stringSize(input, cs) bytes remaining
+     * @param input String to write
+     * @param cs charset to encode the String with
+     * @throws BufferOverflowException if the buffer is too small
+     */
+    public static void putString(ByteBuffer buffer, String input, Charset cs) {
+        var size = stringSize(input, cs) - Integer.BYTES;
+        if (buffer.remaining() < Integer.BYTES + size) {
+            throw new BufferOverflowException();
+        }
+        buffer.putInt(size);
+        var encoder = encoder(cs).reset();
+        encoder.encode(CharBuffer.wrap(input), buffer, true);
+        encoder.flush(buffer);
+    }
+
+    public static void putString(ByteBuffer buffer, String input) {
+        putString(buffer, input, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the number of bytes taken by a String prefixed by its byte size
+     * @param input String to measure
+     * @param cs charset the String is encoded with
+     * @return number of bytes taken by the prefixed String
+     */
+    public static int stringSize(String input, Charset cs) {
+        if (cs.equals(StandardCharsets.UTF_8)) {
+            return Integer.BYTES + utf8Length(input);
+        }
+        if (cs.equals(StandardCharsets.US_ASCII)) {
+            // Every code point that is not ASCII is replaced by a single '?'
+            return Integer.BYTES + input.codePointCount(0, input.length());
+        }
+        return Integer.BYTES + cs.encode(input).remaining();
+    }
+
+    public static int stringSize(String input) {
+        return stringSize(input, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the number of bytes of a String once encoded in UTF-8, without encoding it
+     * @param input String to measure
+     * @return size of the encoded String in bytes
+     */
+    public static int utf8Length(CharSequence input) {
+        var length = 0;
+        for (var i = 0; i < input.length(); i++) {
+            var c = input.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < input.length() && Character.isLowSurrogate(input.charAt(i + 1))) {
+                    length += 4;
+                    i++;
+                } else {
+                    // Lone surrogates are replaced by a single '?'
+                    length += 1;
+                }
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
     /**
      * Return a byteBuffer containing the ip (ipv4) and port
      * @param input Address to write
      * @return ByteBuffer READ mode
      */
     public static ByteBuffer getHost(InetSocketAddress input) {
-        return ByteBuffer.allocate(6).put(input.getAddress().getAddress()).putShort((short) input.getPort()).flip();
+        var buffer = ByteBuffer.allocate(HOST_SIZE);
+        putHost(buffer, input);
+        return buffer.flip();
+    }
+
+    /**
+     * Writes the ip (ipv4) and port directly in a buffer
+     * @param buffer buffer in write mode
+     * @param input Address to write
+     */
+    public static void putHost(ByteBuffer buffer, InetSocketAddress input) {
+        buffer.put(input.getAddress().getAddress()).putShort((short) input.getPort());
     }
 }